@@ -0,0 +1,24 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.user.User;
+import com.example.demo.user.UserView;
+import com.example.demo.user.dto.UserDTO;
+
+final class BenchmarkData {
+
+    private BenchmarkData() {
+    }
+
+    static User user(long id) {
+        return new User(id, "username" + id, "firstname.lastname" + id + "@domain.fr", "password" + id, 0L);
+    }
+
+    static UserView userView(long id) {
+        User user = user(id);
+        return new UserView(user.getId(), user.getUsername(), user.getEmail(), user.getVersion());
+    }
+
+    static UserDTO userDTO(long id) {
+        return new UserDTO(id, "username" + id, "firstname.lastname" + id + "@domain.fr", 0L);
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.demo.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Runs the benchmarks, writes the results to {@code target/jmh/results.json} and compares them with the baseline
+ * {@code src/jmh/baseline.json} when it exists :
+ * <pre>
+ * mvn -Pbenchmarks test-compile exec:exec                                    # run and compare
+ * mvn -Pbenchmarks test-compile exec:exec -Djmh.updateBaseline=true          # record the baseline
+ * mvn -Pbenchmarks test-compile exec:exec -Djmh.include=UserMapperBenchmark  # run a subset
+ * mvn -Pbenchmarks test-compile exec:exec -Djmh.gc=true                      # print the allocations too
+ * </pre>
+ * The run fails when a benchmark is slower than the baseline by more than {@code jmh.threshold} percent (10 by
+ * default), the error margins of both runs taken into account : the best case of the run, its score minus its error,
+ * must exceed the worst case of the baseline by the threshold. A noisy run therefore only fails on a regression
+ * larger than its noise. The baseline is only meaningful on the machine it was recorded on, e.g. the CI runner. The
+ * allocations
+ * per operation ({@code gc.alloc.rate.norm} of the GC profiler) are printed for information, they do not fail the
+ * run.
+ */
+public final class BenchmarkRunner {
+
+    private static final Path RESULTS = Path.of("target", "jmh", "results.json");
+    private static final Path BASELINE = Path.of("src", "jmh", "baseline.json");
+
+    private static final String ALLOCATION_METRIC = "gc.alloc.rate.norm";
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws RunnerException, IOException {
+        Files.createDirectories(RESULTS.getParent());
+
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .include(System.getProperty("jmh.include", "com\\.example\\.demo\\.benchmark\\..*"))
+                .resultFormat(ResultFormatType.JSON)
+                .result(RESULTS.toString());
+        boolean allocations = Boolean.getBoolean("jmh.gc");
+        if (allocations)
+            options.addProfiler(GCProfiler.class);
+        new Runner(options.build()).run();
+
+        if (allocations)
+            readScores(RESULTS, ALLOCATION_METRIC).forEach((benchmark, bytes) -> System.out
+                    .printf(Locale.ROOT, "%-90s %12.1f B/op%n", benchmark, bytes.score()));
+
+        if (Boolean.getBoolean("jmh.updateBaseline")) {
+            Files.copy(RESULTS, BASELINE, StandardCopyOption.REPLACE_EXISTING);
+            System.out.println("Baseline updated : " + BASELINE);
+            return;
+        }
+
+        if (!Files.exists(BASELINE)) {
+            System.out.println("No baseline to compare with, record one with -Djmh.updateBaseline=true");
+            return;
+        }
+
+        double threshold = Double.parseDouble(System.getProperty("jmh.threshold", "10"));
+        if (compare(readScores(BASELINE), readScores(RESULTS), threshold) > 0)
+            System.exit(1);
+    }
+
+    /**
+     * A score and the half-width of its 99.9% confidence interval, as computed by JMH.
+     */
+    record Score(double score, double error) {
+
+        double lowerBound() {
+            return score - error;
+        }
+
+        double upperBound() {
+            return score + error;
+        }
+    }
+
+    /**
+     * Prints the change of each benchmark against the baseline.
+     *
+     * @return The number of benchmarks slower than the threshold beyond their error margins.
+     */
+    static int compare(Map<String, Score> baseline, Map<String, Score> results, double threshold) {
+        int regressions = 0;
+        for (Map.Entry<String, Score> result : results.entrySet()) {
+            Score score = result.getValue();
+            Score base = baseline.get(result.getKey());
+            if (base == null) {
+                System.out.printf(Locale.ROOT, "%-90s %12.1f +/- %10.1f ns/op   (new)%n", result.getKey(),
+                        score.score(), score.error());
+                continue;
+            }
+
+            double change = (score.score() - base.score()) / base.score() * 100;
+            boolean regression = score.lowerBound() > base.upperBound() * (1 + threshold / 100);
+            if (regression)
+                regressions++;
+            System.out.printf(Locale.ROOT, "%-90s %12.1f +/- %10.1f ns/op   %+7.1f%%%s%n", result.getKey(),
+                    score.score(), score.error(), change, regression ? "   REGRESSION" : "");
+        }
+        return regressions;
+    }
+
+    /**
+     * Reads the average time of each benchmark, keyed by its name and parameters.
+     */
+    static Map<String, Score> readScores(Path file) throws IOException {
+        return readScores(file, null);
+    }
+
+    /**
+     * Reads a metric of each benchmark, keyed by its name and parameters. The error is 0 when JMH could not compute
+     * it, e.g. for a single measurement iteration.
+     *
+     * @param secondaryMetric The name of a secondary metric, or null for the primary metric.
+     */
+    static Map<String, Score> readScores(Path file, String secondaryMetric) throws IOException {
+        Map<String, Score> scores = new HashMap<>();
+        for (JsonNode result : new ObjectMapper().readTree(file.toFile())) {
+            JsonNode metric = secondaryMetric != null ? result.path("secondaryMetrics").get(secondaryMetric)
+                    : result.get("primaryMetric");
+            if (metric == null)
+                continue;
+
+            StringBuilder key = new StringBuilder(result.get("benchmark").asText());
+            JsonNode params = result.get("params");
+            if (params != null)
+                params.fields().forEachRemaining(param -> key.append(' ').append(param.getKey()).append('=')
+                        .append(param.getValue().asText()));
+            double error = metric.path("scoreError").asDouble(0);
+            scores.put(key.toString(), new Score(metric.get("score").asDouble(), Double.isNaN(error) ? 0 : error));
+        }
+        return scores;
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.demo.benchmark;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.LongStream;
+
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import com.example.demo.user.UserRepository;
+import com.example.demo.user.UserView;
+
+/**
+ * In-memory stand-in for the read methods of {@link UserRepository}, so that the benchmarks measure the service and
+ * cache layers rather than the database.
+ */
+final class InMemoryUserRepository {
+
+    private InMemoryUserRepository() {
+    }
+
+    static UserRepository create(int size) {
+        List<UserView> users = LongStream.rangeClosed(1, size).mapToObj(BenchmarkData::userView).toList();
+
+        return (UserRepository) Proxy.newProxyInstance(UserRepository.class.getClassLoader(),
+                new Class<?>[] { UserRepository.class }, (proxy, method, args) -> switch (method.getName()) {
+                    case "findById" -> {
+                        long id = (Long) args[0];
+                        yield id >= 1 && id <= size ? Optional.of(BenchmarkData.user(id)) : Optional.empty();
+                    }
+                    case "findAllProjectedBy" -> {
+                        Pageable pageable = (Pageable) args[0];
+                        int from = (int) Math.min(pageable.getOffset(), size);
+                        int to = Math.min(from + pageable.getPageSize(), size);
+                        yield new PageImpl<>(users.subList(from, to), pageable, size);
+                    }
+                    case "findAllProjectedByIdIn" -> {
+                        List<UserView> found = new ArrayList<>();
+                        for (Object id : (Iterable<?>) args[0]) {
+                            long userId = (Long) id;
+                            if (userId >= 1 && userId <= size)
+                                found.add(users.get((int) userId - 1));
+                        }
+                        yield found;
+                    }
+                    case "count" -> (long) size;
+                    case "toString" -> "InMemoryUserRepository";
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
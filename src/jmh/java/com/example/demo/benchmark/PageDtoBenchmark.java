@@ -0,0 +1,61 @@
+package com.example.demo.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.example.demo.user.dto.UserDTO;
+import com.example.demo.util.PageDTO;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PageDtoBenchmark {
+
+    @Param({ "5", "100" })
+    private int size;
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    private Pageable pageable;
+    private List<UserDTO> users;
+    private PageDTO<UserDTO> pageDTO;
+
+    @Setup
+    public void setUp() {
+        pageable = PageRequest.of(3, size);
+        users = LongStream.rangeClosed(1, size).mapToObj(BenchmarkData::userDTO).toList();
+        pageDTO = newPageDTO();
+    }
+
+    @Benchmark
+    public PageDTO<UserDTO> newPageDTO() {
+        return new PageDTO<>(new PageImpl<>(users, pageable, 1_000_000L));
+    }
+
+    @Benchmark
+    public byte[] encodePageDTO() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(pageDTO);
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.demo.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.demo.user.User;
+import com.example.demo.user.dto.UserDTO;
+import com.example.demo.user.util.UserMapper;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserMapperBenchmark {
+
+    @Param({ "5", "100" })
+    private int size;
+
+    private User user;
+    private List<User> users;
+
+    @Setup
+    public void setUp() {
+        user = BenchmarkData.user(1L);
+        users = LongStream.rangeClosed(1, size).mapToObj(BenchmarkData::user).toList();
+    }
+
+    @Benchmark
+    public UserDTO toDto() {
+        return UserMapper.INSTANCE.toDto(user);
+    }
+
+    @Benchmark
+    public List<UserDTO> toDtoList() {
+        return UserMapper.INSTANCE.toDtoList(users);
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.demo.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+import javax.sql.DataSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.user.User;
+import com.example.demo.user.UserRepository;
+import com.example.demo.user.dto.UserDTO;
+import com.example.demo.user.util.UserMapper;
+
+import jakarta.persistence.EntityManagerFactory;
+
+/**
+ * Read path of {@link UserRepository} through Hibernate on an in-memory H2 database : the entities mapped to
+ * {@link UserDTO} against the projections, for the reads of several users. Each operation runs in the
+ * transaction of the repository, as on a cache miss of the service. The difference lies in the allocations rather
+ * than in the latency, run it with the GC profiler :
+ * <pre>
+ * mvn -Pbenchmarks test-compile exec:exec -Djmh.include=UserReadPathBenchmark -Djmh.gc=true
+ * </pre>
+ * The passwords are as long as the bcrypt hashes of the application, the entities fetch them for nothing.
+ * <p>
+ * Allocations per operation ({@code gc.alloc.rate.norm}) on JDK 17 with 1 CPU, the full run is in
+ * {@code src/jmh/results/user-read-path-gc.json} :
+ * <pre>
+ * findUserEntity              33.6 KB    findUserProjection    49.7 KB
+ * findPageEntities            79.3 KB    findPageProjections   80.3 KB
+ * findPageEntitiesReadWrite   82.9 KB
+ * lookupEntities              79.5 KB    lookupProjections     72.0 KB
+ * </pre>
+ * The projections save the passwords and the snapshots, about 9% on the lookups, and are even on the pages. A
+ * derived query builds its criteria query on each call, which outweighed them on a single user read by ID, measured
+ * by a findUserProjection benchmark on a former findProjectedById : {@code findById} is a plain
+ * {@code EntityManager.find}, so the service reads a single user as an entity. An interface projection allocated
+ * 168 KB to 178 KB on the lookup and the page, the proxies over the tuples, hence the record.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserReadPathBenchmark {
+
+    private static final int USERS = 10_000;
+    private static final Long USER_ID = 42L;
+    private static final Pageable PAGEABLE = PageRequest.of(2, 20, Sort.by("id"));
+    private static final List<Long> USER_IDS = LongStream.rangeClosed(100, 119).boxed().toList();
+
+    private AnnotationConfigApplicationContext context;
+    private UserRepository userRepository;
+    private TransactionTemplate readWriteTransaction;
+
+    @Setup
+    public void setUp() {
+        context = new AnnotationConfigApplicationContext(BenchmarkConfig.class);
+        userRepository = context.getBean(UserRepository.class);
+        readWriteTransaction = new TransactionTemplate(context.getBean(JpaTransactionManager.class));
+
+        String passwordHash = "$2a$10$" + "x".repeat(53);
+        new JdbcTemplate(context.getBean(DataSource.class)).batchUpdate(
+                "insert into user_app (id, username, email, password, version) values (?, ?, ?, ?, 0)",
+                LongStream.rangeClosed(1, USERS).mapToObj(id -> new Object[] { id, "username" + id,
+                        "firstname.lastname" + id + "@domain.fr", passwordHash }).toList());
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public UserDTO findUserEntity() {
+        return UserMapper.INSTANCE.toDto(userRepository.findById(USER_ID).orElseThrow());
+    }
+
+    @Benchmark
+    public Page<UserDTO> findPageEntities() {
+        return userRepository.findAll(PAGEABLE).map(UserMapper.INSTANCE::toDto);
+    }
+
+    /**
+     * The entities of a page read in a read-write transaction, which Hibernate snapshots and dirty checks on commit.
+     */
+    @Benchmark
+    public Page<UserDTO> findPageEntitiesReadWrite() {
+        return readWriteTransaction.execute(status -> userRepository.findAll(PAGEABLE)
+                .map(UserMapper.INSTANCE::toDto));
+    }
+
+    @Benchmark
+    public Page<UserDTO> findPageProjections() {
+        return userRepository.findAllProjectedBy(PAGEABLE).map(UserMapper.INSTANCE::toDto);
+    }
+
+    @Benchmark
+    public List<UserDTO> lookupEntities() {
+        return userRepository.findAllById(USER_IDS).stream().map(UserMapper.INSTANCE::toDto).toList();
+    }
+
+    @Benchmark
+    public List<UserDTO> lookupProjections() {
+        return userRepository.findAllProjectedByIdIn(USER_IDS).stream().map(UserMapper.INSTANCE::toDto).toList();
+    }
+
+    @Configuration
+    @EnableJpaRepositories(basePackageClasses = UserRepository.class,
+            includeFilters = @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE, classes = UserRepository.class))
+    static class BenchmarkConfig {
+
+        @Bean
+        DataSource dataSource() {
+            return new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+        }
+
+        @Bean
+        LocalContainerEntityManagerFactoryBean entityManagerFactory(DataSource dataSource) {
+            HibernateJpaVendorAdapter vendorAdapter = new HibernateJpaVendorAdapter();
+            vendorAdapter.setGenerateDdl(true);
+
+            LocalContainerEntityManagerFactoryBean entityManagerFactory = new LocalContainerEntityManagerFactoryBean();
+            entityManagerFactory.setDataSource(dataSource);
+            entityManagerFactory.setPackagesToScan(User.class.getPackageName());
+            entityManagerFactory.setJpaVendorAdapter(vendorAdapter);
+            return entityManagerFactory;
+        }
+
+        @Bean
+        JpaTransactionManager transactionManager(EntityManagerFactory entityManagerFactory) {
+            return new JpaTransactionManager(entityManagerFactory);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.demo.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.demo.user.UserRepository;
+
+/**
+ * Latency of the search queries of {@link UserRepository} on a Postgres table of 10M users, with the indexes of
+ * {@code db/user-indexes.sql}. The queries are the SQL generated by Hibernate for the repository methods, run over
+ * JDBC so that only the database side is measured.
+ * <p>
+ * It needs a Postgres server, the database is given by the JMH_DB_URL environment variable
+ * ({@code jdbc:postgresql://localhost:5432/benchmark} by default) with the postgres user and DB_PASSWORD :
+ * <pre>
+ * mvn -Pbenchmarks test-compile exec:exec -Djmh.include=UserSearchBenchmark
+ * </pre>
+ * The first run fills the table and builds the indexes, which takes a few minutes. The setup fails if the plan of a
+ * query does not scan the index meant for it, so a missing or unused index cannot go unnoticed. Without a server the setup fails too, and the
+ * other benchmarks of a full run go on.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserSearchBenchmark {
+
+    private static final int LIMIT = 20;
+
+    private static final String SELECT = "select id, username, email, version from user_app ";
+
+    private static final String BY_USERNAME = SELECT
+            + "where username like ? escape '\\' and id > ? order by id limit ?";
+
+    private static final String BY_EMAIL = SELECT
+            + "where lower(email) = lower(?) and id > ? order by id limit ?";
+
+    @Param("10000000")
+    private long rows;
+
+    private Connection connection;
+    private PreparedStatement byUsername;
+    private PreparedStatement byEmail;
+
+    @Setup
+    public void setUp() throws SQLException, IOException {
+        connection = DriverManager.getConnection(
+                System.getenv().getOrDefault("JMH_DB_URL", "jdbc:postgresql://localhost:5432/benchmark"),
+                "postgres", System.getenv("DB_PASSWORD"));
+
+        try (Statement statement = connection.createStatement()) {
+            runScript(statement, "db/user-schema.sql");
+            fill(statement);
+            runScript(statement, "db/user-indexes.sql");
+            statement.execute("analyze user_app");
+        }
+
+        byUsername = connection.prepareStatement(BY_USERNAME);
+        byEmail = connection.prepareStatement(BY_EMAIL);
+
+        checkPlan("username12345%", BY_USERNAME, "user_app_username_pattern_idx");
+        checkPlan("%me1234567%", BY_USERNAME, "user_app_username_trgm_idx");
+        checkPlan("Firstname.Lastname12345@domain.fr", BY_EMAIL, "user_app_email_lower_idx");
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public List<Long> searchByUsernamePrefix() throws SQLException {
+        return search(byUsername, "username" + randomId() / 1000 + "%");
+    }
+
+    @Benchmark
+    public List<Long> searchByUsernameSubstring() throws SQLException {
+        return search(byUsername, "%me" + randomId() + "%");
+    }
+
+    @Benchmark
+    public List<Long> searchByEmail() throws SQLException {
+        return search(byEmail, "firstname.lastname" + randomId() + "@DOMAIN.FR");
+    }
+
+    private long randomId() {
+        return ThreadLocalRandom.current().nextLong(1, rows + 1);
+    }
+
+    private static List<Long> search(PreparedStatement statement, String criteria) throws SQLException {
+        statement.setString(1, criteria);
+        statement.setLong(2, 0L);
+        statement.setInt(3, LIMIT + 1);
+
+        List<Long> ids = new ArrayList<>(LIMIT + 1);
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next())
+                ids.add(resultSet.getLong(1));
+        }
+        return ids;
+    }
+
+    /**
+     * Fills the table up to the number of rows, the usernames and emails follow the IDs like in the API.
+     */
+    private void fill(Statement statement) throws SQLException {
+        try (ResultSet resultSet = statement.executeQuery("select count(*) from user_app")) {
+            resultSet.next();
+            if (resultSet.getLong(1) == rows)
+                return;
+        }
+
+        statement.execute("truncate user_app");
+        statement.execute("insert into user_app (id, username, email, password, version) "
+                + "select g, 'username' || g, 'Firstname.Lastname' || g || '@domain.fr', 'password', 0 "
+                + "from generate_series(1, " + rows + ") g");
+    }
+
+    /**
+     * Checks that the plan of the query scans the index meant for it, an Index Scan or a Bitmap Index Scan. A plan
+     * walking the primary key in ID order and filtering every row would not scan the table, yet be as slow.
+     */
+    private void checkPlan(String criteria, String query, String index) throws SQLException {
+        StringBuilder plan = new StringBuilder();
+        try (PreparedStatement explain = connection.prepareStatement("explain " + query)) {
+            explain.setString(1, criteria);
+            explain.setLong(2, 0L);
+            explain.setInt(3, LIMIT + 1);
+            try (ResultSet resultSet = explain.executeQuery()) {
+                while (resultSet.next())
+                    plan.append(resultSet.getString(1)).append('\n');
+            }
+        }
+
+        if (plan.indexOf("Seq Scan") >= 0)
+            throw new IllegalStateException("The search for " + criteria + " scans the table :\n" + plan);
+        if (!plan.toString().matches("(?s).*(Index Scan using|Index Only Scan using|Bitmap Index Scan on) "
+                + index + "\\b.*"))
+            throw new IllegalStateException("The search for " + criteria + " does not use " + index + " :\n" + plan);
+    }
+
+    private static void runScript(Statement statement, String resource) throws SQLException, IOException {
+        try (InputStream script = UserSearchBenchmark.class.getClassLoader().getResourceAsStream(resource)) {
+            if (script == null)
+                throw new IOException("Missing script " + resource);
+
+            String sql = new String(script.readAllBytes(), StandardCharsets.UTF_8).replaceAll("(?m)^--.*$", "");
+            for (String command : sql.split(";")) {
+                if (!command.isBlank())
+                    statement.execute(command);
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.demo.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+import com.example.demo.cache.SingleFlight;
+import com.example.demo.config.CacheSpecProperties;
+import com.example.demo.config.PasswordHashingProperties;
+import com.example.demo.user.UserRepository;
+import com.example.demo.user.UserResourceException;
+import com.example.demo.user.UserService;
+import com.example.demo.user.UserServiceImpl;
+import com.example.demo.user.cache.UserCache;
+import com.example.demo.user.dto.UserDTO;
+import com.example.demo.user.password.PasswordHasher;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+
+/**
+ * Cache hit and miss paths of {@link UserServiceImpl}, through the Spring caching proxy.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserServiceCacheBenchmark {
+
+    private static final Long USER_ID = 42L;
+    private static final Pageable PAGEABLE = PageRequest.of(2, 20);
+
+    private AnnotationConfigApplicationContext context;
+    private UserService userService;
+    private Cache usersCache;
+    private Cache pagesCache;
+
+    @Setup
+    public void setUp() throws UserResourceException {
+        context = new AnnotationConfigApplicationContext(BenchmarkConfig.class);
+        userService = context.getBean(UserService.class);
+        usersCache = context.getBean(CacheManager.class).getCache(UserCache.USERS_CACHE);
+        pagesCache = context.getBean(CacheManager.class).getCache(UserCache.PAGES_CACHE);
+
+        userService.getUserById(USER_ID);
+        userService.getAllUsers(PAGEABLE);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public UserDTO getUserByIdHit() throws UserResourceException {
+        return userService.getUserById(USER_ID);
+    }
+
+    @Benchmark
+    public UserDTO getUserByIdMiss() throws UserResourceException {
+        usersCache.evict(USER_ID);
+        return userService.getUserById(USER_ID);
+    }
+
+    @Benchmark
+    public Page<UserDTO> getAllUsersHit() {
+        return userService.getAllUsers(PAGEABLE);
+    }
+
+    @Benchmark
+    public Page<UserDTO> getAllUsersMiss() {
+        pagesCache.evict(PageRequest.of(PAGEABLE.getPageNumber(), PAGEABLE.getPageSize(), Sort.by("id")));
+        return userService.getAllUsers(PAGEABLE);
+    }
+
+    @Configuration
+    @EnableCaching
+    @Import({ UserCache.class, UserServiceImpl.class })
+    static class BenchmarkConfig {
+
+        @Bean
+        CacheManager cacheManager() {
+            CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+            cacheManager.setCaffeine(Caffeine.newBuilder().maximumSize(100_000));
+            return cacheManager;
+        }
+
+        @Bean
+        CacheSpecProperties cacheSpecProperties() {
+            return new CacheSpecProperties();
+        }
+
+        @Bean
+        SingleFlight singleFlight() {
+            return new SingleFlight(new SimpleMeterRegistry());
+        }
+
+        @Bean
+        UserRepository userRepository() {
+            return InMemoryUserRepository.create(10_000);
+        }
+
+        @Bean
+        Validator validator() {
+            return Validation.buildDefaultValidatorFactory().getValidator();
+        }
+
+        @Bean
+        PasswordHasher passwordHasher() {
+            return new PasswordHasher(new PasswordHashingProperties(), new SimpleMeterRegistry());
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.demo.cache;
+
+/**
+ * Message telling the other nodes to evict an entry of their local caches.
+ * <p>
+ * Only the Long and String keys are sent as such. The other keys, such as the pageables of the page caches, cannot
+ * be rebuilt by the receivers, so they are sent as a null key which clears the whole cache.
+ *
+ * @param nodeId    The node which published the message.
+ * @param cacheName The cache, or null for every cache.
+ * @param key       The key to evict, or null to clear the cache.
+ */
+public record CacheInvalidation(String nodeId, String cacheName, Object key) {
+
+    private static final char SEPARATOR = '|';
+
+    public static CacheInvalidation of(String nodeId, String cacheName, Object key) {
+        return new CacheInvalidation(nodeId, cacheName, isSendable(key) ? key : null);
+    }
+
+    /**
+     * @param key A key.
+     * @return true if the key is sent as such, otherwise it is sent as a clear of the cache.
+     */
+    public static boolean isSendable(Object key) {
+        return key instanceof Long || key instanceof String;
+    }
+
+    /**
+     * Encodes the message as a single line of text, e.g. {@code node-1|users-cache|L42}.
+     *
+     * @return The encoded message.
+     */
+    public String encode() {
+        String encodedKey = key instanceof Long ? "L" + key : key instanceof String ? "S" + key : "";
+        return nodeId + SEPARATOR + (cacheName != null ? cacheName : "") + SEPARATOR + encodedKey;
+    }
+
+    /**
+     * Decodes a message encoded by {@link #encode()}.
+     *
+     * @param message The encoded message.
+     * @return The message.
+     * @throws IllegalArgumentException If the message is not valid.
+     */
+    public static CacheInvalidation decode(String message) {
+        int first = message.indexOf(SEPARATOR);
+        int second = first >= 0 ? message.indexOf(SEPARATOR, first + 1) : -1;
+        if (second < 0)
+            throw new IllegalArgumentException("Invalid cache invalidation : " + message);
+
+        String cacheName = message.substring(first + 1, second);
+        String encodedKey = message.substring(second + 1);
+        Object key = switch (encodedKey.isEmpty() ? ' ' : encodedKey.charAt(0)) {
+            case 'L' -> Long.valueOf(encodedKey.substring(1));
+            case 'S' -> encodedKey.substring(1);
+            case ' ' -> null;
+            default -> throw new IllegalArgumentException("Invalid cache invalidation : " + message);
+        };
+        return new CacheInvalidation(message.substring(0, first), cacheName.isEmpty() ? null : cacheName, key);
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.demo.cache;
+
+import java.util.function.Consumer;
+
+/**
+ * Broadcasts the cache invalidations between the nodes.
+ * The delivery is best effort : the local caches have a short TTL which bounds the staleness after a lost message.
+ */
+public interface CacheInvalidationBus {
+
+    /**
+     * Sends an invalidation to every subscriber, the publisher included.
+     *
+     * @param invalidation The invalidation.
+     */
+    void publish(CacheInvalidation invalidation);
+
+    /**
+     * Registers a subscriber, called on the thread of the bus.
+     *
+     * @param subscriber The subscriber.
+     */
+    void subscribe(Consumer<CacheInvalidation> subscriber);
+}
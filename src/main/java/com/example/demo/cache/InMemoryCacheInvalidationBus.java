@@ -0,0 +1,24 @@
+package com.example.demo.cache;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * In-JVM stand-in of a message broker : the invalidations are delivered synchronously to the subscribers of the same
+ * instance. Sharing an instance between several cache managers simulates several nodes, e.g. in the tests.
+ */
+public class InMemoryCacheInvalidationBus implements CacheInvalidationBus {
+
+    private final List<Consumer<CacheInvalidation>> subscribers = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(CacheInvalidation invalidation) {
+        subscribers.forEach(subscriber -> subscriber.accept(invalidation));
+    }
+
+    @Override
+    public void subscribe(Consumer<CacheInvalidation> subscriber) {
+        subscribers.add(subscriber);
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.demo.cache;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+import javax.sql.DataSource;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Cache invalidation bus on Postgres LISTEN/NOTIFY, so that the nodes need no other broker than their database.
+ * <p>
+ * The invalidations are queued and sent by a daemon thread, so that a write does not wait for a round trip per
+ * eviction : the thread drains the queue and sends the distinct invalidations with a single pg_notify statement on a
+ * pooled connection. When the queue is full, the invalidations are dropped and an invalidation of every cache is sent
+ * instead. They are received by another daemon thread on a dedicated connection outside of the pool, which is opened
+ * again after a failure. The invalidations sent meanwhile are lost, so the subscribers then receive an invalidation
+ * of every cache.
+ */
+@Slf4j
+public class PostgresCacheInvalidationBus implements CacheInvalidationBus, AutoCloseable {
+
+    private static final Pattern CHANNEL = Pattern.compile("[a-z_][a-z0-9_]*");
+    private static final int POLL_TIMEOUT_MILLIS = 1000;
+    private static final Duration RECONNECT_DELAY = Duration.ofSeconds(5);
+    private static final int QUEUE_CAPACITY = 10_000;
+    private static final int MAX_BATCH_SIZE = 500;
+    private static final String NOTIFY = "select pg_notify(?, message) from unnest(?) message";
+
+    private final DataSource dataSource;
+    private final String url;
+    private final String username;
+    private final String password;
+    private final String channel;
+    private final List<Consumer<CacheInvalidation>> subscribers = new CopyOnWriteArrayList<>();
+    private final BlockingQueue<CacheInvalidation> queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread listener;
+    private final Thread sender;
+
+    private volatile boolean running = true;
+    private volatile String overflowedNodeId;
+
+    /**
+     * @param dataSource The pool used to send the invalidations.
+     * @param url        The JDBC URL of the dedicated listening connection.
+     * @param username   The user of the listening connection.
+     * @param password   The password of the listening connection.
+     * @param channel    The notification channel, a lower case identifier.
+     */
+    public PostgresCacheInvalidationBus(DataSource dataSource, String url, String username, String password,
+            String channel) {
+        if (!CHANNEL.matcher(channel).matches())
+            throw new IllegalArgumentException("Invalid notification channel : " + channel);
+
+        this.dataSource = dataSource;
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.channel = channel;
+        this.listener = new Thread(this::listen, "cache-invalidation-listener");
+        this.listener.setDaemon(true);
+        this.sender = new Thread(this::send, "cache-invalidation-sender");
+        this.sender.setDaemon(true);
+    }
+
+    public void start() {
+        listener.start();
+        sender.start();
+    }
+
+    @Override
+    public void publish(CacheInvalidation invalidation) {
+        if (!queue.offer(invalidation))
+            overflowedNodeId = invalidation.nodeId();
+    }
+
+    @Override
+    public void subscribe(Consumer<CacheInvalidation> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    /**
+     * Stops the threads, the invalidations still queued are sent first.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        running = false;
+        listener.interrupt();
+        listener.join(POLL_TIMEOUT_MILLIS * 2L);
+        sender.join(POLL_TIMEOUT_MILLIS * 2L);
+    }
+
+    private void send() {
+        List<CacheInvalidation> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        while (running || !queue.isEmpty()) {
+            try {
+                CacheInvalidation invalidation = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (invalidation != null) {
+                    batch.add(invalidation);
+                    queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            String nodeId = overflowedNodeId;
+            if (nodeId != null) {
+                overflowedNodeId = null;
+                batch.add(new CacheInvalidation(nodeId, null, null));
+            }
+            if (!batch.isEmpty())
+                send(batch);
+            batch.clear();
+        }
+    }
+
+    private void send(List<CacheInvalidation> batch) {
+        String[] messages = batch.stream().map(CacheInvalidation::encode).distinct().toArray(String[]::new);
+        try (Connection connection = dataSource.getConnection();
+                PreparedStatement statement = connection.prepareStatement(NOTIFY)) {
+            statement.setString(1, channel);
+            statement.setArray(2, connection.createArrayOf("text", messages));
+            statement.execute();
+        } catch (SQLException e) {
+            // The other nodes stay stale until the TTL of their local caches.
+            log.warn("Cannot publish {} cache invalidations", messages.length, e);
+        }
+    }
+
+    private void listen() {
+        boolean reconnected = false;
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(url, username, password)) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("listen " + channel);
+                }
+                if (reconnected)
+                    deliver(new CacheInvalidation(null, null, null));
+
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(POLL_TIMEOUT_MILLIS);
+                    if (notifications != null)
+                        for (PGNotification notification : notifications)
+                            receive(notification.getParameter());
+                }
+            } catch (SQLException e) {
+                if (!running)
+                    return;
+                log.warn("Cache invalidation listener disconnected, reconnecting in {}", RECONNECT_DELAY, e);
+                reconnected = true;
+                try {
+                    Thread.sleep(RECONNECT_DELAY.toMillis());
+                } catch (InterruptedException interruptedException) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void receive(String message) {
+        try {
+            deliver(CacheInvalidation.decode(message));
+        } catch (IllegalArgumentException e) {
+            log.warn("Ignoring an invalid cache invalidation : {}", message);
+        }
+    }
+
+    private void deliver(CacheInvalidation invalidation) {
+        for (Consumer<CacheInvalidation> subscriber : subscribers) {
+            try {
+                subscriber.accept(invalidation);
+            } catch (RuntimeException e) {
+                log.warn("Cannot apply the cache invalidation {}", invalidation, e);
+            }
+        }
+    }
+}
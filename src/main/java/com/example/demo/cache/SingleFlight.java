@@ -0,0 +1,147 @@
+package com.example.demo.cache;
+
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Coalesces the concurrent loads of a cache entry : the first caller missing a key runs the load, the callers
+ * missing the same key meanwhile wait for its result instead of querying the database too. An exception of the load
+ * is thrown to every waiting caller, nothing is remembered once the load is over.
+ * <p>
+ * It also reloads entries ahead of their expiration on a small background pool, at most one reload per key at a
+ * time, so that the hot entries never expire under load. A reload is dropped when the pool is saturated.
+ * <p>
+ * Metrics, tagged by cache : {@code cache.loads.coalesced} (callers which waited for the load of another caller)
+ * and {@code cache.refreshes} (entries reloaded ahead of their expiration).
+ */
+@Slf4j
+public class SingleFlight implements AutoCloseable {
+
+    private static final int REFRESH_THREADS = 2;
+    private static final int REFRESH_QUEUE_CAPACITY = 100;
+
+    private final ConcurrentMap<FlightKey, CompletableFuture<Object>> flights = new ConcurrentHashMap<>();
+    private final Set<FlightKey> refreshes = ConcurrentHashMap.newKeySet();
+    private final ThreadPoolExecutor refreshExecutor;
+    private final MeterRegistry meterRegistry;
+
+    public SingleFlight(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.refreshExecutor = new ThreadPoolExecutor(REFRESH_THREADS, REFRESH_THREADS, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(REFRESH_QUEUE_CAPACITY), threadFactory());
+    }
+
+    /**
+     * Loads an entry, or waits for the load of the same entry already running.
+     *
+     * @param cacheName The name of the cache, the keys of different caches never coalesce.
+     * @param key       The key of the entry.
+     * @param loader    Loads the entry, it is expected to put it in the cache.
+     * @param <T>       The type of the entry.
+     * @param <E>       The exception thrown by the loader.
+     * @return The loaded entry.
+     * @throws E If the loader fails, for the caller running it and for the waiting callers.
+     */
+    public <T, E extends Exception> T load(String cacheName, Object key, Loader<T, E> loader) throws E {
+        FlightKey flightKey = new FlightKey(cacheName, key);
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> runningFlight = flights.putIfAbsent(flightKey, flight);
+        if (runningFlight != null) {
+            meterRegistry.counter("cache.loads.coalesced", "cache", cacheName).increment();
+            return await(runningFlight);
+        }
+
+        try {
+            T value = loader.load();
+            flight.complete(value);
+            return value;
+        } catch (Throwable e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            flights.remove(flightKey, flight);
+        }
+    }
+
+    /**
+     * Reloads an entry in the background, unless a reload of the entry is already pending. A reload coalesces with
+     * the loads of the callers missing the entry meanwhile.
+     *
+     * @param cacheName The name of the cache.
+     * @param key       The key of the entry.
+     * @param loader    Loads the entry, without putting it in the cache.
+     * @param onLoaded  Puts the reloaded entry in the cache.
+     * @param <T>       The type of the entry.
+     */
+    public <T> void refresh(String cacheName, Object key, Loader<T, ?> loader, Consumer<T> onLoaded) {
+        FlightKey flightKey = new FlightKey(cacheName, key);
+        if (!refreshes.add(flightKey))
+            return;
+
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    T value = load(cacheName, key, loader);
+                    meterRegistry.counter("cache.refreshes", "cache", cacheName).increment();
+                    onLoaded.accept(value);
+                } catch (Exception e) {
+                    log.debug("Unable to refresh the entry {} of the cache {}", key, cacheName, e);
+                } finally {
+                    refreshes.remove(flightKey);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshes.remove(flightKey);
+        }
+    }
+
+    @Override
+    public void close() {
+        refreshExecutor.shutdownNow();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T, E extends Exception> T await(CompletableFuture<Object> flight) throws E {
+        try {
+            return (T) flight.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException)
+                throw runtimeException;
+            if (cause instanceof Error error)
+                throw error;
+            // The callers of a key share the same loader, so its checked exception is an E.
+            throw (E) cause;
+        }
+    }
+
+    private static ThreadFactory threadFactory() {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "cache-refresh-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private record FlightKey(String cacheName, Object key) {
+    }
+
+    @FunctionalInterface
+    public interface Loader<T, E extends Exception> {
+        T load() throws E;
+    }
+}
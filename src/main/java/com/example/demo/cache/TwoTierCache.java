@@ -0,0 +1,164 @@
+package com.example.demo.cache;
+
+import java.util.Collection;
+import java.util.concurrent.Callable;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+/**
+ * Cache made of a small local L1 in front of a shared L2.
+ * <p>
+ * The reads try the L1 first, then the L2, whose hits are copied into the L1. The writes go to both tiers. A put is
+ * not broadcast, since the fills of the reads are puts too : the write paths which replace a value evict it first,
+ * and every eviction is published so that the other nodes drop the entry from their L1. When the L2 is node-local,
+ * the other nodes drop it from their L2 too, see {@link TwoTierCacheManager}.
+ */
+public class TwoTierCache implements Cache {
+
+    private final Cache local;
+    private final Cache shared;
+    private final Publisher publisher;
+
+    public TwoTierCache(Cache local, Cache shared, Publisher publisher) {
+        this.local = local;
+        this.shared = shared;
+        this.publisher = publisher;
+    }
+
+    public Cache getLocal() {
+        return local;
+    }
+
+    public Cache getShared() {
+        return shared;
+    }
+
+    @Override
+    public String getName() {
+        return local.getName();
+    }
+
+    /**
+     * Returns the native cache of the L2, which holds the entries of every node.
+     */
+    @Override
+    public Object getNativeCache() {
+        return shared.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        ValueWrapper value = local.get(key);
+        if (value != null)
+            return value;
+
+        value = shared.get(key);
+        if (value != null)
+            local.put(key, value.get());
+        return value;
+    }
+
+    @Override
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper value = get(key);
+        if (value == null)
+            return null;
+
+        Object cachedValue = value.get();
+        if (cachedValue != null && type != null && !type.isInstance(cachedValue))
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: "
+                    + cachedValue);
+        return type != null ? type.cast(cachedValue) : null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper value = get(key);
+        if (value != null)
+            return (T) value.get();
+
+        T loadedValue = shared.get(key, valueLoader);
+        local.put(key, loadedValue);
+        return loadedValue;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        shared.put(key, value);
+        local.put(key, value);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        ValueWrapper existingValue = shared.putIfAbsent(key, value);
+        Object currentValue = existingValue != null ? existingValue.get() : value;
+        local.put(key, currentValue);
+        return existingValue != null ? new SimpleValueWrapper(currentValue) : null;
+    }
+
+    @Override
+    public void evict(Object key) {
+        shared.evict(key);
+        local.evict(key);
+        publisher.publish(getName(), key);
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        boolean present = shared.evictIfPresent(key) | local.evictIfPresent(key);
+        publisher.publish(getName(), key);
+        return present;
+    }
+
+    /**
+     * Evicts the keys of one write and publishes them together : when one of them cannot be sent, e.g. a pageable,
+     * a single clear is published rather than a clear per key.
+     *
+     * @param keys The keys to evict.
+     */
+    public void evictAll(Collection<?> keys) {
+        if (keys.isEmpty())
+            return;
+
+        boolean sendable = true;
+        for (Object key : keys) {
+            shared.evict(key);
+            local.evict(key);
+            sendable &= CacheInvalidation.isSendable(key);
+        }
+
+        if (sendable)
+            keys.forEach(key -> publisher.publish(getName(), key));
+        else
+            publisher.publish(getName(), null);
+    }
+
+    @Override
+    public void clear() {
+        shared.clear();
+        local.clear();
+        publisher.publish(getName(), null);
+    }
+
+    @Override
+    public boolean invalidate() {
+        boolean present = shared.invalidate() | local.invalidate();
+        publisher.publish(getName(), null);
+        return present;
+    }
+
+    /**
+     * Publishes the evictions of a cache to the other nodes.
+     */
+    @FunctionalInterface
+    public interface Publisher {
+
+        /**
+         * @param cacheName The cache.
+         * @param key       The evicted key, or null when the cache is cleared.
+         */
+        void publish(String cacheName, Object key);
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.demo.cache;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Cache manager combining a local L1 cache manager and a shared L2 cache manager into {@link TwoTierCache}s.
+ * <p>
+ * The evictions of the caches are published on the {@link CacheInvalidationBus}, and the evictions published by the
+ * other nodes are applied to the L1 of this node. When the L2 is not shared between the nodes, e.g. the in-memory
+ * fallback, they are applied to the L2 too, so that each node is at worst as stale as its L1.
+ * <p>
+ * Metrics : {@code cache.invalidations}, tagged with {@code direction} published or received.
+ */
+public class TwoTierCacheManager implements CacheManager {
+
+    private final CacheManager localCacheManager;
+    private final CacheManager sharedCacheManager;
+    private final boolean sharedAcrossNodes;
+    private final CacheInvalidationBus invalidationBus;
+    private final String nodeId;
+    private final Map<String, TwoTierCache> caches = new ConcurrentHashMap<>();
+    private final Counter publishedCounter;
+    private final Counter receivedCounter;
+
+    /**
+     * @param localCacheManager  The L1 of this node, small and with a short TTL.
+     * @param sharedCacheManager The L2.
+     * @param sharedAcrossNodes  Whether the L2 is the same for every node, otherwise it is invalidated like the L1.
+     * @param invalidationBus    The bus carrying the invalidations between the nodes.
+     * @param nodeId             The ID of this node, unique among the nodes.
+     * @param meterRegistry      The registry of the invalidation counters.
+     */
+    public TwoTierCacheManager(CacheManager localCacheManager, CacheManager sharedCacheManager,
+            boolean sharedAcrossNodes, CacheInvalidationBus invalidationBus, String nodeId,
+            MeterRegistry meterRegistry) {
+        this.localCacheManager = localCacheManager;
+        this.sharedCacheManager = sharedCacheManager;
+        this.sharedAcrossNodes = sharedAcrossNodes;
+        this.invalidationBus = invalidationBus;
+        this.nodeId = nodeId;
+        this.publishedCounter = Counter.builder("cache.invalidations")
+                .description("Cache invalidations exchanged with the other nodes")
+                .tag("direction", "published")
+                .register(meterRegistry);
+        this.receivedCounter = Counter.builder("cache.invalidations")
+                .description("Cache invalidations exchanged with the other nodes")
+                .tag("direction", "received")
+                .register(meterRegistry);
+
+        invalidationBus.subscribe(this::onInvalidation);
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        TwoTierCache cache = caches.get(name);
+        if (cache != null)
+            return cache;
+
+        Cache local = localCacheManager.getCache(name);
+        Cache shared = sharedCacheManager.getCache(name);
+        if (local == null || shared == null)
+            return null;
+
+        return caches.computeIfAbsent(name, cacheName -> new TwoTierCache(local, shared, this::publish));
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        Set<String> names = new LinkedHashSet<>(localCacheManager.getCacheNames());
+        names.addAll(caches.keySet());
+        return names;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    private void publish(String cacheName, Object key) {
+        invalidationBus.publish(CacheInvalidation.of(nodeId, cacheName, key));
+        publishedCounter.increment();
+    }
+
+    private void onInvalidation(CacheInvalidation invalidation) {
+        if (nodeId.equals(invalidation.nodeId()))
+            return;
+
+        receivedCounter.increment();
+        if (invalidation.cacheName() == null) {
+            getCacheNames().forEach(name -> evict(name, null));
+            return;
+        }
+        evict(invalidation.cacheName(), invalidation.key());
+    }
+
+    private void evict(String cacheName, Object key) {
+        evict(localCacheManager.getCache(cacheName), key);
+        if (!sharedAcrossNodes)
+            evict(sharedCacheManager.getCache(cacheName), key);
+    }
+
+    private static void evict(Cache cache, Object key) {
+        if (cache == null)
+            return;
+
+        if (key != null)
+            cache.evict(key);
+        else
+            cache.clear();
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.demo.config;
+
+import java.util.Map;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.example.demo.cache.SingleFlight;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Cache configuration : every cache is a bounded Caffeine cache (W-TinyLFU eviction) with its own size and TTL.
+ * Statistics are recorded so that the hit rate, the evictions and the load latency of each cache are
+ * published by Actuator under {@code /actuator/metrics/cache.*}.
+ * <p>
+ * This single tier is used unless the two-tier mode is enabled, see {@link TwoTierCacheConfig}. In both modes the
+ * concurrent misses of a key are coalesced by the {@link SingleFlight}.
+ */
+@Configuration
+@EnableConfigurationProperties(CacheSpecProperties.class)
+public class CacheConfig {
+
+	@Bean
+	@ConditionalOnProperty(prefix = "app.cache.two-tier", name = "enabled", havingValue = "false", matchIfMissing = true)
+	public CacheManager cacheManager(CacheSpecProperties properties) {
+		return caffeineCacheManager(properties.getDefaultSpec(), properties.getSpecs());
+	}
+
+	@Bean
+	public SingleFlight singleFlight(MeterRegistry meterRegistry) {
+		return new SingleFlight(meterRegistry);
+	}
+
+	static CaffeineCacheManager caffeineCacheManager(String defaultSpec, Map<String, String> specs) {
+		CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+		cacheManager.setCaffeine(Caffeine.from(defaultSpec).recordStats());
+
+		// Caches registered up front are known at startup, which lets Actuator bind their metrics.
+		specs.forEach((name, spec) -> cacheManager.registerCustomCache(name, Caffeine.from(spec).recordStats().build()));
+
+		return cacheManager;
+	}
+}
@@ -0,0 +1,109 @@
+package com.example.demo.config;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * Caffeine specifications of the application caches, read from the {@code app.cache} properties.
+ */
+@Data
+@ConfigurationProperties(prefix = "app.cache")
+public class CacheSpecProperties {
+
+	/**
+	 * Specification used for the caches which are not listed in {@link #specs}.
+	 */
+	private String defaultSpec = "maximumSize=100,expireAfterWrite=5m";
+
+	/**
+	 * Specification of each named cache, e.g. {@code maximumSize=10000,expireAfterWrite=10m}.
+	 */
+	private Map<String, String> specs = new LinkedHashMap<>();
+
+	/**
+	 * Whether the GET user responses are cached as encoded JSON bytes.
+	 */
+	private boolean encodedResponses = false;
+
+	/**
+	 * Fraction of the expireAfterWrite of the users and pages caches after which a hit reloads the entry in the
+	 * background, e.g. 0.8 reloads a 10m entry hit after 8m. The entries which are not hit still expire. 0 disables
+	 * the refresh-ahead.
+	 */
+	private double refreshAhead = 0;
+
+	/**
+	 * Two-tier mode, for several nodes : see {@link TwoTierCacheConfig}.
+	 */
+	private TwoTier twoTier = new TwoTier();
+
+	/**
+	 * Warm-up of the user caches on startup, see {@link com.example.demo.user.UserCacheWarmUp}.
+	 */
+	private WarmUp warmUp = new WarmUp();
+
+	@Data
+	public static class TwoTier {
+
+		/**
+		 * Whether each cache is a local L1 in front of a L2, the evictions being broadcast to the other nodes.
+		 */
+		private boolean enabled = false;
+
+		/**
+		 * Specification of the L1 of every cache, small and short-lived since it bounds the staleness after a lost
+		 * invalidation. The L2 caches use {@link CacheSpecProperties#specs} when they are in memory.
+		 */
+		private String localSpec = "maximumSize=1000,expireAfterWrite=30s";
+
+		/**
+		 * Broker of the invalidations : postgres (LISTEN/NOTIFY) or in-memory (single JVM, for the tests).
+		 */
+		private String broker = "postgres";
+
+		/**
+		 * Postgres notification channel of the invalidations.
+		 */
+		private String channel = "cache_invalidation";
+
+		/**
+		 * ID of this node, unique among the nodes.
+		 */
+		private String nodeId = UUID.randomUUID().toString();
+	}
+
+	@Data
+	public static class WarmUp {
+
+		/**
+		 * Whether the user caches are filled before the application reports ready.
+		 */
+		private boolean enabled = false;
+
+		/**
+		 * Number of most accessed users saved on shutdown and loaded back on startup.
+		 */
+		private int users = 1000;
+
+		/**
+		 * Number of first pages loaded on startup.
+		 */
+		private int pages = 5;
+
+		/**
+		 * Size of the pages loaded on startup, the default page size of the API.
+		 */
+		private int pageSize = 5;
+
+		/**
+		 * File of the IDs of the most accessed users, one per line, written on shutdown.
+		 */
+		private Path snapshotFile = Path.of("data", "users-hot-keys.txt");
+	}
+}
@@ -0,0 +1,33 @@
+package com.example.demo.config;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+/**
+ * Wraps the DataSource in a {@link ConnectionLimitingDataSource} when
+ * {@code app.datasource.max-concurrent-connections} is set.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "app.datasource", name = "max-concurrent-connections")
+public class ConnectionLimitConfig {
+
+	@Bean
+	public static BeanPostProcessor connectionLimitingDataSourcePostProcessor(Environment environment) {
+		int maxConnections = environment.getRequiredProperty("app.datasource.max-concurrent-connections", Integer.class);
+		long timeoutMillis = environment.getProperty("app.datasource.connection-wait-timeout", Long.class, 5000L);
+
+		return new BeanPostProcessor() {
+			@Override
+			public Object postProcessAfterInitialization(Object bean, String beanName) {
+				if (bean instanceof DataSource dataSource && !(bean instanceof ConnectionLimitingDataSource))
+					return new ConnectionLimitingDataSource(dataSource, maxConnections, timeoutMillis);
+				return bean;
+			}
+		};
+	}
+}
@@ -0,0 +1,88 @@
+package com.example.demo.config;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+/**
+ * DataSource limiting the number of connections borrowed at the same time with a fair semaphore.
+ * <p>
+ * Sized like the connection pool, it makes the callers queue cheaply in front of the pool, which matters when
+ * requests run on virtual threads and their number is no longer capped by the Tomcat thread pool.
+ */
+public class ConnectionLimitingDataSource extends DelegatingDataSource {
+
+	private final Semaphore permits;
+	private final long timeoutMillis;
+
+	public ConnectionLimitingDataSource(DataSource targetDataSource, int maxConnections, long timeoutMillis) {
+		super(targetDataSource);
+		this.permits = new Semaphore(maxConnections, true);
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		acquire();
+		try {
+			return releasingOnClose(super.getConnection());
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		acquire();
+		try {
+			return releasingOnClose(super.getConnection(username, password));
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	public int getAvailablePermits() {
+		return permits.availablePermits();
+	}
+
+	public int getQueueLength() {
+		return permits.getQueueLength();
+	}
+
+	private void acquire() throws SQLException {
+		try {
+			if (!permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS))
+				throw new SQLTransientConnectionException(
+						"No connection available after " + timeoutMillis + "ms, the pool is saturated.");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLTransientConnectionException("Interrupted while waiting for a connection.", e);
+		}
+	}
+
+	private Connection releasingOnClose(Connection connection) {
+		AtomicBoolean released = new AtomicBoolean();
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class },
+				(proxy, method, args) -> {
+					try {
+						return method.invoke(connection, args);
+					} catch (InvocationTargetException e) {
+						throw e.getTargetException();
+					} finally {
+						if (method.getName().equals("close") && released.compareAndSet(false, true))
+							permits.release();
+					}
+				});
+	}
+}
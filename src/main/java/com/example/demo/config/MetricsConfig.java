@@ -0,0 +1,31 @@
+package com.example.demo.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Metrics exposed on {@code /actuator/prometheus} :
+ * <ul>
+ * <li>{@code user.service} : latency of each UserService method, from the {@code @Timed} of UserServiceImpl.</li>
+ * <li>{@code spring.data.repository.invocations} : latency of each UserRepository query.</li>
+ * <li>{@code cache.gets} / {@code cache.evictions} : hits, misses and evictions of each named cache.</li>
+ * <li>{@code hikaricp.connections.acquire} : time spent waiting for a pooled connection.</li>
+ * <li>{@code http.server.requests} : latency of each endpoint.</li>
+ * <li>{@code api.errors} : errors of each endpoint by error code, from GlobalHandlerControllerException.</li>
+ * <li>{@code password.hashing.*} : hashing time, queue depth and rejections of the PasswordHasher pool.</li>
+ * <li>{@code user.write.behind.*} : pending and coalesced updates of the write-behind mode, when enabled.</li>
+ * <li>{@code datasource.routing} / {@code datasource.replica.*} : connections by pool, health and lag of the read
+ * replicas, when enabled.</li>
+ * </ul>
+ */
+@Configuration
+public class MetricsConfig {
+
+	@Bean
+	public TimedAspect timedAspect(MeterRegistry meterRegistry) {
+		return new TimedAspect(meterRegistry);
+	}
+}
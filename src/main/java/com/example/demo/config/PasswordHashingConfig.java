@@ -0,0 +1,23 @@
+package com.example.demo.config;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.example.demo.user.password.PasswordHasher;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Password hashing runs on its own bounded pool rather than on the request threads, so that a burst of signups
+ * uses at most {@code app.password-hashing.threads} cores and the other endpoints keep their CPU.
+ */
+@Configuration
+@EnableConfigurationProperties(PasswordHashingProperties.class)
+public class PasswordHashingConfig {
+
+	@Bean
+	public PasswordHasher passwordHasher(PasswordHashingProperties properties, MeterRegistry meterRegistry) {
+		return new PasswordHasher(properties, meterRegistry);
+	}
+}
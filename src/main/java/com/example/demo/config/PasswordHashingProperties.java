@@ -0,0 +1,35 @@
+package com.example.demo.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * Settings of the password hashing pool, read from the {@code app.password-hashing} properties.
+ */
+@Data
+@ConfigurationProperties(prefix = "app.password-hashing")
+public class PasswordHashingProperties {
+
+	/**
+	 * BCrypt cost factor (log2 of the rounds), each increment doubles the hashing time.
+	 */
+	private int cost = 10;
+
+	/**
+	 * Number of hashing threads, the number of cores by default.
+	 */
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Number of hashes waiting for a thread, beyond which the requests are rejected with a 503.
+	 */
+	private int queueCapacity = 256;
+
+	/**
+	 * Delay sent in the Retry-After header of the rejected requests.
+	 */
+	private Duration retryAfter = Duration.ofSeconds(1);
+}
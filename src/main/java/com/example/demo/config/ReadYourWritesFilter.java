@@ -0,0 +1,74 @@
+package com.example.demo.config;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Set;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Read-your-writes window of the replica routing : a write sets a cookie holding the end of the window, and the
+ * requests carrying an unexpired cookie read from the primary. A client therefore never reads one of its own writes
+ * from a replica which has not replayed it yet, while the other clients keep reading from the replicas.
+ */
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+	static final String COOKIE_NAME = "read-your-writes";
+
+	private static final Set<String> READ_METHODS = Set.of(HttpMethod.GET.name(), HttpMethod.HEAD.name(),
+			HttpMethod.OPTIONS.name());
+
+	private final Duration window;
+
+	public ReadYourWritesFilter(Duration window) {
+		this.window = window;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+		boolean write = !READ_METHODS.contains(request.getMethod());
+		if (write) {
+			Cookie cookie = new Cookie(COOKIE_NAME, String.valueOf(System.currentTimeMillis() + window.toMillis()));
+			cookie.setPath("/");
+			cookie.setHttpOnly(true);
+			cookie.setMaxAge((int) Math.max(1, window.toSeconds()));
+			response.addCookie(cookie);
+		}
+
+		if (!write && !inWindow(request)) {
+			filterChain.doFilter(request, response);
+			return;
+		}
+
+		try (ReplicaRoutingDataSource.PrimaryScope scope = ReplicaRoutingDataSource.usePrimary()) {
+			filterChain.doFilter(request, response);
+		}
+	}
+
+	/**
+	 * Checks the end of the window held by the cookie, for the clients which do not honor its Max-Age.
+	 */
+	private static boolean inWindow(HttpServletRequest request) {
+		if (request.getCookies() == null)
+			return false;
+
+		for (Cookie cookie : request.getCookies()) {
+			if (!COOKIE_NAME.equals(cookie.getName()))
+				continue;
+			try {
+				return Long.parseLong(cookie.getValue()) > System.currentTimeMillis();
+			} catch (NumberFormatException e) {
+				return false;
+			}
+		}
+		return false;
+	}
+}
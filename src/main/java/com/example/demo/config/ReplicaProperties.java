@@ -0,0 +1,73 @@
+package com.example.demo.config;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * Read replicas of the database, read from the {@code app.datasource.replicas} properties.
+ */
+@Data
+@ConfigurationProperties(prefix = "app.datasource.replicas")
+public class ReplicaProperties {
+
+	/**
+	 * Whether the read-only transactions are routed to the replicas, see {@link ReplicaRoutingDataSource}.
+	 */
+	private boolean enabled = false;
+
+	/**
+	 * JDBC URLs of the replicas, connected with the credentials and the Hikari settings of spring.datasource.
+	 */
+	private List<String> urls = new ArrayList<>();
+
+	/**
+	 * Maximum size of the pool of each replica.
+	 */
+	private int maximumPoolSize = 10;
+
+	/**
+	 * Delay after a write during which the reads of the same client go to the primary, null for the most a replica
+	 * can lag behind while still receiving reads, see {@link #resolveReadYourWritesWindow()}.
+	 */
+	private Duration readYourWritesWindow;
+
+	/**
+	 * Delay between two health checks of the replicas.
+	 */
+	private Duration healthCheckInterval = Duration.ofSeconds(5);
+
+	/**
+	 * Replication lag beyond which a replica is ejected until it catches up.
+	 */
+	private Duration maxLag = Duration.ofSeconds(10);
+
+	/**
+	 * Query returning the replication lag in seconds, 0 when the replica has replayed everything it received.
+	 * Blank to only check that the replica answers.
+	 */
+	private String lagQuery = "select case when pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() then 0 "
+			+ "else extract(epoch from now() - pg_last_xact_replay_timestamp()) end";
+
+	/**
+	 * Returns the read-your-writes window. A replica lagging by up to the max lag is healthy, and it is only ejected
+	 * at the next health check beyond, so a shorter window would send the reads of a client to a replica which has
+	 * not replayed its writes yet.
+	 *
+	 * @return The configured window, by default the max lag plus the health check interval.
+	 * @throws IllegalStateException If the configured window is shorter than that.
+	 */
+	public Duration resolveReadYourWritesWindow() {
+		Duration minimumWindow = maxLag.plus(healthCheckInterval);
+		if (readYourWritesWindow == null)
+			return minimumWindow;
+		if (readYourWritesWindow.compareTo(minimumWindow) < 0)
+			throw new IllegalStateException("app.datasource.replicas.read-your-writes-window (" + readYourWritesWindow
+					+ ") must cover max-lag + health-check-interval (" + minimumWindow + ").");
+		return readYourWritesWindow;
+	}
+}
@@ -0,0 +1,77 @@
+package com.example.demo.config;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Routes the read-only transactions to the read replicas when {@code app.datasource.replicas.enabled} is true, see
+ * {@link ReplicaRoutingDataSource}.
+ * <p>
+ * It replaces the DataSource of Spring Boot : the primary pool is built from the spring.datasource properties as
+ * Spring Boot would, and each replica gets a pool with the same settings. The repository queries are read-only
+ * transactions unless declared otherwise, so the GET endpoints read from the replicas while the writes, and the
+ * reads of a client within its read-your-writes window, go to the primary.
+ */
+@Configuration
+@EnableConfigurationProperties(ReplicaProperties.class)
+@ConditionalOnProperty(prefix = "app.datasource.replicas", name = "enabled", havingValue = "true")
+public class ReplicaRoutingConfig {
+
+	private static final String HIKARI_PREFIX = "spring.datasource.hikari";
+
+	@Bean(initMethod = "start", destroyMethod = "close")
+	public ReplicaRoutingDataSource dataSource(DataSourceProperties dataSourceProperties,
+			ReplicaProperties replicaProperties, Environment environment, MeterRegistry meterRegistry) {
+		HikariDataSource primary = pool(dataSourceProperties, dataSourceProperties.determineUrl(),
+				ReplicaRoutingDataSource.PRIMARY, environment, meterRegistry);
+
+		Map<String, DataSource> replicas = new LinkedHashMap<>();
+		for (int i = 0; i < replicaProperties.getUrls().size(); i++) {
+			String name = "replica-" + (i + 1);
+			HikariDataSource replica = pool(dataSourceProperties, replicaProperties.getUrls().get(i), name,
+					environment, meterRegistry);
+			replica.setMaximumPoolSize(replicaProperties.getMaximumPoolSize());
+			replica.setReadOnly(true);
+			// A replica down at startup is ejected by the health checks instead of failing the start.
+			replica.setInitializationFailTimeout(-1);
+			replicas.put(name, replica);
+		}
+
+		return new ReplicaRoutingDataSource(primary, replicas, replicaProperties, meterRegistry);
+	}
+
+	@Bean
+	@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+	public ReadYourWritesFilter readYourWritesFilter(ReplicaProperties replicaProperties) {
+		return new ReadYourWritesFilter(replicaProperties.resolveReadYourWritesWindow());
+	}
+
+	private static HikariDataSource pool(DataSourceProperties dataSourceProperties, String url, String name,
+			Environment environment, MeterRegistry meterRegistry) {
+		HikariDataSource dataSource = dataSourceProperties.initializeDataSourceBuilder()
+				.type(HikariDataSource.class)
+				.url(url)
+				.build();
+		Binder.get(environment).bind(HIKARI_PREFIX, Bindable.ofInstance(dataSource));
+		dataSource.setPoolName(name);
+		dataSource.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+		return dataSource;
+	}
+}
@@ -0,0 +1,221 @@
+package com.example.demo.config;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * DataSource sending the read-only transactions to the replicas, round robin, and everything else to the primary.
+ * <p>
+ * The connections are lazy : a transaction only gets a physical connection on its first statement, once its
+ * read-only flag is known, and a transaction served from the caches gets none. The reads run on the primary when no
+ * replica is healthy and during {@link #usePrimary()}, e.g. the read-your-writes window of a client or the loads which
+ * fill the user caches : only the reads which bypass the caches are sent to the replicas.
+ * <p>
+ * The replicas are checked periodically : a replica which does not answer, or lags more than the max lag, is ejected
+ * until a later check finds it healthy again. A replica failing to give a connection is ejected at once and the
+ * transaction falls back to the primary.
+ * <p>
+ * Metrics : {@code datasource.routing} (connections by target), {@code datasource.replica.healthy} and
+ * {@code datasource.replica.lag} (seconds) by replica, and the {@code hikaricp.*} metrics of each pool.
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends LazyConnectionDataSourceProxy implements AutoCloseable {
+
+	static final String PRIMARY = "primary";
+
+	private static final ThreadLocal<Boolean> PRIMARY_ONLY = new ThreadLocal<>();
+
+	private final DataSource primary;
+	private final List<Replica> replicas = new ArrayList<>();
+	private final AtomicInteger nextReplica = new AtomicInteger();
+	private final ReplicaProperties properties;
+	private final MeterRegistry meterRegistry;
+	private final ScheduledExecutorService healthChecker;
+
+	public ReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicas, ReplicaProperties properties,
+			MeterRegistry meterRegistry) {
+		this.primary = primary;
+		this.properties = properties;
+		this.meterRegistry = meterRegistry;
+		this.healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "replica-health-check");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		replicas.forEach((name, dataSource) -> {
+			Replica replica = new Replica(name, dataSource);
+			this.replicas.add(replica);
+			Gauge.builder("datasource.replica.healthy", replica, r -> r.healthy ? 1 : 0)
+					.description("Whether the replica receives the reads")
+					.tag("replica", name)
+					.register(meterRegistry);
+			Gauge.builder("datasource.replica.lag", replica, r -> r.lagSeconds)
+					.description("Replication lag of the replica at its last health check")
+					.baseUnit("seconds")
+					.tag("replica", name)
+					.register(meterRegistry);
+		});
+
+		setTargetDataSource(new Router(primary));
+	}
+
+	/**
+	 * Sends the reads of the current thread to the primary until the returned scope is closed. The scopes nest : the
+	 * scope opened within another one leaves the outer one in force when closed.
+	 *
+	 * @return The scope, to close once the reads are done.
+	 */
+	public static PrimaryScope usePrimary() {
+		if (isPrimaryOnly())
+			return () -> {
+			};
+
+		PRIMARY_ONLY.set(Boolean.TRUE);
+		return PRIMARY_ONLY::remove;
+	}
+
+	static boolean isPrimaryOnly() {
+		return PRIMARY_ONLY.get() != null;
+	}
+
+	public void start() {
+		long interval = properties.getHealthCheckInterval().toMillis();
+		healthChecker.scheduleWithFixedDelay(this::checkReplicas, 0, interval, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void close() throws Exception {
+		healthChecker.shutdownNow();
+		for (Replica replica : replicas) {
+			if (replica.dataSource instanceof AutoCloseable closeable)
+				closeable.close();
+		}
+		if (primary instanceof AutoCloseable closeable)
+			closeable.close();
+	}
+
+	/**
+	 * Checks every replica : it is healthy if it answers and its lag is below the max lag.
+	 */
+	void checkReplicas() {
+		for (Replica replica : replicas) {
+			try (Connection connection = replica.dataSource.getConnection()) {
+				replica.lagSeconds = lag(connection);
+				if (replica.lagSeconds > properties.getMaxLag().toMillis() / 1000.0)
+					eject(replica, "it lags " + replica.lagSeconds + "s behind the primary");
+				else if (!replica.healthy) {
+					log.info("The replica {} is healthy again", replica.name);
+					replica.healthy = true;
+				}
+			} catch (SQLException | RuntimeException e) {
+				eject(replica, e.getMessage());
+			}
+		}
+	}
+
+	private double lag(Connection connection) throws SQLException {
+		int timeoutSeconds = (int) Math.max(1, properties.getHealthCheckInterval().toSeconds());
+		if (properties.getLagQuery() == null || properties.getLagQuery().isBlank()) {
+			if (!connection.isValid(timeoutSeconds))
+				throw new SQLTransientConnectionException("The connection is not valid.");
+			return 0;
+		}
+
+		try (Statement statement = connection.createStatement()) {
+			statement.setQueryTimeout(timeoutSeconds);
+			try (ResultSet resultSet = statement.executeQuery(properties.getLagQuery())) {
+				return resultSet.next() ? resultSet.getDouble(1) : 0;
+			}
+		}
+	}
+
+	private void eject(Replica replica, String reason) {
+		if (replica.healthy)
+			log.warn("Ejecting the replica {} : {}", replica.name, reason);
+		replica.healthy = false;
+	}
+
+	private Replica nextHealthyReplica() {
+		for (int i = 0; i < replicas.size(); i++) {
+			Replica replica = replicas.get(Math.floorMod(nextReplica.getAndIncrement(), replicas.size()));
+			if (replica.healthy)
+				return replica;
+		}
+		return null;
+	}
+
+	private Connection route(String target, DataSource dataSource) throws SQLException {
+		Connection connection = dataSource.getConnection();
+		meterRegistry.counter("datasource.routing", "target", target).increment();
+		return connection;
+	}
+
+	/**
+	 * Target of the lazy proxy, it picks the DataSource when the physical connection is needed. It delegates
+	 * everything else to the primary, e.g. the unwrapping of the Hikari pool by the health and metrics of Actuator.
+	 */
+	private class Router extends DelegatingDataSource {
+
+		Router(DataSource primary) {
+			super(primary);
+		}
+
+		@Override
+		public Connection getConnection() throws SQLException {
+			if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly() || isPrimaryOnly())
+				return route(PRIMARY, primary);
+
+			Replica replica = nextHealthyReplica();
+			if (replica == null)
+				return route(PRIMARY, primary);
+
+			try {
+				return route(replica.name, replica.dataSource);
+			} catch (SQLException e) {
+				eject(replica, e.getMessage());
+				return route(PRIMARY, primary);
+			}
+		}
+	}
+
+	private static class Replica {
+
+		private final String name;
+		private final DataSource dataSource;
+		private volatile boolean healthy = true;
+		private volatile double lagSeconds;
+
+		Replica(String name, DataSource dataSource) {
+			this.name = name;
+			this.dataSource = dataSource;
+		}
+	}
+
+	@FunctionalInterface
+	public interface PrimaryScope extends AutoCloseable {
+
+		@Override
+		void close();
+	}
+}
@@ -0,0 +1,83 @@
+package com.example.demo.config;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.actuate.metrics.cache.CacheMeterBinderProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import com.example.demo.cache.CacheInvalidationBus;
+import com.example.demo.cache.InMemoryCacheInvalidationBus;
+import com.example.demo.cache.PostgresCacheInvalidationBus;
+import com.example.demo.cache.TwoTierCache;
+import com.example.demo.cache.TwoTierCacheManager;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Two-tier mode of the caches ({@code app.cache.two-tier.enabled}), for several nodes : each cache is a small local
+ * Caffeine L1 in front of a L2, see {@link TwoTierCacheManager}.
+ * <p>
+ * The L2 is the CacheManager bean named {@code sharedCacheManager} when one is declared, e.g. a RedisCacheManager
+ * shared by the nodes. Otherwise it falls back to an in-memory Caffeine cache per node, which the invalidations
+ * evict like the L1.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "app.cache.two-tier", name = "enabled", havingValue = "true")
+public class TwoTierCacheConfig {
+
+	@Bean
+	@Primary
+	public CacheManager cacheManager(CacheSpecProperties properties,
+			@Qualifier("sharedCacheManager") ObjectProvider<CacheManager> sharedCacheManager,
+			CacheInvalidationBus cacheInvalidationBus, MeterRegistry meterRegistry) {
+		CacheSpecProperties.TwoTier twoTier = properties.getTwoTier();
+
+		Map<String, String> localSpecs = new LinkedHashMap<>();
+		properties.getSpecs().keySet().forEach(name -> localSpecs.put(name, twoTier.getLocalSpec()));
+		CacheManager localCacheManager = CacheConfig.caffeineCacheManager(twoTier.getLocalSpec(), localSpecs);
+
+		CacheManager shared = sharedCacheManager.getIfAvailable();
+		return new TwoTierCacheManager(localCacheManager,
+				shared != null ? shared : CacheConfig.caffeineCacheManager(properties.getDefaultSpec(),
+						properties.getSpecs()),
+				shared != null, cacheInvalidationBus, twoTier.getNodeId(), meterRegistry);
+	}
+
+	@Bean(initMethod = "start", destroyMethod = "close")
+	@ConditionalOnProperty(prefix = "app.cache.two-tier", name = "broker", havingValue = "postgres",
+			matchIfMissing = true)
+	public PostgresCacheInvalidationBus postgresCacheInvalidationBus(DataSource dataSource,
+			DataSourceProperties dataSourceProperties, CacheSpecProperties properties) {
+		return new PostgresCacheInvalidationBus(dataSource, dataSourceProperties.determineUrl(),
+				dataSourceProperties.determineUsername(), dataSourceProperties.determinePassword(),
+				properties.getTwoTier().getChannel());
+	}
+
+	@Bean
+	@ConditionalOnProperty(prefix = "app.cache.two-tier", name = "broker", havingValue = "in-memory")
+	public InMemoryCacheInvalidationBus inMemoryCacheInvalidationBus() {
+		return new InMemoryCacheInvalidationBus();
+	}
+
+	/**
+	 * Publishes the statistics of the L1 of each cache under {@code cache.*}, like the single tier caches.
+	 */
+	@Bean
+	public CacheMeterBinderProvider<TwoTierCache> twoTierCacheMeterBinderProvider() {
+		return (cache, tags) -> cache.getLocal() instanceof CaffeineCache local
+				? new CaffeineCacheMetrics<>(local.getNativeCache(), cache.getName(), tags)
+				: null;
+	}
+}
@@ -0,0 +1,35 @@
+package com.example.demo.config;
+
+import java.io.IOException;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.user.UserRepository;
+import com.example.demo.user.cache.UserCache;
+import com.example.demo.user.writebehind.UserUpdateLog;
+import com.example.demo.user.writebehind.UserWriteBehind;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Enables the write-behind mode of the user updates when {@code app.write-behind.enabled} is true.
+ * The pending updates of a previous run are replayed before the application starts serving.
+ */
+@Configuration
+@EnableConfigurationProperties(WriteBehindProperties.class)
+@ConditionalOnProperty(prefix = "app.write-behind", name = "enabled", havingValue = "true")
+public class WriteBehindConfig {
+
+	@Bean(initMethod = "start", destroyMethod = "close")
+	public UserWriteBehind userWriteBehind(WriteBehindProperties properties, UserRepository userRepository,
+			UserCache userCache, PlatformTransactionManager transactionManager, MeterRegistry meterRegistry)
+			throws IOException {
+		return new UserWriteBehind(properties, new UserUpdateLog(properties.getLogFile(), properties.isFsync()),
+				userRepository, userCache, new TransactionTemplate(transactionManager), meterRegistry);
+	}
+}
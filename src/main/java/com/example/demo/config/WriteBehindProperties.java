@@ -0,0 +1,46 @@
+package com.example.demo.config;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * Settings of the write-behind mode of the user updates, read from the {@code app.write-behind} properties.
+ */
+@Data
+@ConfigurationProperties(prefix = "app.write-behind")
+public class WriteBehindProperties {
+
+	/**
+	 * Whether the user updates are acknowledged before being written to the database.
+	 */
+	private boolean enabled = false;
+
+	/**
+	 * Delay between two flushes of the pending updates.
+	 */
+	private Duration flushInterval = Duration.ofMillis(500);
+
+	/**
+	 * Maximum age of the last flush while updates are pending, beyond which the updates flush synchronously.
+	 */
+	private Duration maxLag = Duration.ofSeconds(5);
+
+	/**
+	 * Number of updates written per transaction.
+	 */
+	private int batchSize = 50;
+
+	/**
+	 * Append-only log of the pending updates, replayed on startup.
+	 */
+	private Path logFile = Path.of("data", "user-updates.log");
+
+	/**
+	 * Whether each update is forced to the disk before being acknowledged.
+	 */
+	private boolean fsync = true;
+}
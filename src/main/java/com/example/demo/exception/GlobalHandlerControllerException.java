@@ -1,5 +1,7 @@
 package com.example.demo.exception;
 
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Profile;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatusCode;
@@ -9,13 +11,22 @@ import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.HandlerMapping;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExceptionHandler;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 
+@Slf4j
+@Profile("!reactive")
 @ControllerAdvice
+@RequiredArgsConstructor
 public class GlobalHandlerControllerException extends ResponseEntityExceptionHandler {
 
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<ResourceExceptionDTO> unknowError(HttpServletRequest req, Exception exception) {
 
@@ -26,7 +37,8 @@ public class GlobalHandlerControllerException extends ResponseEntityExceptionHan
                 .status(HttpStatus.INTERNAL_SERVER_ERROR)
                 .build();
 
-        exception.printStackTrace();
+        log.error("Unexpected error on {} {}", req.getMethod(), req.getRequestURI(), exception);
+        countError(req, res.getErrorCode(), HttpStatus.INTERNAL_SERVER_ERROR);
 
         return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(res);
     }
@@ -41,7 +53,13 @@ public class GlobalHandlerControllerException extends ResponseEntityExceptionHan
                 .status(exception.getStatus())
                 .build();
 
-        return ResponseEntity.status(exception.getStatus()).body(res);
+        countError(req, res.getErrorCode(), exception.getStatus());
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(exception.getStatus());
+        if (exception.getRetryAfter() != null)
+            response.header(HttpHeaders.RETRY_AFTER,
+                    String.valueOf(Math.max(1, (exception.getRetryAfter().toMillis() + 999) / 1000)));
+        return response.body(res);
     }
 
     /**
@@ -68,6 +86,25 @@ public class GlobalHandlerControllerException extends ResponseEntityExceptionHan
                 .build();
         ;
 
+        countError(((ServletWebRequest) request).getRequest(), res.getErrorCode(), HttpStatus.BAD_REQUEST);
+
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(res);
     }
+
+    /**
+     * Counts an error in the {@code api.errors} metric, tagged by endpoint and error code.
+     *
+     * @param req       The request in error.
+     * @param errorCode The error code returned to the client.
+     * @param status    The HTTP status returned to the client.
+     */
+    private void countError(HttpServletRequest req, String errorCode, HttpStatusCode status) {
+        Object endpoint = req.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+
+        meterRegistry.ifAvailable(registry -> registry.counter("api.errors",
+                "method", req.getMethod(),
+                "endpoint", endpoint != null ? endpoint.toString() : "UNKNOWN",
+                "errorCode", errorCode,
+                "status", String.valueOf(status.value())).increment());
+    }
 }
@@ -1,4 +1,6 @@
 package com.example.demo.exception;
+import java.time.Duration;
+
 import lombok.Getter;
 import lombok.Setter;
 import org.springframework.http.HttpStatus;
@@ -12,6 +14,7 @@ public class ResourceException extends Exception {
 
 	private final String errorCode;
 	private final HttpStatus status;
+	private final Duration retryAfter;
 
 	/**
 	 * Constructs a new ResourceException with the specified error code, message, and HTTP status.
@@ -21,8 +24,21 @@ public class ResourceException extends Exception {
 	 * @param status    The HTTP status associated with the exception.
 	 */
 	public ResourceException(String errorCode, String message, HttpStatus status) {
+		this(errorCode, message, status, null);
+	}
+
+	/**
+	 * Constructs a new ResourceException telling the client when to retry, e.g. for a 503.
+	 *
+	 * @param errorCode  The error code associated with the exception.
+	 * @param message    The detailed error message.
+	 * @param status     The HTTP status associated with the exception.
+	 * @param retryAfter The delay sent in the Retry-After header, or null.
+	 */
+	public ResourceException(String errorCode, String message, HttpStatus status, Duration retryAfter) {
 		super(message);
 		this.errorCode = errorCode;
 		this.status = status;
+		this.retryAfter = retryAfter;
 	}
 }
@@ -15,8 +15,10 @@ import lombok.NoArgsConstructor;
 @Table(name = "user_app")
 public class User {
 
+    // The pooled optimizer reserves 50 IDs per sequence call, which also lets Hibernate batch the inserts.
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "user_app_seq")
+    @SequenceGenerator(name = "user_app_seq", sequenceName = "user_app_seq", allocationSize = 50)
     private Long id;
 
     @Column(unique = true, nullable = false,updatable = false)
@@ -27,4 +29,10 @@ public class User {
     @Column(nullable = false)
     private String password;
 
+    @Version
+    private Long version;
+
+    public User(Long id, String username, String email, String password) {
+        this(id, username, email, password, null);
+    }
 }
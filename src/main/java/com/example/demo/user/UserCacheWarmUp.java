@@ -0,0 +1,116 @@
+package com.example.demo.user;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.config.CacheSpecProperties;
+import com.example.demo.user.cache.UserCache;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Fills the user caches on startup, so that a new node does not send its first requests to the database
+ * ({@code app.cache.warm-up}).
+ * <p>
+ * The first pages are loaded, then the most accessed users of the previous run, by lookups of
+ * {@link UserServiceImpl#MAX_LOOKUP_IDS} IDs. It runs as an application runner, before the readiness state turns to
+ * ACCEPTING_TRAFFIC, so a load balancer following {@code /actuator/health/readiness} only sends traffic to a warm
+ * node. A failed warm-up is logged and the node starts cold.
+ * <p>
+ * On shutdown the IDs of the most accessed users, as ranked by the users cache, are saved to the snapshot file.
+ */
+@Slf4j
+@Component
+@Profile("!reactive")
+@ConditionalOnProperty(prefix = "app.cache.warm-up", name = "enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class UserCacheWarmUp implements ApplicationRunner {
+
+    private final UserService userService;
+    private final UserCache userCache;
+    private final CacheSpecProperties cacheSpecProperties;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        CacheSpecProperties.WarmUp warmUp = cacheSpecProperties.getWarmUp();
+        long start = System.nanoTime();
+
+        try {
+            for (int page = 0; page < warmUp.getPages(); page++)
+                userService.getAllUsers(PageRequest.of(page, warmUp.getPageSize()));
+
+            List<Long> userIds = readSnapshot(warmUp.getSnapshotFile(), warmUp.getUsers());
+            for (int from = 0; from < userIds.size(); from += UserServiceImpl.MAX_LOOKUP_IDS)
+                userService.getUsersByIds(
+                        userIds.subList(from, Math.min(from + UserServiceImpl.MAX_LOOKUP_IDS, userIds.size())));
+
+            log.info("User caches warmed up with {} pages and {} users in {} ms", warmUp.getPages(), userIds.size(),
+                    (System.nanoTime() - start) / 1_000_000);
+        } catch (Exception e) {
+            log.warn("Unable to warm up the user caches, starting cold", e);
+        }
+    }
+
+    /**
+     * Saves the IDs of the most accessed users, written to a temporary file first so that a crash never leaves a
+     * truncated snapshot.
+     */
+    @EventListener(ContextClosedEvent.class)
+    public void saveSnapshot() {
+        CacheSpecProperties.WarmUp warmUp = cacheSpecProperties.getWarmUp();
+        List<Long> userIds = userCache.getHottestUserIds(warmUp.getUsers());
+        if (userIds.isEmpty())
+            return;
+
+        Path snapshotFile = warmUp.getSnapshotFile().toAbsolutePath();
+        try {
+            Files.createDirectories(snapshotFile.getParent());
+            Path temporaryFile = Files.createTempFile(snapshotFile.getParent(), "users-hot-keys", ".tmp");
+            try {
+                Files.write(temporaryFile, userIds.stream().map(String::valueOf).toList());
+                Files.move(temporaryFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporaryFile);
+            }
+        } catch (IOException e) {
+            log.warn("Unable to save the most accessed users to {}", snapshotFile, e);
+        }
+    }
+
+    private static List<Long> readSnapshot(Path snapshotFile, int limit) throws IOException {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(snapshotFile);
+        } catch (NoSuchFileException e) {
+            return List.of();
+        }
+
+        List<Long> userIds = new ArrayList<>();
+        for (String line : lines) {
+            if (userIds.size() == limit)
+                break;
+            try {
+                userIds.add(Long.valueOf(line.strip()));
+            } catch (NumberFormatException e) {
+                log.debug("Ignoring the line {} of {}", line, snapshotFile);
+            }
+        }
+        return userIds;
+    }
+}
@@ -7,14 +7,25 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import com.example.demo.user.dto.CreateUserForm;
+import com.example.demo.user.dto.CreateUserResultDTO;
+import com.example.demo.user.dto.ImportUsersResultDTO;
 import com.example.demo.user.dto.UpdateUserForm;
 import com.example.demo.user.dto.UserDTO;
+import com.example.demo.user.dto.UserLookupDTO;
+import com.example.demo.util.CursorPageDTO;
 import com.example.demo.util.PageDTO;
 
 @Tag(name = "Users Endpoint")
@@ -22,17 +33,69 @@ import com.example.demo.util.PageDTO;
 @RestController
 public interface UserController {
 
-    @Operation(summary = "Retrieve all users")
+    @Operation(summary = "Retrieve all users",
+            description = "withTotal=false skips the count query and only returns hasNext, "
+                    + "approximateTotal=true returns an estimated total.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Full content"),
+            @ApiResponse(responseCode = "304", description = "The page matches the ETag in If-None-Match."),
     })
     @GetMapping
     ResponseEntity<PageDTO<UserDTO>> getUsers(@RequestParam(defaultValue = "5", required = false) int pageSize,
-            @RequestParam(defaultValue = "0", required = false) int page);
+            @RequestParam(defaultValue = "0", required = false) int page,
+            @RequestParam(defaultValue = "true", required = false) boolean withTotal,
+            @RequestParam(defaultValue = "false", required = false) boolean approximateTotal);
+
+    @Operation(summary = "Retrieve users with keyset pagination")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "The users after the cursor in parameter"),
+            @ApiResponse(responseCode = "400", description = "The cursor or the limit is not valid.",
+                    content = @Content(schema = @Schema(implementation = ResourceExceptionDTO.class))),
+    })
+    @GetMapping(params = "limit")
+    ResponseEntity<CursorPageDTO<UserDTO>> getUsersAfter(@RequestParam(required = false) String after,
+            @RequestParam int limit) throws UserResourceException;
+
+    @Operation(summary = "Search users with keyset pagination",
+            description = "Matches the users containing the username, or starting with it with prefix=true, "
+                    + "and the users with the email whatever its case. Both criteria can be combined.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "The matching users after the cursor in parameter"),
+            @ApiResponse(responseCode = "400", description = "No criteria, a username too short to be searched as a "
+                    + "substring, or an invalid cursor or limit.",
+                    content = @Content(schema = @Schema(implementation = ResourceExceptionDTO.class))),
+    })
+    @GetMapping("/search")
+    ResponseEntity<CursorPageDTO<UserDTO>> searchUsers(@RequestParam(required = false) String username,
+            @RequestParam(required = false) String email,
+            @RequestParam(defaultValue = "false", required = false) boolean prefix,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "20", required = false) int limit) throws UserResourceException;
+
+    @Operation(summary = "Find users by IDs")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "The users in the order of the IDs, the missing ones are marked as not found."),
+            @ApiResponse(responseCode = "400", description = "Too many IDs in parameter.",
+                    content = @Content(schema = @Schema(implementation = ResourceExceptionDTO.class))),
+    })
+    @GetMapping(params = "ids")
+    ResponseEntity<List<UserLookupDTO>> getUsersByIds(@RequestParam List<Long> ids) throws UserResourceException;
+
+    @Operation(summary = "Export all users",
+            description = "Streams every user ordered by ID, as NDJSON (default) or CSV with format=csv.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "All the users, one per line"),
+            @ApiResponse(responseCode = "400", description = "The format is not ndjson or csv.",
+                    content = @Content(schema = @Schema(implementation = ResourceExceptionDTO.class))),
+    })
+    @GetMapping("/export")
+    void exportUsers(@RequestParam(defaultValue = "ndjson", required = false) String format,
+            HttpServletResponse response) throws UserResourceException, IOException;
 
     @Operation(summary = "Find user by ID")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "The user with the ID in parameter"),
+            @ApiResponse(responseCode = "304", description = "The user matches the ETag in If-None-Match."),
             @ApiResponse(responseCode = "404", description = "The user ID is not found in the database.",
                     content = @Content(schema = @Schema(implementation = ResourceExceptionDTO.class))),
     })
@@ -50,20 +113,52 @@ public interface UserController {
     @PostMapping
     ResponseEntity<UserDTO> createUser(@Valid @RequestBody CreateUserForm createUserForm) throws UserResourceException;
 
+    @Operation(summary = "Create users in batch")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "The outcome of each user of the batch."),
+            @ApiResponse(responseCode = "400", description = "The batch contains too many users.",
+                    content = @Content(schema = @Schema(implementation = ResourceExceptionDTO.class))),
+    })
+    @PostMapping("/batch")
+    ResponseEntity<List<CreateUserResultDTO>> createUsers(@RequestBody List<CreateUserForm> createUserForms)
+            throws UserResourceException;
+
+    @Operation(summary = "Import users in bulk",
+            description = "Loads a CSV body with a username,email,password header, or an NDJSON body, with the "
+                    + "Postgres COPY protocol. The users whose username already exists are skipped.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "The number of inserted, duplicate and invalid users."),
+            @ApiResponse(responseCode = "500", description = "Error while importing the users, the segments "
+                    + "loaded before the error are kept and importing the body again skips them.",
+                    content = @Content(schema = @Schema(implementation = ResourceExceptionDTO.class))),
+            @ApiResponse(responseCode = "501", description = "The database is not Postgres.",
+                    content = @Content(schema = @Schema(implementation = ResourceExceptionDTO.class))),
+    })
+    @PostMapping(value = "/import", consumes = { "text/csv", MediaType.APPLICATION_NDJSON_VALUE })
+    ResponseEntity<ImportUsersResultDTO> importUsers(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+            InputStream body) throws UserResourceException, IOException;
+
     @Operation(summary = "Update user by ID")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "User successfully updated."),
+            @ApiResponse(responseCode = "404", description = "The user ID is not found in the database.",
+                    content = @Content(schema = @Schema(implementation = ResourceExceptionDTO.class))),
             @ApiResponse(responseCode = "409", description = "User with the same name already exists.",
                     content = @Content(schema = @Schema(implementation = ResourceExceptionDTO.class))),
+            @ApiResponse(responseCode = "412", description = "The user does not match the ETag in If-Match.",
+                    content = @Content(schema = @Schema(implementation = ResourceExceptionDTO.class))),
             @ApiResponse(responseCode = "500", description = "Error while updating the user with the ID.",
                     content = @Content(schema = @Schema(implementation = ResourceExceptionDTO.class))),
     })
     @PatchMapping
-    ResponseEntity<UserDTO> updateUser(@RequestBody UpdateUserForm updateUserForm) throws UserResourceException;
+    ResponseEntity<UserDTO> updateUser(@RequestBody UpdateUserForm updateUserForm,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) throws UserResourceException;
 
     @Operation(summary = "Delete user by ID")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "204", description = "User successfully deleted."),
+            @ApiResponse(responseCode = "404", description = "The user ID is not found in the database.",
+                    content = @Content(schema = @Schema(implementation = ResourceExceptionDTO.class))),
             @ApiResponse(responseCode = "500", description = "Error while deleting the user with the ID.",
                     content = @Content(schema = @Schema(implementation = ResourceExceptionDTO.class))),
     })
@@ -1,52 +1,193 @@
 package com.example.demo.user;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 
+import org.springframework.context.annotation.Profile;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import com.example.demo.user.bulk.UserImportReader;
+import com.example.demo.user.cache.UserResponseCache;
 import com.example.demo.user.dto.CreateUserForm;
+import com.example.demo.user.dto.CreateUserResultDTO;
+import com.example.demo.user.dto.ImportUsersResultDTO;
 import com.example.demo.user.dto.UpdateUserForm;
 import com.example.demo.user.dto.UserDTO;
-import com.example.demo.user.util.UserMapper;
+import com.example.demo.user.dto.UserLookupDTO;
+import com.example.demo.user.export.UserExportFormat;
+import com.example.demo.user.export.UserExportWriter;
+import com.example.demo.user.util.UserETags;
+import com.example.demo.util.CursorCodec;
+import com.example.demo.util.CursorPageDTO;
 import com.example.demo.util.PageDTO;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 
 @Component
+@Profile("!reactive")
 @RequiredArgsConstructor
 public class UserControllerImpl implements UserController{
 
+    private static final int MAX_LIMIT = 1000;
+
+    private static final int MIN_SUBSTRING_LENGTH = 3;
+
     private final UserService userService;
+    private final UserResponseCache userResponseCache;
+    private final ObjectMapper objectMapper;
 
     @Override
-    public ResponseEntity<PageDTO<UserDTO>> getUsers(int pageSize, int page) {
+    public ResponseEntity<PageDTO<UserDTO>> getUsers(int pageSize, int page, boolean withTotal,
+            boolean approximateTotal) {
         Pageable pageable = PageRequest.of(page, pageSize);
-        Page<User> users = userService.getAllUsers(pageable);
 
-        return ResponseEntity.status(HttpStatus.OK).body(new PageDTO<>(new PageImpl<>(UserMapper.INSTANCE.toDtoList(users.getContent()), pageable, users.getTotalElements())));
+        if (!withTotal)
+            return ResponseEntity.status(HttpStatus.OK).body(new PageDTO<>(userService.getUsersSlice(pageable)));
+
+        if (approximateTotal) {
+            Slice<UserDTO> users = userService.getUsersSlice(pageable);
+            return ResponseEntity.status(HttpStatus.OK)
+                    .body(new PageDTO<>(users, userService.getApproximateUserCount()));
+        }
+
+        if (userResponseCache.isEnabled()) {
+            userResponseCache.writePage(currentRequest(), pageable, () -> userService.getAllUsers(pageable));
+            return null;
+        }
+
+        Page<UserDTO> users = userService.getAllUsers(pageable);
+        return ResponseEntity.status(HttpStatus.OK).eTag(UserETags.of(users))
+                .body(new PageDTO<>(new PageImpl<>(users.getContent(), pageable, users.getTotalElements())));
+    }
+
+    @Override
+    public ResponseEntity<CursorPageDTO<UserDTO>> getUsersAfter(String after, int limit) throws UserResourceException {
+        checkLimit(limit);
+        Long afterId = decodeCursor(after);
+
+        return ResponseEntity.status(HttpStatus.OK).body(cursorPage(userService.getUsersAfter(afterId, limit)));
+    }
+
+    @Override
+    public ResponseEntity<CursorPageDTO<UserDTO>> searchUsers(String username, String email, boolean prefix,
+            String after, int limit) throws UserResourceException {
+        username = username != null && !username.isEmpty() ? username : null;
+        email = email != null && !email.isBlank() ? email.trim() : null;
+
+        if (username == null && email == null)
+            throw new UserResourceException("MissingSearchCriteria", "A username or an email is required.",
+                    HttpStatus.BAD_REQUEST);
+        // Shorter terms have no trigram, the substring search would scan the whole table.
+        if (username != null && !prefix && username.length() < MIN_SUBSTRING_LENGTH)
+            throw new UserResourceException("SearchTermTooShort",
+                    "The username must have at least " + MIN_SUBSTRING_LENGTH + " characters, or use prefix=true.",
+                    HttpStatus.BAD_REQUEST);
+        checkLimit(limit);
+        Long afterId = decodeCursor(after);
+
+        return ResponseEntity.status(HttpStatus.OK)
+                .body(cursorPage(userService.searchUsers(username, prefix, email, afterId, limit)));
+    }
+
+    @Override
+    public ResponseEntity<List<UserLookupDTO>> getUsersByIds(List<Long> ids) throws UserResourceException {
+        return ResponseEntity.status(HttpStatus.OK).body(userService.getUsersByIds(ids));
+    }
+
+    /**
+     * Writes the export directly to the response on the request thread : an async StreamingResponseBody would be
+     * cut by the async request timeout on a large table.
+     */
+    @Override
+    public void exportUsers(String format, HttpServletResponse response) throws UserResourceException, IOException {
+        UserExportFormat exportFormat;
+        try {
+            exportFormat = UserExportFormat.of(format);
+        } catch (IllegalArgumentException e) {
+            throw new UserResourceException("InvalidFormat", "The export format must be ndjson or csv.",
+                    HttpStatus.BAD_REQUEST);
+        }
+
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(exportFormat.getMediaType().toString());
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                ContentDisposition.attachment().filename("users." + exportFormat.getExtension()).build().toString());
+
+        try (UserExportWriter writer = UserExportWriter.of(exportFormat, objectMapper, response.getOutputStream())) {
+            userService.exportUsers(writer);
+        }
     }
 
     @Override
     public ResponseEntity<UserDTO> getUserById(Long userId) throws UserResourceException {
-        return ResponseEntity.status(HttpStatus.OK).body(UserMapper.INSTANCE.toDto(userService.getUserById(userId)));
+        if (userResponseCache.isEnabled()) {
+            userResponseCache.writeUser(currentRequest(), userId, () -> userService.getUserById(userId));
+            return null;
+        }
+
+        // A matching If-None-Match is answered with a 304 by Spring MVC, without serializing the body.
+        UserDTO user = userService.getUserById(userId);
+        return ResponseEntity.status(HttpStatus.OK).eTag(UserETags.of(user)).body(user);
     }
 
     @Override
     public ResponseEntity<UserDTO> createUser(CreateUserForm createUserForm) throws UserResourceException {
         URI uri = URI.create(ServletUriComponentsBuilder.fromCurrentContextPath().path("/users").toUriString());
-        return ResponseEntity.created(uri).body(UserMapper.INSTANCE.toDto(userService.createUser(createUserForm)));
+        UserDTO user = userService.createUser(createUserForm);
+        return ResponseEntity.created(uri).eTag(UserETags.of(user)).body(user);
+    }
+
+    @Override
+    public ResponseEntity<List<CreateUserResultDTO>> createUsers(List<CreateUserForm> createUserForms)
+            throws UserResourceException {
+        return ResponseEntity.status(HttpStatus.OK).body(userService.createUsers(createUserForms));
     }
 
     @Override
-    public ResponseEntity<UserDTO> updateUser(UpdateUserForm updateUserForm) throws UserResourceException {
-        return ResponseEntity.status(HttpStatus.OK).body(UserMapper.INSTANCE.toDto(userService.updateUser(updateUserForm)));
+    public ResponseEntity<ImportUsersResultDTO> importUsers(String contentType, InputStream body)
+            throws UserResourceException, IOException {
+        MediaType mediaType = MediaType.parseMediaType(contentType);
+        UserExportFormat format = UserExportFormat.of(mediaType);
+        Charset charset = mediaType.getCharset() != null ? mediaType.getCharset() : StandardCharsets.UTF_8;
+
+        try (UserImportReader reader = UserImportReader.of(format, objectMapper, body, charset)) {
+            return ResponseEntity.status(HttpStatus.OK).body(userService.importUsers(reader));
+        }
+    }
+
+    @Override
+    public ResponseEntity<UserDTO> updateUser(UpdateUserForm updateUserForm, String ifMatch) throws UserResourceException {
+        Long expectedVersion;
+        try {
+            expectedVersion = UserETags.expectedVersion(updateUserForm.getId(), ifMatch);
+        } catch (IllegalArgumentException e) {
+            throw new UserResourceException("UserVersionMismatch", "The If-Match header does not match the user.",
+                    HttpStatus.PRECONDITION_FAILED);
+        }
+
+        UserDTO user = userService.updateUser(updateUserForm, expectedVersion);
+        return ResponseEntity.status(HttpStatus.OK).eTag(UserETags.of(user)).body(user);
     }
 
     @Override
@@ -54,4 +195,33 @@ public class UserControllerImpl implements UserController{
         userService.deleteUser(userId);
         return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
     }
+
+    private static void checkLimit(int limit) throws UserResourceException {
+        if (limit < 1 || limit > MAX_LIMIT)
+            throw new UserResourceException("InvalidLimit", "The limit must be between 1 and " + MAX_LIMIT + ".",
+                    HttpStatus.BAD_REQUEST);
+    }
+
+    private static Long decodeCursor(String after) throws UserResourceException {
+        try {
+            return after != null && !after.isEmpty() ? CursorCodec.decode(after) : null;
+        } catch (IllegalArgumentException e) {
+            throw new UserResourceException("InvalidCursor", "The cursor is not valid.", HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    private static CursorPageDTO<UserDTO> cursorPage(Slice<UserDTO> users) {
+        List<UserDTO> content = users.getContent();
+        String nextCursor = users.hasNext() ? CursorCodec.encode(content.get(content.size() - 1).id()) : null;
+        return new CursorPageDTO<>(content, nextCursor);
+    }
+
+    /**
+     * Returns the current request, used to write the encoded responses directly.
+     * A null ResponseEntity returned afterwards tells Spring MVC that the response is already handled.
+     */
+    private static ServletWebRequest currentRequest() {
+        ServletRequestAttributes attributes = (ServletRequestAttributes) RequestContextHolder.currentRequestAttributes();
+        return new ServletWebRequest(attributes.getRequest(), attributes.getResponse());
+    }
 }
@@ -1,8 +1,224 @@
 package com.example.demo.user;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.hibernate.jpa.HibernateHints;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import jakarta.persistence.QueryHint;
 
+/**
+ * The read methods run in read-only transactions unless declared otherwise : Hibernate flushes nothing and keeps no
+ * snapshot of the entities they load. The reads of several users return {@link UserView} projections instead of
+ * entities, so the password is never fetched and nothing enters the persistence context. Their hints keep the flush
+ * mode manual when they join the transaction of a write.
+ */
 @Repository
+@Transactional(readOnly = true)
 public interface UserRepository extends JpaRepository<User,Long> {
+
+    /**
+     * Keyset (seek) query : fetches the users whose ID is strictly greater than the given one.
+     * Returning a Slice avoids the count query, and the WHERE id > ? predicate keeps the cost flat
+     * whatever the depth of the page.
+     *
+     * @param id       The last ID already seen by the client.
+     * @param pageable The page size, sorted by ID.
+     * @return The next users after the given ID.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_FLUSH_MODE, value = "MANUAL"),
+    })
+    Slice<UserView> findByIdGreaterThan(Long id, Pageable pageable);
+
+    /**
+     * Fetches a page of users without the count query of findAll.
+     *
+     * @param pageable The page requested.
+     * @return The users of the page, and whether a next page exists.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_FLUSH_MODE, value = "MANUAL"),
+    })
+    Slice<UserView> findAllBy(Pageable pageable);
+
+    /**
+     * Fetches a page of users and the total number of users, as findAll does but without the passwords.
+     *
+     * @param pageable The page requested.
+     * @return The users of the page.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_FLUSH_MODE, value = "MANUAL"),
+    })
+    Page<UserView> findAllProjectedBy(Pageable pageable);
+
+    /**
+     * Fetches the users with the given IDs with a single IN query, as findAllById does but without the passwords.
+     *
+     * @param ids The IDs of the users.
+     * @return The existing users, in no particular order.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_FLUSH_MODE, value = "MANUAL"),
+    })
+    List<UserView> findAllProjectedByIdIn(Collection<Long> ids);
+
+    /**
+     * Keyset search on the username, served by the indexes of db/user-indexes.sql : the B-tree with text_pattern_ops
+     * for a prefix pattern, the trigram index for a substring pattern.
+     *
+     * @param pattern  The LIKE pattern, with its wildcards escaped by a backslash.
+     * @param afterId  The last ID already seen by the client.
+     * @param pageable The page size, the users are sorted by ID.
+     * @return The next matching users after the given ID.
+     */
+    @Query("""
+            select new com.example.demo.user.UserView(u.id, u.username, u.email, u.version) from User u
+            where u.username like :pattern escape '\\' and u.id > :afterId order by u.id""")
+    Slice<UserView> searchByUsername(@Param("pattern") String pattern, @Param("afterId") Long afterId,
+            Pageable pageable);
+
+    /**
+     * Keyset search on the email ignoring its case, served by the index on lower(email).
+     *
+     * @param email    The email.
+     * @param afterId  The last ID already seen by the client.
+     * @param pageable The page size, the users are sorted by ID.
+     * @return The next matching users after the given ID.
+     */
+    @Query("""
+            select new com.example.demo.user.UserView(u.id, u.username, u.email, u.version) from User u
+            where lower(u.email) = lower(:email) and u.id > :afterId order by u.id""")
+    Slice<UserView> searchByEmail(@Param("email") String email, @Param("afterId") Long afterId, Pageable pageable);
+
+    /**
+     * Keyset search on both the username and the email, the planner starts from the most selective index.
+     *
+     * @param pattern  The LIKE pattern of the username, with its wildcards escaped by a backslash.
+     * @param email    The email.
+     * @param afterId  The last ID already seen by the client.
+     * @param pageable The page size, the users are sorted by ID.
+     * @return The next matching users after the given ID.
+     */
+    @Query("""
+            select new com.example.demo.user.UserView(u.id, u.username, u.email, u.version) from User u
+            where u.username like :pattern escape '\\' and lower(u.email) = lower(:email) and u.id > :afterId
+            order by u.id""")
+    Slice<UserView> searchByUsernameAndEmail(@Param("pattern") String pattern, @Param("email") String email,
+            @Param("afterId") Long afterId, Pageable pageable);
+
+    /**
+     * Estimates the number of users from the Postgres statistics, without scanning the table. The table is resolved
+     * through the search path, as the other queries resolve it, so another user_app table of another schema does not
+     * match. It fails on the databases without pg_class, e.g. H2.
+     *
+     * @return The estimated number of users, negative or null if the table has never been analyzed.
+     */
+    @Query(value = "select cast(reltuples as bigint) from pg_class where oid = to_regclass('user_app')",
+            nativeQuery = true)
+    Long estimateCount();
+
+    /**
+     * Returns the usernames which are already used among the given ones.
+     *
+     * @param usernames The usernames to check.
+     * @return The usernames already used.
+     */
+    @Query("select u.username from User u where u.username in :usernames")
+    Set<String> findExistingUsernames(@Param("usernames") Collection<String> usernames);
+
+    /**
+     * Loads a user as findById does, read-only even when it joins the transaction of a write. A single user is read
+     * as an entity : EntityManager.find allocates less than a derived projection query, which builds its criteria
+     * query on each call, see UserReadPathBenchmark.
+     *
+     * @param id The ID of the user.
+     * @return The user, or empty if it does not exist.
+     */
+    @Override
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    Optional<User> findById(Long id);
+
+    /**
+     * Streams the public columns of all the users ordered by ID, from a server-side cursor.
+     * The rows are fetched by batches of the fetch size, and as they are not entities the persistence context does
+     * not grow while the stream is consumed. It must be consumed and closed within a transaction, because Postgres
+     * only uses a cursor when auto-commit is disabled.
+     *
+     * @return The stream of users, to close once read.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+    })
+    Stream<UserView> streamAllByOrderByIdAsc();
+
+    /**
+     * Updates the email and the password of a user with a single statement, without loading it first.
+     * A null value keeps the current column, and the version is incremented as Hibernate would. The parameters are
+     * cast because Hibernate cannot infer the type of a parameter of coalesce in a set clause.
+     * It is transactional because the repository is read-only by default.
+     *
+     * @param id       The ID of the user.
+     * @param email    The new email, or null to keep it.
+     * @param password The new password, or null to keep it.
+     * @param version  The version the user must have, or null to update it whatever its version.
+     * @return The number of updated rows, 0 if the user does not exist or has another version.
+     */
+    @Transactional
+    @Modifying
+    @Query("""
+            update User u set u.email = coalesce(cast(:email as String), u.email),
+                u.password = coalesce(cast(:password as String), u.password), u.version = u.version + 1
+            where u.id = :id and (:version is null or u.version = :version)""")
+    int updateUser(@Param("id") Long id, @Param("email") String email, @Param("password") String password,
+            @Param("version") Long version);
+
+    /**
+     * Writes a coalesced update of the write-behind mode, with the version computed when it was acknowledged.
+     *
+     * @param id       The ID of the user.
+     * @param email    The new email, or null to keep it.
+     * @param password The new password, or null to keep it.
+     * @param version  The version of the user after the update.
+     * @return The number of updated rows, 0 if the user has been deleted meanwhile.
+     */
+    @Transactional
+    @Modifying
+    @Query("""
+            update User u set u.email = coalesce(cast(:email as String), u.email),
+                u.password = coalesce(cast(:password as String), u.password), u.version = :version
+            where u.id = :id""")
+    int applyUpdate(@Param("id") Long id, @Param("email") String email, @Param("password") String password,
+            @Param("version") Long version);
+
+    /**
+     * Deletes a user with a single statement, unlike deleteById which loads the entity first.
+     *
+     * @param id The ID of the user.
+     * @return The number of deleted rows, 0 if the user does not exist.
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from User u where u.id = :id")
+    int deleteUserById(@Param("id") Long id);
 }
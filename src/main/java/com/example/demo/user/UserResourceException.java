@@ -1,5 +1,7 @@
 package com.example.demo.user;
 
+import java.time.Duration;
+
 import org.springframework.http.HttpStatus;
 
 import com.example.demo.exception.ResourceException;
@@ -9,5 +11,9 @@ public class UserResourceException extends ResourceException {
     public UserResourceException(String errorCode, String message, HttpStatus status) {
         super(errorCode, message, status);
     }
+
+    public UserResourceException(String errorCode, String message, HttpStatus status, Duration retryAfter) {
+        super(errorCode, message, status, retryAfter);
+    }
     
 }
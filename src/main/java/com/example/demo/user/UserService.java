@@ -1,22 +1,49 @@
 package com.example.demo.user;
 
+import java.io.IOException;
+import java.util.List;
+
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
 
+import com.example.demo.user.bulk.UserImportReader;
 import com.example.demo.user.dto.CreateUserForm;
+import com.example.demo.user.dto.CreateUserResultDTO;
+import com.example.demo.user.dto.ImportUsersResultDTO;
 import com.example.demo.user.dto.UpdateUserForm;
+import com.example.demo.user.dto.UserDTO;
+import com.example.demo.user.dto.UserLookupDTO;
+import com.example.demo.user.export.UserExportWriter;
 
 @Service
 public interface UserService {
     
-    Page<User> getAllUsers(final Pageable pageable);
+    Page<UserDTO> getAllUsers(final Pageable pageable);
+
+    Slice<UserDTO> getUsersSlice(final Pageable pageable);
+
+    long getApproximateUserCount();
+
+    Slice<UserDTO> getUsersAfter(final Long afterId, final int limit);
+
+    Slice<UserDTO> searchUsers(final String username, final boolean prefix, final String email, final Long afterId,
+            final int limit);
+
+    void exportUsers(final UserExportWriter userExportWriter) throws IOException;
+
+    UserDTO getUserById(final Long userId) throws UserResourceException;
+
+    List<UserLookupDTO> getUsersByIds(final List<Long> userIds) throws UserResourceException;
+
+    UserDTO createUser(final CreateUserForm createUserForm) throws UserResourceException;
 
-    User getUserById(final Long userId) throws UserResourceException;
+    List<CreateUserResultDTO> createUsers(final List<CreateUserForm> createUserForms) throws UserResourceException;
 
-    User createUser(final CreateUserForm createUserForm) throws UserResourceException;
+    ImportUsersResultDTO importUsers(final UserImportReader userImportReader) throws UserResourceException, IOException;
 
-    User updateUser(final UpdateUserForm updateUserForm) throws UserResourceException;
+    UserDTO updateUser(final UpdateUserForm updateUserForm, final Long expectedVersion) throws UserResourceException;
 
     void deleteUser(final Long userId) throws UserResourceException;
 }
@@ -1,44 +1,249 @@
 package com.example.demo.user;
 
+import com.example.demo.cache.SingleFlight;
+import com.example.demo.config.ReplicaRoutingDataSource;
+import com.example.demo.user.bulk.UserCopyLoader;
+import com.example.demo.user.bulk.UserImportReader;
+import com.example.demo.user.cache.UserCache;
 import com.example.demo.user.dto.CreateUserForm;
+import com.example.demo.user.dto.CreateUserResultDTO;
+import com.example.demo.user.dto.CreateUserResultDTO.Status;
+import com.example.demo.user.dto.ImportUsersResultDTO;
 import com.example.demo.user.dto.UpdateUserForm;
+import com.example.demo.user.dto.UserDTO;
+import com.example.demo.user.dto.UserLookupDTO;
+import com.example.demo.user.export.UserExportWriter;
+import com.example.demo.user.password.PasswordHasher;
+import com.example.demo.user.util.UserMapper;
+import com.example.demo.user.writebehind.UserWriteBehind;
+import io.micrometer.core.annotation.Timed;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.CachePut;
-import org.springframework.cache.annotation.Cacheable;
-import org.springframework.cache.annotation.Caching;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataAccessException;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The reads of several users map {@link UserView} projections, so the password is never fetched and no entity is
+ * loaded to be thrown away, while a user read by ID is a read-only entity, the cheapest single read. The reads served
+ * by the caches take neither a transaction nor a connection : on a miss each query runs in the read-only transaction
+ * of the repository, and the reads which always query the database declare a read-only transaction.
+ * <p>
+ * With read replicas, the loads which fill the caches, including their misses, read from the primary : a write evicts
+ * its users and pages at once, and a replica which has not replayed it yet would put the stale rows back in the
+ * caches for their whole TTL. The replicas serve the reads which bypass the caches : the searches, the keyset pages,
+ * the export and the estimate of the total. The load of the primary is therefore bounded by the miss rate of the
+ * caches, not by the read traffic.
+ */
+@Slf4j
 @Component
+@Profile("!reactive")
 @RequiredArgsConstructor
+@Timed(value = "user.service", description = "Latency of the UserService methods")
 public class UserServiceImpl implements UserService {
 
+    /**
+     * Number of users inserted per transaction by a batch creation, aligned on hibernate.jdbc.batch_size.
+     */
+    static final int BATCH_SIZE = 50;
+
+    static final int MAX_BATCH_USERS = 10_000;
+
+    /**
+     * Number of users of an import loaded per transaction.
+     */
+    static final int IMPORT_SEGMENT_SIZE = 10_000;
+
+    static final int MAX_LOOKUP_IDS = 1000;
+
     private final UserRepository userRepository;
+    private final UserCache userCache;
+    private final SingleFlight singleFlight;
+    private final Validator validator;
+    private final PasswordHasher passwordHasher;
+    private final ObjectProvider<UserWriteBehind> userWriteBehind;
+    private final ObjectProvider<UserCopyLoader> userCopyLoader;
+
+    /**
+     * Reads a page from the caches. The concurrent misses of a page run a single query, and a page hit late in its
+     * lifetime is reloaded in the background.
+     */
+    @Override
+    public Page<UserDTO> getAllUsers(Pageable pageable) {
+        Pageable pageableById = UserCache.sortedById(pageable);
+
+        Page<UserDTO> cachedPage = getCachedPage(pageableById);
+        if (cachedPage != null) {
+            if (userCache.isDueForRefresh(UserCache.PAGES_CACHE, pageableById))
+                refreshPage(pageableById, cachedPage);
+            return cachedPage;
+        }
+
+        return singleFlight.load(UserCache.PAGES_CACHE, pageableById, onPrimary(() -> {
+            Page<UserDTO> page = userRepository.findAllProjectedBy(pageableById).map(this::toDto);
+            userCache.putPage(pageableById, page);
+            page.getContent().forEach(userCache::putUser);
+            return page;
+        }));
+    }
 
-    @Cacheable(value = "users-pages-cache", unless = "#result==null")
     @Override
-    public Page<User> getAllUsers(Pageable pageable) {
-        return userRepository.findAll(pageable);
+    public Slice<UserDTO> getUsersSlice(Pageable pageable) {
+        Pageable pageableById = UserCache.sortedById(pageable);
+
+        // A cached page only tells whether a next page exists when the total is cached too.
+        if (userCache.getTotal() != null) {
+            Page<UserDTO> cachedPage = getCachedPage(pageableById);
+            if (cachedPage != null)
+                return cachedPage;
+        }
+
+        Slice<UserDTO> slice;
+        try (ReplicaRoutingDataSource.PrimaryScope scope = ReplicaRoutingDataSource.usePrimary()) {
+            slice = userRepository.findAllBy(pageableById).map(this::toDto);
+        }
+        userCache.putPageIds(pageableById, slice.getContent().stream().map(UserDTO::id).toList());
+        slice.getContent().forEach(userCache::putUser);
+        return slice;
     }
 
-    @Cacheable(value = "users-cache", key = "#userId", unless = "#result==null")
+    /**
+     * Returns the cached total, or the estimate of the database statistics. The exact count is used when the table
+     * has never been analyzed, or when the database has no statistics to read, e.g. H2.
+     */
     @Override
-    public User getUserById(Long userId) throws UserResourceException {
-        return userRepository.findById(userId).orElseThrow(() -> new UserResourceException("UserNotFound",
-                "The user ID is not found in the database.", HttpStatus.NOT_FOUND));
+    public long getApproximateUserCount() {
+        Long total = userCache.getTotal();
+        if (total != null)
+            return total;
+
+        total = userCache.getApproximateTotal();
+        if (total != null)
+            return total;
+
+        Long estimate = estimateCount();
+        total = estimate != null && estimate >= 0 ? estimate : userRepository.count();
+        userCache.putApproximateTotal(total);
+        return total;
     }
 
-    @Cacheable(value = "users-cache", unless = "#result==null")
-    @CacheEvict(value = "users-pages-cache", allEntries = true)
+    @Transactional(readOnly = true)
     @Override
-    public User createUser(CreateUserForm createUserForm) throws UserResourceException {
+    public Slice<UserDTO> getUsersAfter(Long afterId, int limit) {
+        return userRepository.findByIdGreaterThan(afterId != null ? afterId : 0L,
+                PageRequest.of(0, limit, Sort.by("id"))).map(this::toDto);
+    }
+
+    /**
+     * Searches the users with keyset pagination, on the username (substring, or prefix), the email ignoring its case,
+     * or both. The wildcards of the username are escaped, so it is matched literally.
+     */
+    @Transactional(readOnly = true)
+    @Override
+    public Slice<UserDTO> searchUsers(String username, boolean prefix, String email, Long afterId, int limit) {
+        String pattern = username != null ? (prefix ? "" : "%") + escapeLike(username) + "%" : null;
+        long after = afterId != null ? afterId : 0L;
+        Pageable pageable = PageRequest.of(0, limit);
+
+        Slice<UserView> users;
+        if (pattern != null && email != null)
+            users = userRepository.searchByUsernameAndEmail(pattern, email, after, pageable);
+        else if (pattern != null)
+            users = userRepository.searchByUsername(pattern, after, pageable);
+        else
+            users = userRepository.searchByEmail(email, after, pageable);
+
+        return users.map(this::toDto);
+    }
+
+    /**
+     * Writes all the users ordered by ID, row by row, from a cursor opened in a read-only transaction.
+     * Neither the users nor the caches are kept in memory, the pending write-behind updates are overlaid.
+     */
+    @Transactional(readOnly = true)
+    @Override
+    public void exportUsers(UserExportWriter userExportWriter) throws IOException {
+        UserWriteBehind writeBehind = userWriteBehind.getIfAvailable();
+
+        try (Stream<UserView> users = userRepository.streamAllByOrderByIdAsc()) {
+            Iterator<UserView> iterator = users.iterator();
+            while (iterator.hasNext()) {
+                UserDTO user = UserMapper.INSTANCE.toDto(iterator.next());
+                userExportWriter.write(writeBehind != null ? writeBehind.overlay(user) : user);
+            }
+        }
+    }
+
+    /**
+     * Reads a user from the users cache. The concurrent misses of a user run a single query, and a user hit late in
+     * its lifetime is reloaded in the background.
+     */
+    @Override
+    public UserDTO getUserById(Long userId) throws UserResourceException {
+        UserDTO cachedUser = userCache.getUser(userId);
+        if (cachedUser != null) {
+            if (userCache.isDueForRefresh(UserCache.USERS_CACHE, userId))
+                singleFlight.refresh(UserCache.USERS_CACHE, userId, onPrimary(() -> toDto(findUser(userId))),
+                        user -> userCache.replaceUser(cachedUser, user));
+            return cachedUser;
+        }
+
+        return singleFlight.load(UserCache.USERS_CACHE, userId, onPrimary(() -> {
+            UserDTO user = toDto(findUser(userId));
+            userCache.putUser(user);
+            return user;
+        }));
+    }
+
+    @Override
+    public List<UserLookupDTO> getUsersByIds(List<Long> userIds) throws UserResourceException {
+        if (userIds.size() > MAX_LOOKUP_IDS)
+            throw new UserResourceException("TooManyIds",
+                    "A lookup cannot contain more than " + MAX_LOOKUP_IDS + " IDs.", HttpStatus.BAD_REQUEST);
+
+        Map<Long, UserDTO> users = getUsers(new HashSet<>(userIds));
+
+        return userIds.stream()
+                .map(id -> new UserLookupDTO(id, users.containsKey(id), users.get(id)))
+                .toList();
+    }
+
+    @CachePut(value = UserCache.USERS_CACHE, key = "#result.id")
+    @Override
+    public UserDTO createUser(CreateUserForm createUserForm) throws UserResourceException {
+        String passwordHash = passwordHasher.hash(createUserForm.getPassword());
+
+        User user;
         try {
-            return userRepository.save(new User(null, createUserForm.getUsername(), createUserForm.getEmail(),
-                    createUserForm.getPassword()));
+            user = userRepository.save(newUser(createUserForm, passwordHash));
         } catch (DataIntegrityViolationException e) {
             throw new UserResourceException("UserAlreadyExists",
                     "The user " + createUserForm.getUsername() + " already exists.", HttpStatus.CONFLICT);
@@ -47,47 +252,498 @@ public class UserServiceImpl implements UserService {
                     "Error while creating the user " + createUserForm.getUsername() + ".",
                     HttpStatus.INTERNAL_SERVER_ERROR);
         }
+
+        userCache.evictPagesOnCreate(user.getId());
+        return UserMapper.INSTANCE.toDto(user);
     }
 
-    @CachePut(value = "users-cache", key = "#updateUserForm.id")
-    @CacheEvict(value = "users-pages-cache", allEntries = true)
     @Override
-    public User updateUser(UpdateUserForm updateUserForm) throws UserResourceException {
-        User userDatabase = getUserById(updateUserForm.getId());
-        String newEmail = updateUserForm.getEmail();
-        String newPassword = updateUserForm.getPassword();
+    public List<CreateUserResultDTO> createUsers(List<CreateUserForm> createUserForms) throws UserResourceException {
+        if (createUserForms.size() > MAX_BATCH_USERS)
+            throw new UserResourceException("BatchTooLarge",
+                    "A batch cannot contain more than " + MAX_BATCH_USERS + " users.", HttpStatus.BAD_REQUEST);
 
-        if (newEmail != null && !newEmail.isEmpty())
-            userDatabase.setEmail(newEmail);
+        CreateUserResultDTO[] results = new CreateUserResultDTO[createUserForms.size()];
+        Set<String> batchUsernames = new HashSet<>();
+        List<Integer> validIndexes = new ArrayList<>();
 
-        if (newPassword != null && !newPassword.isEmpty())
-            userDatabase.setPassword(newPassword);
+        for (int i = 0; i < createUserForms.size(); i++) {
+            CreateUserForm form = createUserForms.get(i);
+            Set<ConstraintViolation<CreateUserForm>> violations = form != null ? validator.validate(form) : Set.of();
 
+            if (form == null)
+                results[i] = CreateUserResultDTO.failed(i, null, Status.INVALID, "The user is required.");
+            else if (!violations.isEmpty())
+                results[i] = CreateUserResultDTO.failed(i, form.getUsername(), Status.INVALID, violations.stream()
+                        .map(ConstraintViolation::getMessage).sorted().collect(Collectors.joining(", ")));
+            else if (!batchUsernames.add(form.getUsername()))
+                results[i] = duplicate(i, form);
+            else
+                validIndexes.add(i);
+        }
+
+        for (int from = 0; from < validIndexes.size(); from += BATCH_SIZE)
+            createChunk(createUserForms, validIndexes.subList(from, Math.min(from + BATCH_SIZE, validIndexes.size())),
+                    results);
+
+        Long minCreatedId = null;
+        for (CreateUserResultDTO result : results) {
+            if (result.status() != Status.CREATED)
+                continue;
+
+            userCache.putUser(result.user());
+            if (minCreatedId == null || result.user().id() < minCreatedId)
+                minCreatedId = result.user().id();
+        }
+
+        // The pages touched by the smallest new ID cover the pages touched by all of them.
+        if (minCreatedId != null)
+            userCache.evictPagesOnCreate(minCreatedId);
+
+        return List.of(results);
+    }
+
+    /**
+     * Imports users with the COPY protocol. The users are validated one by one and their passwords are hashed by
+     * chunks, without holding a connection. They are loaded by segments of {@link #IMPORT_SEGMENT_SIZE}, each in its
+     * own transaction, so only a segment is held in memory and no transaction lasts for the whole import. The loaded
+     * segments are kept when a later one fails, importing the file again skips their usernames. The caches are
+     * invalidated once at the end, as for a single creation of the smallest inserted ID.
+     */
+    @Override
+    public ImportUsersResultDTO importUsers(UserImportReader userImportReader)
+            throws UserResourceException, IOException {
+        UserCopyLoader copyLoader = userCopyLoader.getIfAvailable();
+        ImportProgress progress = new ImportProgress();
         try {
-            return userRepository.save(userDatabase);
-        } catch (DataIntegrityViolationException e) {
-            throw new UserResourceException("UserAlreadyExist", "User with same name already exists.",
-                    HttpStatus.CONFLICT);
-        } catch (Exception e) {
-            throw new UserResourceException("UpdateUserError",
-                    "Error while updating the user with the ID : " + updateUserForm.getId().toString(),
+            if (copyLoader == null || !copyLoader.isSupported())
+                throw importNotSupported();
+
+            List<StagedUser> segment = new ArrayList<>(IMPORT_SEGMENT_SIZE);
+            List<CreateUserForm> chunk = new ArrayList<>(BATCH_SIZE);
+            for (CreateUserForm form = userImportReader.next(); form != null; form = userImportReader.next()) {
+                if (!validator.validate(form).isEmpty()) {
+                    progress.invalid++;
+                    continue;
+                }
+
+                chunk.add(form);
+                if (chunk.size() == BATCH_SIZE) {
+                    hash(chunk, segment);
+                    chunk.clear();
+                }
+                if (segment.size() >= IMPORT_SEGMENT_SIZE) {
+                    load(copyLoader, segment, progress);
+                    segment.clear();
+                }
+            }
+            hash(chunk, segment);
+            load(copyLoader, segment, progress);
+        } catch (UserCopyLoader.UnsupportedDatabaseException e) {
+            throw importNotSupported();
+        } catch (SQLException e) {
+            throw new UserResourceException("ImportUsersError", "Error while importing the users.",
                     HttpStatus.INTERNAL_SERVER_ERROR);
+        } finally {
+            if (progress.minId != null)
+                userCache.evictPagesOnCreate(progress.minId);
+        }
+
+        return new ImportUsersResultDTO(progress.inserted, progress.staged - progress.inserted, progress.invalid);
+    }
+
+    /**
+     * Updates the user with a single UPDATE statement, the user is not loaded beforehand.
+     * <p>
+     * When the user is cached, the update is conditioned on the cached version : if a row is updated the cached user
+     * was current and the new user is derived from it, otherwise it is stale and evicted. Without a usable cached
+     * user, the new user is read back, and on a miss the user is only read again to tell a
+     * version mismatch from a missing user.
+     */
+    @CachePut(value = UserCache.USERS_CACHE, key = "#updateUserForm.id")
+    @Override
+    public UserDTO updateUser(UpdateUserForm updateUserForm, Long expectedVersion) throws UserResourceException {
+        Long userId = updateUserForm.getId();
+        if (userId == null)
+            throw userNotFound();
+
+        String newEmail = emptyToNull(updateUserForm.getEmail());
+        String newPassword = emptyToNull(updateUserForm.getPassword());
+
+        if (newEmail == null && newPassword == null) {
+            UserDTO user = toDto(findUser(userId));
+            if (expectedVersion != null && !expectedVersion.equals(user.version()))
+                throw versionMismatch(userId);
+            return user;
+        }
+
+        if (newPassword != null)
+            newPassword = passwordHasher.hash(newPassword);
+
+        UserWriteBehind writeBehind = userWriteBehind.getIfAvailable();
+        if (writeBehind != null)
+            return updateBehind(writeBehind, userId, newEmail, newPassword, expectedVersion);
+
+        UserDTO cachedUser = userCache.getUser(userId);
+        if (cachedUser != null && cachedUser.version() != null
+                && (expectedVersion == null || expectedVersion.equals(cachedUser.version()))) {
+            if (update(userId, newEmail, newPassword, cachedUser.version()) == 1) {
+                userCache.evictPagesOnUpdate(userId);
+                return new UserDTO(userId, cachedUser.username(), newEmail != null ? newEmail : cachedUser.email(),
+                        cachedUser.version() + 1);
+            }
+            userCache.evictUser(userId);
         }
+
+        if (update(userId, newEmail, newPassword, expectedVersion) == 0) {
+            userCache.evictUser(userId);
+            if (expectedVersion != null && userRepository.existsById(userId))
+                throw versionMismatch(userId);
+            throw userNotFound();
+        }
+
+        userCache.evictPagesOnUpdate(userId);
+        return UserMapper.INSTANCE.toDto(findUser(userId));
     }
 
-    @Caching(evict = {
-            @CacheEvict(value = "users-cache", key = "#userId"),
-            @CacheEvict(value = "users-pages-cache", allEntries = true)
-    })
+    /**
+     * Deletes the user with a single DELETE statement, the deleted row count tells whether the user existed.
+     * The cached user is evicted before the call, so a user deleted by another node is not served anymore.
+     */
+    @CacheEvict(value = UserCache.USERS_CACHE, key = "#userId", beforeInvocation = true)
     @Override
     public void deleteUser(Long userId) throws UserResourceException {
+        userWriteBehind.ifAvailable(writeBehind -> writeBehind.discard(userId));
+
+        int deletedUsers;
         try {
-            userRepository.delete(getUserById(userId));
+            deletedUsers = userRepository.deleteUserById(userId);
         } catch (Exception e) {
             throw new UserResourceException("DeleteUserError",
                     "Error while deleting the user with the ID : " + userId.toString(),
                     HttpStatus.INTERNAL_SERVER_ERROR);
 
         }
+
+        if (deletedUsers == 0)
+            throw userNotFound();
+
+        userCache.evictPagesOnDelete(userId);
+    }
+
+    /**
+     * Inserts a chunk of valid users in one transaction, the inserts being sent as a JDBC batch.
+     * If another request inserts one of the usernames meanwhile, the chunk is retried user by user.
+     * The passwords of the chunk are hashed in parallel beforehand, and the chunk fails if the hashing pool is full.
+     */
+    private void createChunk(List<CreateUserForm> forms, List<Integer> indexes, CreateUserResultDTO[] results) {
+        Set<String> existingUsernames = userRepository.findExistingUsernames(
+                indexes.stream().map(i -> forms.get(i).getUsername()).toList());
+
+        List<Integer> newIndexes = new ArrayList<>();
+        for (Integer i : indexes) {
+            if (existingUsernames.contains(forms.get(i).getUsername()))
+                results[i] = duplicate(i, forms.get(i));
+            else
+                newIndexes.add(i);
+        }
+
+        List<String> passwordHashes;
+        try {
+            passwordHashes = passwordHasher.hashAll(newIndexes.stream().map(i -> forms.get(i).getPassword()).toList());
+        } catch (UserResourceException e) {
+            for (Integer i : newIndexes)
+                results[i] = CreateUserResultDTO.failed(i, forms.get(i).getUsername(), Status.ERROR, e.getMessage());
+            return;
+        }
+
+        List<User> newUsers = new ArrayList<>(newIndexes.size());
+        for (int j = 0; j < newIndexes.size(); j++)
+            newUsers.add(newUser(forms.get(newIndexes.get(j)), passwordHashes.get(j)));
+
+        try {
+            List<User> users = userRepository.saveAll(newUsers);
+            for (int j = 0; j < newIndexes.size(); j++)
+                results[newIndexes.get(j)] = CreateUserResultDTO.created(newIndexes.get(j),
+                        UserMapper.INSTANCE.toDto(users.get(j)));
+        } catch (DataIntegrityViolationException e) {
+            for (int j = 0; j < newIndexes.size(); j++) {
+                int i = newIndexes.get(j);
+                try {
+                    results[i] = CreateUserResultDTO.created(i,
+                            UserMapper.INSTANCE.toDto(userRepository.save(newUser(forms.get(i), passwordHashes.get(j)))));
+                } catch (DataIntegrityViolationException duplicateException) {
+                    results[i] = duplicate(i, forms.get(i));
+                } catch (Exception exception) {
+                    results[i] = CreateUserResultDTO.failed(i, forms.get(i).getUsername(), Status.ERROR,
+                            "Error while creating the user " + forms.get(i).getUsername() + ".");
+                }
+            }
+        } catch (Exception e) {
+            for (Integer i : newIndexes)
+                results[i] = CreateUserResultDTO.failed(i, forms.get(i).getUsername(), Status.ERROR,
+                        "Error while creating the user " + forms.get(i).getUsername() + ".");
+        }
+    }
+
+    /**
+     * Hashes the passwords of a chunk of an import and adds its users to the segment. An import is a long operation,
+     * so when the hashing pool is saturated it waits and retries instead of failing the whole import.
+     */
+    private void hash(List<CreateUserForm> forms, List<StagedUser> segment) throws UserResourceException {
+        if (forms.isEmpty())
+            return;
+
+        List<String> rawPasswords = forms.stream().map(CreateUserForm::getPassword).toList();
+        List<String> passwordHashes;
+        while (true) {
+            try {
+                passwordHashes = passwordHasher.hashAll(rawPasswords);
+                break;
+            } catch (UserResourceException e) {
+                if (e.getStatus() != HttpStatus.SERVICE_UNAVAILABLE)
+                    throw e;
+                waitFor(e.getRetryAfter());
+            }
+        }
+
+        for (int i = 0; i < forms.size(); i++)
+            segment.add(new StagedUser(forms.get(i).getUsername(), forms.get(i).getEmail(), passwordHashes.get(i)));
+    }
+
+    /**
+     * Loads a segment of an import in its own transaction. The last segment is loaded even empty when it is the only
+     * one, so that an import without any valid user still goes through the database.
+     */
+    private static void load(UserCopyLoader copyLoader, List<StagedUser> segment, ImportProgress progress)
+            throws SQLException {
+        if (segment.isEmpty() && progress.segments > 0)
+            return;
+
+        try (UserCopyLoader.Session session = copyLoader.open()) {
+            for (StagedUser user : segment)
+                session.add(user.username(), user.email(), user.passwordHash());
+
+            long staged = session.getStaged();
+            UserCopyLoader.MergeResult result = session.merge();
+            progress.segments++;
+            progress.staged += staged;
+            progress.inserted += result.inserted();
+            if (result.minId() != null && (progress.minId == null || result.minId() < progress.minId))
+                progress.minId = result.minId();
+        }
+    }
+
+    private static void waitFor(Duration delay) throws UserResourceException {
+        try {
+            Thread.sleep(delay != null ? delay.toMillis() : 100);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UserResourceException("ImportUsersError", "The import has been interrupted.",
+                    HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    private static UserResourceException importNotSupported() {
+        return new UserResourceException("ImportNotSupported", "The bulk import requires a Postgres database.",
+                HttpStatus.NOT_IMPLEMENTED);
+    }
+
+    private static User newUser(CreateUserForm createUserForm, String passwordHash) {
+        return new User(null, createUserForm.getUsername(), createUserForm.getEmail(), passwordHash);
+    }
+
+    private static CreateUserResultDTO duplicate(int index, CreateUserForm createUserForm) {
+        return CreateUserResultDTO.failed(index, createUserForm.getUsername(), Status.DUPLICATE,
+                "The user " + createUserForm.getUsername() + " already exists.");
+    }
+
+    private Long estimateCount() {
+        try {
+            return userRepository.estimateCount();
+        } catch (DataAccessException e) {
+            return null;
+        }
+    }
+
+    private User findUser(Long userId) throws UserResourceException {
+        return userRepository.findById(userId).orElseThrow(UserServiceImpl::userNotFound);
+    }
+
+    /**
+     * Write-behind update : the user is read from the cache, or from the database, and the
+     * update is acknowledged once logged. The cached user is replaced by the updated one through the CachePut.
+     * If a flush wrote the user while it was read, the user is read again from the database.
+     */
+    private UserDTO updateBehind(UserWriteBehind writeBehind, Long userId, String email, String password,
+            Long expectedVersion) throws UserResourceException {
+        UserDTO updatedUser = null;
+        try {
+            for (boolean cached = true; updatedUser == null; cached = false) {
+                long flushCount = writeBehind.getFlushCount();
+                UserDTO user = cached ? userCache.getUser(userId) : null;
+                if (user == null)
+                    user = UserMapper.INSTANCE.toDto(findUser(userId));
+
+                updatedUser = writeBehind.update(user, flushCount, email, password, expectedVersion);
+            }
+        } catch (IOException e) {
+            throw new UserResourceException("UpdateUserError",
+                    "Error while updating the user with the ID : " + userId.toString(),
+                    HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+
+        userCache.evictPagesOnUpdate(userId);
+        return updatedUser;
+    }
+
+    private int update(Long userId, String email, String password, Long version) throws UserResourceException {
+        try {
+            return userRepository.updateUser(userId, email, password, version);
+        } catch (DataIntegrityViolationException e) {
+            throw new UserResourceException("UserAlreadyExist", "User with same name already exists.",
+                    HttpStatus.CONFLICT);
+        } catch (Exception e) {
+            log.error("Error while updating the user with the ID : {}", userId, e);
+            throw new UserResourceException("UpdateUserError",
+                    "Error while updating the user with the ID : " + userId.toString(),
+                    HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Maps a user read without its password, overlaying its pending write-behind update if any.
+     */
+    private UserDTO toDto(UserView user) {
+        return overlay(UserMapper.INSTANCE.toDto(user));
+    }
+
+    /**
+     * Maps a user read by ID, overlaying its pending write-behind update if any.
+     */
+    private UserDTO toDto(User user) {
+        return overlay(UserMapper.INSTANCE.toDto(user));
+    }
+
+    private UserDTO overlay(UserDTO user) {
+        UserWriteBehind writeBehind = userWriteBehind.getIfAvailable();
+        return writeBehind != null ? writeBehind.overlay(user) : user;
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    private static UserResourceException userNotFound() {
+        return new UserResourceException("UserNotFound", "The user ID is not found in the database.",
+                HttpStatus.NOT_FOUND);
+    }
+
+    private static UserResourceException versionMismatch(Long userId) {
+        return new UserResourceException("UserVersionMismatch",
+                "The user with the ID : " + userId + " has been modified since it was read.",
+                HttpStatus.PRECONDITION_FAILED);
+    }
+
+    /**
+     * Reads users from the users cache, then fetches the misses with a single IN query and back-fills the cache.
+     *
+     * @param ids The IDs of the users, without duplicates.
+     * @return The existing users by ID.
+     */
+    private Map<Long, UserDTO> getUsers(Collection<Long> ids) {
+        Map<Long, UserDTO> users = new HashMap<>(userCache.getUsers(ids));
+
+        List<Long> missingIds = ids.stream().filter(id -> !users.containsKey(id)).toList();
+        if (!missingIds.isEmpty()) {
+            List<UserView> missingUsers;
+            try (ReplicaRoutingDataSource.PrimaryScope scope = ReplicaRoutingDataSource.usePrimary()) {
+                missingUsers = userRepository.findAllProjectedByIdIn(missingIds);
+            }
+            for (UserView user : missingUsers) {
+                UserDTO userDTO = toDto(user);
+                userCache.putUser(userDTO);
+                users.put(userDTO.id(), userDTO);
+            }
+        }
+
+        return users;
+    }
+
+    /**
+     * Reloads a page in the background, its cached IDs are replaced unless a write has evicted them meanwhile.
+     * The users of the page are not replaced, they are refreshed by their own hits. The reload coalesces with the
+     * misses of the page, so it yields the same page of users as they do.
+     */
+    private void refreshPage(Pageable pageable, Page<UserDTO> cachedPage) {
+        List<Long> cachedIds = cachedPage.getContent().stream().map(UserDTO::id).toList();
+        singleFlight.refresh(UserCache.PAGES_CACHE, pageable,
+                onPrimary(() -> userRepository.findAllProjectedBy(pageable).map(this::toDto)),
+                page -> userCache.replacePageIds(pageable, cachedIds,
+                        page.getContent().stream().map(UserDTO::id).toList()));
+    }
+
+    /**
+     * Rebuilds a cached page from its user IDs : the users are read from the users cache and the missing ones are
+     * fetched with a single query.
+     *
+     * @param pageable The pageable sorted by ID.
+     * @return The cached page, or null if the page is not cached or one of its users no longer exists.
+     */
+    private Page<UserDTO> getCachedPage(Pageable pageable) {
+        List<Long> ids = userCache.getPageIds(pageable);
+        if (ids == null)
+            return null;
+
+        Map<Long, UserDTO> users = getUsers(ids);
+        if (users.size() != ids.size()) {
+            userCache.evictPage(pageable);
+            return null;
+        }
+
+        Long total = userCache.getTotal();
+        if (total == null) {
+            // Cached like the page, so read from the primary as well.
+            try (ReplicaRoutingDataSource.PrimaryScope scope = ReplicaRoutingDataSource.usePrimary()) {
+                total = userRepository.count();
+            }
+            userCache.putTotal(total);
+        }
+
+        return new PageImpl<>(ids.stream().map(users::get).toList(), pageable, total);
+    }
+
+    /**
+     * Runs a load filling the caches on the primary. The scope is opened by the loader itself, since the refreshes
+     * run on the threads of the {@link SingleFlight}.
+     */
+    private static <T, E extends Exception> SingleFlight.Loader<T, E> onPrimary(SingleFlight.Loader<T, E> loader) {
+        return () -> {
+            try (ReplicaRoutingDataSource.PrimaryScope scope = ReplicaRoutingDataSource.usePrimary()) {
+                return loader.load();
+            }
+        };
+    }
+
+    /**
+     * A user of an import whose password is hashed, waiting for the load of its segment.
+     */
+    private record StagedUser(String username, String email, String passwordHash) {
+    }
+
+    /**
+     * Totals of the segments of an import loaded so far.
+     */
+    private static final class ImportProgress {
+
+        private int segments;
+        private long staged;
+        private long inserted;
+        private long invalid;
+        private Long minId;
     }
 }
@@ -0,0 +1,9 @@
+package com.example.demo.user;
+
+/**
+ * Projection of the public columns of a user, the password is never read into it. It is a class-based projection :
+ * Hibernate builds it with a constructor expression, where an interface projection would be a proxy over a tuple,
+ * allocating more per row than the entity it replaces.
+ */
+public record UserView(Long id, String username, String email, Long version) {
+}
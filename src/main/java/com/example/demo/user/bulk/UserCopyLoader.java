@@ -0,0 +1,247 @@
+package com.example.demo.user.bulk;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+
+import javax.sql.DataSource;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.stereotype.Component;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Loads users in bulk with the Postgres COPY protocol.
+ * <p>
+ * The rows are streamed with COPY into a temporary staging table, then merged into {@code user_app} with a single
+ * INSERT ... ON CONFLICT (username) DO NOTHING, so the existing usernames are skipped instead of failing the load.
+ * A load runs in one transaction on one connection: nothing of that load is inserted if it fails midway, and the
+ * staging table is dropped on commit. Only a small buffer of rows is held in memory, the staged rows stay in Postgres.
+ * A large import is split into several loads, so that no transaction nor connection is held for the whole import :
+ * an import failing midway keeps the loads already committed.
+ */
+@Component
+@RequiredArgsConstructor
+public class UserCopyLoader {
+
+    /**
+     * Size of the buffer sent to Postgres in one CopyData message.
+     */
+    static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private static final String CREATE_STAGING_TABLE = """
+            create temporary table user_import (line bigint, username varchar(255), email varchar(255),
+                password varchar(255)) on commit drop""";
+
+    private static final String COPY_STAGING_TABLE =
+            "copy user_import (line, username, email, password) from stdin with (format csv)";
+
+    // Within the load, the first occurrence of a username wins. Each user takes its own value of the pooled sequence,
+    // which never falls in a block of IDs reserved by Hibernate, at the cost of gaps between the imported IDs.
+    private static final String MERGE_STAGING_TABLE = """
+            with inserted as (
+                insert into user_app (id, username, email, password, version)
+                select nextval('user_app_seq'), username, email, password, 0
+                from (select distinct on (username) line, username, email, password
+                      from user_import order by username, line) staged
+                order by line
+                on conflict (username) do nothing
+                returning id)
+            select count(*), min(id) from inserted""";
+
+    private final DataSource dataSource;
+
+    private volatile Boolean supported;
+
+    /**
+     * Tells whether the database supports the bulk load, so that an import can be refused before reading it.
+     *
+     * @return true if the database is Postgres.
+     * @throws SQLException If no connection can be obtained.
+     */
+    public boolean isSupported() throws SQLException {
+        if (supported == null) {
+            try (Connection connection = dataSource.getConnection()) {
+                supported = connection.isWrapperFor(PGConnection.class);
+            }
+        }
+        return supported;
+    }
+
+    /**
+     * Opens a load on a new connection. The load must be merged, otherwise it is rolled back when closed.
+     *
+     * @return The load.
+     * @throws UnsupportedDatabaseException If the database is not Postgres.
+     * @throws SQLException                 If the load cannot be started.
+     */
+    public Session open() throws SQLException {
+        Connection connection = dataSource.getConnection();
+        try {
+            if (!connection.isWrapperFor(PGConnection.class))
+                throw new UnsupportedDatabaseException();
+
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(CREATE_STAGING_TABLE);
+            }
+            CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_STAGING_TABLE);
+            return new CopySession(connection, copyIn);
+        } catch (SQLException | RuntimeException e) {
+            rollbackAndClose(connection);
+            throw e;
+        }
+    }
+
+    /**
+     * A load in progress.
+     */
+    public interface Session extends AutoCloseable {
+
+        /**
+         * Stages a user.
+         *
+         * @param username     The username.
+         * @param email        The email.
+         * @param passwordHash The hash of the password.
+         * @throws SQLException If the row cannot be sent.
+         */
+        void add(String username, String email, String passwordHash) throws SQLException;
+
+        /**
+         * @return The number of users staged so far.
+         */
+        long getStaged();
+
+        /**
+         * Ends the copy, merges the staged users and commits.
+         *
+         * @return The outcome of the merge.
+         * @throws SQLException If the merge fails, nothing of this load is inserted then.
+         */
+        MergeResult merge() throws SQLException;
+
+        @Override
+        void close() throws SQLException;
+    }
+
+    /**
+     * Thrown when the database does not support the bulk load.
+     */
+    public static final class UnsupportedDatabaseException extends SQLFeatureNotSupportedException {
+
+        private UnsupportedDatabaseException() {
+            super("The bulk load requires Postgres.");
+        }
+    }
+
+    /**
+     * Outcome of a merge.
+     *
+     * @param inserted The number of users inserted.
+     * @param minId    The smallest ID inserted, null if no user has been inserted.
+     */
+    public record MergeResult(long inserted, Long minId) {
+    }
+
+    private static void rollbackAndClose(Connection connection) throws SQLException {
+        try (connection) {
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    private static final class CopySession implements Session {
+
+        private final Connection connection;
+        private final CopyIn copyIn;
+        private final StringBuilder buffer = new StringBuilder(COPY_BUFFER_SIZE);
+        private long staged;
+
+        private CopySession(Connection connection, CopyIn copyIn) {
+            this.connection = connection;
+            this.copyIn = copyIn;
+        }
+
+        @Override
+        public void add(String username, String email, String passwordHash) throws SQLException {
+            buffer.append(++staged).append(',');
+            appendValue(username);
+            buffer.append(',');
+            appendValue(email);
+            buffer.append(',');
+            appendValue(passwordHash);
+            buffer.append('\n');
+
+            if (buffer.length() >= COPY_BUFFER_SIZE)
+                flush();
+        }
+
+        @Override
+        public long getStaged() {
+            return staged;
+        }
+
+        @Override
+        public MergeResult merge() throws SQLException {
+            flush();
+            copyIn.endCopy();
+
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("analyze user_import");
+                try (ResultSet resultSet = statement.executeQuery(MERGE_STAGING_TABLE)) {
+                    resultSet.next();
+                    long inserted = resultSet.getLong(1);
+                    long minId = resultSet.getLong(2);
+                    MergeResult result = new MergeResult(inserted, resultSet.wasNull() ? null : minId);
+                    connection.commit();
+                    return result;
+                }
+            }
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                if (copyIn.isActive())
+                    copyIn.cancelCopy();
+            } finally {
+                // Nothing is left to roll back once merged.
+                rollbackAndClose(connection);
+            }
+        }
+
+        private void flush() throws SQLException {
+            if (buffer.isEmpty())
+                return;
+
+            byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+            copyIn.writeToCopy(bytes, 0, bytes.length);
+            buffer.setLength(0);
+        }
+
+        /**
+         * Appends a CSV value, always quoted so that an empty string is not read back as NULL.
+         */
+        private void appendValue(String value) {
+            if (value == null)
+                return;
+
+            buffer.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"')
+                    buffer.append('"');
+                buffer.append(c);
+            }
+            buffer.append('"');
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.example.demo.user.bulk;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.example.demo.user.dto.CreateUserForm;
+import com.example.demo.user.export.UserExportFormat;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Reads the users of an import one by one from an input stream, in the formats of the export.
+ * <p>
+ * Only the current line is held in memory. A line which cannot be parsed is returned as an empty form, so that it is
+ * counted as invalid by the validation like any other invalid user, and the reading goes on with the next line.
+ * A record longer than {@link #MAX_RECORD_LENGTH} is returned as an empty form as well, the rest of its line is
+ * skipped without being held : an unterminated quote or a body without line breaks cannot fill the memory.
+ */
+public abstract class UserImportReader implements Closeable {
+
+    /**
+     * Maximum number of characters of a record, far beyond the sizes of the columns of a user.
+     */
+    static final int MAX_RECORD_LENGTH = 16 * 1024;
+
+    private final BufferedReader reader;
+
+    protected UserImportReader(InputStream inputStream, Charset charset) {
+        this.reader = new BufferedReader(new InputStreamReader(inputStream, charset));
+    }
+
+    /**
+     * Creates a reader of the given format.
+     *
+     * @param format       The format of the import.
+     * @param objectMapper The mapper deserializing the NDJSON lines.
+     * @param inputStream  The stream to read from.
+     * @param charset      The charset of the stream.
+     * @return The reader.
+     */
+    public static UserImportReader of(UserExportFormat format, ObjectMapper objectMapper, InputStream inputStream,
+            Charset charset) {
+        return switch (format) {
+            case NDJSON -> new NdjsonReader(objectMapper, inputStream, charset);
+            case CSV -> new CsvReader(inputStream, charset);
+        };
+    }
+
+    /**
+     * Reads the next user.
+     *
+     * @return The next user, an empty form if it cannot be parsed, or null at the end of the stream.
+     * @throws IOException If the stream cannot be read.
+     */
+    public abstract CreateUserForm next() throws IOException;
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Reads the next line which is not blank.
+     *
+     * @throws RecordTooLongException If the line is longer than {@link #MAX_RECORD_LENGTH}.
+     */
+    protected String nextLine() throws IOException {
+        String line;
+        do {
+            line = readLine(MAX_RECORD_LENGTH);
+        } while (line != null && line.isBlank());
+        return line;
+    }
+
+    /**
+     * Reads a line, ended as for {@link BufferedReader#readLine()}, of at most the given length. The characters
+     * beyond it are read up to the end of the line but not kept.
+     *
+     * @param maxLength The maximum length of the line.
+     * @return The line, or null at the end of the stream.
+     * @throws RecordTooLongException If the line is longer, the next read starts at the next line.
+     */
+    protected String readLine(int maxLength) throws IOException {
+        StringBuilder line = new StringBuilder();
+        boolean tooLong = false;
+        int c;
+        while ((c = reader.read()) != -1 && c != '\n') {
+            if (c == '\r') {
+                reader.mark(1);
+                if (reader.read() != '\n')
+                    reader.reset();
+                break;
+            }
+            if (line.length() < maxLength)
+                line.append((char) c);
+            else
+                tooLong = true;
+        }
+
+        if (tooLong)
+            throw new RecordTooLongException();
+        if (c == -1 && line.isEmpty())
+            return null;
+        return line.toString();
+    }
+
+    /**
+     * Thrown when a record is longer than {@link #MAX_RECORD_LENGTH}.
+     */
+    protected static final class RecordTooLongException extends IOException {
+
+        private RecordTooLongException() {
+            super("The record is longer than " + MAX_RECORD_LENGTH + " characters.");
+        }
+    }
+
+    /**
+     * One JSON object per line, with the fields of {@link CreateUserForm}.
+     */
+    private static final class NdjsonReader extends UserImportReader {
+
+        private final ObjectMapper objectMapper;
+
+        private NdjsonReader(ObjectMapper objectMapper, InputStream inputStream, Charset charset) {
+            super(inputStream, charset);
+            this.objectMapper = objectMapper;
+        }
+
+        @Override
+        public CreateUserForm next() throws IOException {
+            String line;
+            try {
+                line = nextLine();
+            } catch (RecordTooLongException e) {
+                return new CreateUserForm();
+            }
+            if (line == null)
+                return null;
+
+            try {
+                CreateUserForm form = objectMapper.readValue(line, CreateUserForm.class);
+                return form != null ? form : new CreateUserForm();
+            } catch (JsonProcessingException e) {
+                return new CreateUserForm();
+            }
+        }
+    }
+
+    /**
+     * RFC 4180 CSV whose header names the columns, username, email and password, in any order. The quoted values
+     * may span several lines.
+     */
+    private static final class CsvReader extends UserImportReader {
+
+        private int usernameColumn = -1;
+        private int emailColumn = -1;
+        private int passwordColumn = -1;
+        private int columns;
+
+        private CsvReader(InputStream inputStream, Charset charset) {
+            super(inputStream, charset);
+        }
+
+        @Override
+        public CreateUserForm next() throws IOException {
+            List<String> values;
+            try {
+                if (columns == 0 && !readHeader())
+                    return null;
+                values = nextRecord();
+            } catch (RecordTooLongException e) {
+                return new CreateUserForm();
+            }
+            if (values == null)
+                return null;
+            if (values.size() != columns)
+                return new CreateUserForm();
+
+            return new CreateUserForm(value(values, usernameColumn), value(values, emailColumn),
+                    value(values, passwordColumn));
+        }
+
+        private boolean readHeader() throws IOException {
+            List<String> header = nextRecord();
+            if (header == null)
+                return false;
+
+            columns = header.size();
+            for (int i = 0; i < header.size(); i++) {
+                switch (header.get(i).trim().toLowerCase()) {
+                    case "username" -> usernameColumn = i;
+                    case "email" -> emailColumn = i;
+                    case "password" -> passwordColumn = i;
+                    default -> {
+                    }
+                }
+            }
+            return true;
+        }
+
+        private static String value(List<String> values, int column) {
+            return column >= 0 ? values.get(column) : null;
+        }
+
+        /**
+         * Reads the next record. A quoted value spanning several lines counts all of them in the length of the
+         * record, an unterminated quote stops at {@link #MAX_RECORD_LENGTH} and the reading resumes at the next line.
+         */
+        private List<String> nextRecord() throws IOException {
+            String line = nextLine();
+            if (line == null)
+                return null;
+
+            int length = line.length();
+
+            List<String> values = new ArrayList<>();
+            StringBuilder value = new StringBuilder();
+            boolean quoted = false;
+            int i = 0;
+            while (true) {
+                if (i == line.length()) {
+                    if (!quoted)
+                        break;
+                    // A quoted value goes on with the next line.
+                    line = readLine(MAX_RECORD_LENGTH - length);
+                    if (line == null)
+                        break;
+                    length += line.length() + 1;
+                    value.append('\n');
+                    i = 0;
+                    continue;
+                }
+
+                char c = line.charAt(i++);
+                if (quoted) {
+                    if (c != '"')
+                        value.append(c);
+                    else if (i < line.length() && line.charAt(i) == '"')
+                        value.append(line.charAt(i++));
+                    else
+                        quoted = false;
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    values.add(value.toString());
+                    value.setLength(0);
+                } else {
+                    value.append(c);
+                }
+            }
+            values.add(value.toString());
+            return values;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.demo.user.cache;
+
+import java.util.List;
+
+/**
+ * A response body already encoded in UTF-8 JSON, cached with its ETag.
+ *
+ * @param body The encoded body, its length is the Content-Length of the response.
+ * @param eTag The strong ETag of the body.
+ * @param ids  The IDs of the users contained in the body, used to invalidate the entry.
+ */
+public record EncodedResponse(byte[] body, String eTag, List<Long> ids) {
+}
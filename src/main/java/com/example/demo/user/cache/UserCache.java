@@ -0,0 +1,358 @@
+package com.example.demo.user.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.cache.TwoTierCache;
+import com.example.demo.config.CacheSpecProperties;
+import com.example.demo.user.dto.UserDTO;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Programmatic access to the user caches.
+ * <p>
+ * Users are cached as {@link UserDTO} records rather than JPA entities : a cache hit needs no mapping, the entries
+ * are immutable and the passwords are never kept in the heap-resident cache.
+ * <p>
+ * Pages are cached as the list of their user IDs and hydrated from {@code users-cache}, the total number of users
+ * is cached once in {@code users-count-cache}. A write therefore only evicts the pages it can change : for pages
+ * sorted by ID, an update changes none of them, a creation only changes the pages after its ID (or the last page)
+ * and a deletion only the pages from its ID onwards.
+ * <p>
+ * The same write paths invalidate the encoded responses of {@link UserResponseCache} : the responses containing the
+ * written user, and every page response when the total changes.
+ * <p>
+ * In two-tier mode every eviction is broadcast to the other nodes by the {@link TwoTierCache}, the pages and responses
+ * evicted by one write as a single message per cache. When the entries of a cache cannot be iterated, e.g. a remote
+ * L2, the page and response caches are cleared instead.
+ * <p>
+ * The users and pages hit late in their lifetime are reloaded ahead of their expiration
+ * ({@code app.cache.refresh-ahead}). A reloaded entry only replaces the entry it was reloaded from, so a reload never
+ * brings back an entry evicted by a write meanwhile.
+ */
+@Component
+@RequiredArgsConstructor
+public class UserCache {
+
+    public static final String USERS_CACHE = "users-cache";
+    public static final String PAGES_CACHE = "users-pages-cache";
+    public static final String COUNT_CACHE = "users-count-cache";
+    public static final String RESPONSES_CACHE = "users-responses-cache";
+
+    private static final String COUNT_KEY = "count";
+    private static final String APPROXIMATE_COUNT_KEY = "approximate-count";
+    private static final Sort ID_SORT = Sort.by("id");
+
+    private final CacheManager cacheManager;
+    private final CacheSpecProperties cacheSpecProperties;
+
+    public UserDTO getUser(Long userId) {
+        return cache(USERS_CACHE).get(userId, UserDTO.class);
+    }
+
+    public void putUser(UserDTO user) {
+        cache(USERS_CACHE).put(user.id(), user);
+    }
+
+    public void evictUser(Long userId) {
+        cache(USERS_CACHE).evict(userId);
+    }
+
+    /**
+     * Evicts users written together, published to the other nodes at once in two-tier mode.
+     *
+     * @param userIds The IDs of the users.
+     */
+    public void evictUsers(List<Long> userIds) {
+        evictAll(cache(USERS_CACHE), List.copyOf(userIds));
+    }
+
+    /**
+     * Replaces a cached user by its reloaded version, if the cached user is still the one it was reloaded from.
+     *
+     * @param cachedUser The user read from the cache.
+     * @param user       The reloaded user.
+     */
+    public void replaceUser(UserDTO cachedUser, UserDTO user) {
+        replace(cache(USERS_CACHE), user.id(), cachedUser, user);
+    }
+
+    /**
+     * Returns the IDs of the most accessed users, as ranked by the access frequencies Caffeine keeps for its
+     * eviction. In two-tier mode the L1 is used when the L2 is not a Caffeine cache.
+     *
+     * @param limit The maximum number of IDs.
+     * @return The IDs from the most accessed, empty if the users cache is not a size-bounded Caffeine cache.
+     */
+    public List<Long> getHottestUserIds(int limit) {
+        Cache usersCache = cache(USERS_CACHE);
+        Object nativeCache = usersCache.getNativeCache();
+        if (!(nativeCache instanceof com.github.benmanes.caffeine.cache.Cache<?, ?>)
+                && usersCache instanceof TwoTierCache twoTierCache)
+            nativeCache = twoTierCache.getLocal().getNativeCache();
+
+        if (!(nativeCache instanceof com.github.benmanes.caffeine.cache.Cache<?, ?> caffeineCache))
+            return List.of();
+
+        return caffeineCache.policy().eviction()
+                .map(eviction -> eviction.hottest(limit).keySet().stream()
+                        .filter(Long.class::isInstance)
+                        .map(Long.class::cast)
+                        .toList())
+                .orElse(List.of());
+    }
+
+    /**
+     * Reads several users from the users cache.
+     *
+     * @param userIds The IDs of the users.
+     * @return The users found in the cache by ID, the misses are absent.
+     */
+    public Map<Long, UserDTO> getUsers(Collection<Long> userIds) {
+        Cache usersCache = cache(USERS_CACHE);
+        Map<Long, UserDTO> users = new HashMap<>();
+        for (Long userId : userIds) {
+            UserDTO user = usersCache.get(userId, UserDTO.class);
+            if (user != null)
+                users.put(userId, user);
+        }
+        return users;
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<Long> getPageIds(Pageable pageable) {
+        return cache(PAGES_CACHE).get(pageable, List.class);
+    }
+
+    public void putPage(Pageable pageable, Page<UserDTO> page) {
+        cache(PAGES_CACHE).put(pageable, page.getContent().stream().map(UserDTO::id).toList());
+        cache(COUNT_CACHE).put(COUNT_KEY, page.getTotalElements());
+    }
+
+    public void putPageIds(Pageable pageable, List<Long> ids) {
+        cache(PAGES_CACHE).put(pageable, List.copyOf(ids));
+    }
+
+    /**
+     * Replaces the cached IDs of a page by the reloaded ones, if the cached IDs are still the ones they were reloaded
+     * from.
+     *
+     * @param pageable  The pageable sorted by ID.
+     * @param cachedIds The IDs read from the cache.
+     * @param ids       The reloaded IDs.
+     */
+    public void replacePageIds(Pageable pageable, List<Long> cachedIds, List<Long> ids) {
+        replace(cache(PAGES_CACHE), pageable, cachedIds, List.copyOf(ids));
+    }
+
+    public void evictPage(Pageable pageable) {
+        cache(PAGES_CACHE).evict(pageable);
+    }
+
+    public Long getTotal() {
+        return cache(COUNT_CACHE).get(COUNT_KEY, Long.class);
+    }
+
+    public void putTotal(long total) {
+        cache(COUNT_CACHE).put(COUNT_KEY, total);
+    }
+
+    /**
+     * Returns the approximate total, it is not evicted by the writes and only refreshed when it expires.
+     *
+     * @return The approximate total, or null if it is not cached.
+     */
+    public Long getApproximateTotal() {
+        return cache(COUNT_CACHE).get(APPROXIMATE_COUNT_KEY, Long.class);
+    }
+
+    public void putApproximateTotal(long total) {
+        cache(COUNT_CACHE).put(APPROXIMATE_COUNT_KEY, total);
+    }
+
+    /**
+     * Tells whether a cached entry has lived longer than the refresh-ahead fraction of its expireAfterWrite, i.e.
+     * whether a hit on it should reload it in the background.
+     *
+     * @param cacheName The name of the cache.
+     * @param key       The key of the entry.
+     * @return false if the refresh-ahead is disabled, the entry is absent or its cache does not expire after write.
+     */
+    @SuppressWarnings("unchecked")
+    public boolean isDueForRefresh(String cacheName, Object key) {
+        double refreshAhead = cacheSpecProperties.getRefreshAhead();
+        if (refreshAhead <= 0)
+            return false;
+
+        Object nativeCache = cache(cacheName).getNativeCache();
+        if (!(nativeCache instanceof com.github.benmanes.caffeine.cache.Cache<?, ?> caffeineCache))
+            return false;
+
+        return ((com.github.benmanes.caffeine.cache.Cache<Object, Object>) caffeineCache).policy().expireAfterWrite()
+                .flatMap(expiration -> expiration.ageOf(key)
+                        .map(age -> age.toNanos() >= expiration.getExpiresAfter().toNanos() * refreshAhead))
+                .orElse(false);
+    }
+
+    /**
+     * Evicts the pages a new user can appear on : the pages which are not full and the pages ending after its ID.
+     *
+     * @param userId The ID of the created user.
+     */
+    public void evictPagesOnCreate(Long userId) {
+        cache(COUNT_CACHE).evict(COUNT_KEY);
+        evictPagesIf((pageable, ids) -> ids.size() < pageable.getPageSize()
+                || (!ids.isEmpty() && userId < ids.get(ids.size() - 1)));
+        evictResponses(userId, true);
+    }
+
+    /**
+     * Evicts the pages whose order can change with the update, i.e. the pages which are not sorted by ID.
+     * The user itself is evicted too, so that the other nodes drop it in two-tier mode, the updated user being put
+     * back afterwards by the caller.
+     *
+     * @param userId The ID of the updated user.
+     */
+    public void evictPagesOnUpdate(Long userId) {
+        cache(USERS_CACHE).evict(userId);
+        evictPagesIf((pageable, ids) -> false);
+        evictResponses(userId, false);
+    }
+
+    /**
+     * Evicts the pages shifted by the deletion : the pages containing the user or ending after its ID.
+     *
+     * @param userId The ID of the deleted user.
+     */
+    public void evictPagesOnDelete(Long userId) {
+        cache(COUNT_CACHE).evict(COUNT_KEY);
+        evictPagesIf((pageable, ids) -> !ids.isEmpty() && userId <= ids.get(ids.size() - 1));
+        evictResponses(userId, true);
+    }
+
+    /**
+     * Returns the pageable sorted by ID used as page key, pages are only kept in a stable order when sorted by ID.
+     *
+     * @param pageable The pageable requested.
+     * @return The pageable sorted by ID if no sort is requested.
+     */
+    public static Pageable sortedById(Pageable pageable) {
+        if (pageable.isUnpaged() || pageable.getSort().isSorted())
+            return pageable;
+        return PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(), ID_SORT);
+    }
+
+    private void evictPagesIf(PagePredicate affected) {
+        Cache pagesCache = cache(PAGES_CACHE);
+        Iterable<Map.Entry<Object, Object>> entries = nativeEntries(pagesCache);
+        if (entries == null) {
+            pagesCache.clear();
+            return;
+        }
+
+        List<Object> evicted = new ArrayList<>();
+        for (Map.Entry<Object, Object> entry : entries) {
+            if (!(entry.getKey() instanceof Pageable pageable))
+                continue;
+
+            @SuppressWarnings("unchecked")
+            List<Long> ids = (List<Long>) entry.getValue();
+            if (!ID_SORT.equals(pageable.getSort()) || affected.test(pageable, ids))
+                evicted.add(pageable);
+        }
+        evictAll(pagesCache, evicted);
+    }
+
+    private void evictResponses(Long userId, boolean allPages) {
+        Cache responsesCache = cache(RESPONSES_CACHE);
+        Iterable<Map.Entry<Object, Object>> entries = nativeEntries(responsesCache);
+        if (entries == null) {
+            responsesCache.clear();
+            return;
+        }
+
+        List<Object> evicted = new ArrayList<>();
+        for (Map.Entry<Object, Object> entry : entries) {
+            if (entry.getValue() instanceof EncodedResponse response
+                    && (response.ids().contains(userId) || (allPages && entry.getKey() instanceof Pageable)))
+                evicted.add(entry.getKey());
+        }
+        evictAll(responsesCache, evicted);
+    }
+
+    /**
+     * Evicts the keys of one write, published to the other nodes as a single message in two-tier mode.
+     */
+    private static void evictAll(Cache cache, List<Object> keys) {
+        if (cache instanceof TwoTierCache twoTierCache)
+            twoTierCache.evictAll(keys);
+        else
+            keys.forEach(cache::evict);
+    }
+
+    /**
+     * Returns a snapshot of the entries of a cache, both tiers for a two-tier cache.
+     *
+     * @return The entries, or null if the cache cannot be iterated, e.g. a remote L2.
+     */
+    @SuppressWarnings("unchecked")
+    private static Iterable<Map.Entry<Object, Object>> nativeEntries(Cache cache) {
+        if (cache instanceof TwoTierCache twoTierCache) {
+            Iterable<Map.Entry<Object, Object>> sharedEntries = nativeEntries(twoTierCache.getShared());
+            Iterable<Map.Entry<Object, Object>> localEntries = nativeEntries(twoTierCache.getLocal());
+            if (sharedEntries == null || localEntries == null)
+                return null;
+
+            Map<Object, Object> entries = new HashMap<>();
+            localEntries.forEach(entry -> entries.put(entry.getKey(), entry.getValue()));
+            sharedEntries.forEach(entry -> entries.put(entry.getKey(), entry.getValue()));
+            return List.copyOf(entries.entrySet());
+        }
+
+        Object nativeCache = cache.getNativeCache();
+        if (nativeCache instanceof com.github.benmanes.caffeine.cache.Cache<?, ?> caffeineCache)
+            return List.copyOf(((Map<Object, Object>) caffeineCache.asMap()).entrySet());
+        if (nativeCache instanceof Map<?, ?> map)
+            return List.copyOf(((Map<Object, Object>) map).entrySet());
+
+        return null;
+    }
+
+    /**
+     * Atomically replaces an entry if it still holds the expected value, nothing is done for the caches which cannot
+     * compare and set. In two-tier mode the entry is replaced in the L2, the L1 expiring shortly.
+     */
+    @SuppressWarnings("unchecked")
+    private static void replace(Cache cache, Object key, Object expected, Object value) {
+        Object nativeCache = cache.getNativeCache();
+        if (nativeCache instanceof com.github.benmanes.caffeine.cache.Cache<?, ?> caffeineCache)
+            ((Map<Object, Object>) caffeineCache.asMap()).replace(key, expected, value);
+        else if (nativeCache instanceof ConcurrentMap<?, ?> map)
+            ((ConcurrentMap<Object, Object>) map).replace(key, expected, value);
+    }
+
+    private Cache cache(String name) {
+        Cache cache = cacheManager.getCache(name);
+        if (cache == null)
+            throw new IllegalStateException("The cache " + name + " is not configured.");
+        return cache;
+    }
+
+    @FunctionalInterface
+    private interface PagePredicate {
+        boolean test(Pageable pageable, List<Long> ids);
+    }
+}
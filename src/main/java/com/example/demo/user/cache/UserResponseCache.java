@@ -0,0 +1,124 @@
+package com.example.demo.user.cache;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import com.example.demo.config.CacheSpecProperties;
+import com.example.demo.user.dto.UserDTO;
+import com.example.demo.user.util.UserETags;
+import com.example.demo.util.PageDTO;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Optional cache of the encoded GET responses ({@code app.cache.encoded-responses}).
+ * <p>
+ * On a hit, the cached bytes are written straight to the servlet output stream with their ETag and Content-Length,
+ * without any Jackson serialization, or a 304 is sent if the ETag matches If-None-Match. The entries are
+ * invalidated by {@link UserCache} on the same write paths as the other user caches.
+ */
+@Component
+@RequiredArgsConstructor
+public class UserResponseCache {
+
+    private final CacheManager cacheManager;
+    private final CacheSpecProperties cacheSpecProperties;
+    private final ObjectMapper objectMapper;
+
+    public boolean isEnabled() {
+        return cacheSpecProperties.isEncodedResponses();
+    }
+
+    /**
+     * Writes the encoded response of a user, loading and encoding it first on a miss.
+     *
+     * @param request The current request.
+     * @param userId  The ID of the user.
+     * @param loader  Loads the user on a miss.
+     * @param <E>     The exception thrown by the loader.
+     * @throws E If the loader fails.
+     */
+    public <E extends Exception> void writeUser(ServletWebRequest request, Long userId, Loader<UserDTO, E> loader)
+            throws E {
+        write(request, userId, () -> {
+            UserDTO user = loader.load();
+            return encode(user, UserETags.of(user), List.of(user.id()));
+        });
+    }
+
+    /**
+     * Writes the encoded response of a page, loading and encoding it first on a miss.
+     *
+     * @param request  The current request.
+     * @param pageable The pageable requested.
+     * @param loader   Loads the page on a miss.
+     * @param <E>      The exception thrown by the loader.
+     * @throws E If the loader fails.
+     */
+    public <E extends Exception> void writePage(ServletWebRequest request, Pageable pageable,
+            Loader<Page<UserDTO>, E> loader) throws E {
+        write(request, pageable, () -> {
+            Page<UserDTO> page = loader.load();
+            return encode(new PageDTO<>(page), UserETags.of(page), page.getContent().stream().map(UserDTO::id).toList());
+        });
+    }
+
+    private <E extends Exception> void write(ServletWebRequest request, Object key, Loader<EncodedResponse, E> loader)
+            throws E {
+        Cache cache = cache();
+        EncodedResponse encodedResponse = cache.get(key, EncodedResponse.class);
+
+        if (encodedResponse == null) {
+            encodedResponse = loader.load();
+            cache.put(key, encodedResponse);
+        }
+
+        if (request.checkNotModified(encodedResponse.eTag()))
+            return;
+
+        HttpServletResponse response = request.getResponse();
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setContentLength(encodedResponse.body().length);
+        response.setHeader(HttpHeaders.ETAG, encodedResponse.eTag());
+        try {
+            response.getOutputStream().write(encodedResponse.body());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private EncodedResponse encode(Object body, String eTag, List<Long> ids) {
+        try {
+            return new EncodedResponse(objectMapper.writeValueAsBytes(body), eTag, List.copyOf(ids));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unable to encode the response " + body, e);
+        }
+    }
+
+    private Cache cache() {
+        Cache cache = cacheManager.getCache(UserCache.RESPONSES_CACHE);
+        if (cache == null)
+            throw new IllegalStateException("The cache " + UserCache.RESPONSES_CACHE + " is not configured.");
+        return cache;
+    }
+
+    @FunctionalInterface
+    public interface Loader<T, E extends Exception> {
+        T load() throws E;
+    }
+}
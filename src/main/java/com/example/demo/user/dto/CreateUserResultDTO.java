@@ -0,0 +1,25 @@
+package com.example.demo.user.dto;
+
+/**
+ * Outcome of one user of a batch creation.
+ *
+ * @param index        The position of the user in the batch.
+ * @param username     The username requested.
+ * @param status       The outcome of the creation.
+ * @param user         The user created, null if it was not created.
+ * @param errorMessage The reason why the user was not created.
+ */
+public record CreateUserResultDTO(int index, String username, Status status, UserDTO user, String errorMessage) {
+
+    public enum Status {
+        CREATED, DUPLICATE, INVALID, ERROR
+    }
+
+    public static CreateUserResultDTO created(int index, UserDTO user) {
+        return new CreateUserResultDTO(index, user.username(), Status.CREATED, user, null);
+    }
+
+    public static CreateUserResultDTO failed(int index, String username, Status status, String errorMessage) {
+        return new CreateUserResultDTO(index, username, status, null, errorMessage);
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.demo.user.dto;
+
+/**
+ * Outcome of a bulk import.
+ *
+ * @param inserted   The number of users inserted.
+ * @param duplicates The number of valid users skipped because their username already exists, in the database or
+ *                   earlier in the import.
+ * @param invalid    The number of users which could not be parsed or do not satisfy the constraints of
+ *                   {@link CreateUserForm}.
+ */
+public record ImportUsersResultDTO(long inserted, long duplicates, long invalid) {
+}
@@ -1,10 +1,10 @@
 package com.example.demo.user.dto;
 
-import lombok.Data;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 
-@Data
-public class UserDTO {
-    private Long id;
-    private String username;
-    private String email;
+/**
+ * Public view of a user. It is immutable and holds no password, so it is the value stored in the user caches.
+ * The version is not serialized, it is exposed through the ETag of the responses.
+ */
+public record UserDTO(Long id, String username, String email, @JsonIgnore Long version) {
 }
@@ -0,0 +1,11 @@
+package com.example.demo.user.dto;
+
+/**
+ * Result of the lookup of one user ID.
+ *
+ * @param id    The ID requested.
+ * @param found Whether a user exists with this ID.
+ * @param user  The user found, null if it does not exist.
+ */
+public record UserLookupDTO(Long id, boolean found, UserDTO user) {
+}
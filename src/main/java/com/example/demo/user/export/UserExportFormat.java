@@ -0,0 +1,58 @@
+package com.example.demo.user.export;
+
+import org.springframework.http.MediaType;
+
+/**
+ * Formats of the user export and import, with their content type and file extension.
+ */
+public enum UserExportFormat {
+
+    NDJSON(MediaType.APPLICATION_NDJSON, "ndjson"),
+    CSV(new MediaType("text", "csv"), "csv");
+
+    private final MediaType mediaType;
+    private final String extension;
+
+    UserExportFormat(MediaType mediaType, String extension) {
+        this.mediaType = mediaType;
+        this.extension = extension;
+    }
+
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * Returns the format with the given name, whatever its case.
+     *
+     * @param name The name of the format, ndjson or csv.
+     * @return The format.
+     * @throws IllegalArgumentException If the format is unknown.
+     */
+    public static UserExportFormat of(String name) {
+        for (UserExportFormat format : values()) {
+            if (format.name().equalsIgnoreCase(name))
+                return format;
+        }
+        throw new IllegalArgumentException("Unknown export format : " + name);
+    }
+
+    /**
+     * Returns the format of the given content type, whatever its parameters.
+     *
+     * @param mediaType The content type, e.g. text/csv;charset=UTF-8.
+     * @return The format.
+     * @throws IllegalArgumentException If no format has this content type.
+     */
+    public static UserExportFormat of(MediaType mediaType) {
+        for (UserExportFormat format : values()) {
+            if (format.mediaType.isCompatibleWith(mediaType))
+                return format;
+        }
+        throw new IllegalArgumentException("Unknown export format : " + mediaType);
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.demo.user.export;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import com.example.demo.user.dto.UserDTO;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Writes the exported users one by one to an output stream.
+ * <p>
+ * Only a fixed-size buffer is held, it is flushed to the stream each time it is full, so the memory used does not
+ * depend on the number of users. Closing the writer flushes the remaining users, the stream itself is left open.
+ */
+public abstract class UserExportWriter implements Closeable {
+
+    /**
+     * Creates a writer of the given format.
+     *
+     * @param format       The format of the export.
+     * @param objectMapper The mapper serializing the NDJSON lines.
+     * @param outputStream The stream to write to.
+     * @return The writer.
+     * @throws IOException If the writer cannot be created.
+     */
+    public static UserExportWriter of(UserExportFormat format, ObjectMapper objectMapper, OutputStream outputStream)
+            throws IOException {
+        return switch (format) {
+            case NDJSON -> new NdjsonWriter(objectMapper, outputStream);
+            case CSV -> new CsvWriter(outputStream);
+        };
+    }
+
+    /**
+     * Writes a user.
+     *
+     * @param user The user.
+     * @throws IOException If the user cannot be written, for instance when the client is gone.
+     */
+    public abstract void write(UserDTO user) throws IOException;
+
+    /**
+     * One JSON object per line, serialized as in the other responses.
+     */
+    private static final class NdjsonWriter extends UserExportWriter {
+
+        private final JsonGenerator generator;
+
+        private NdjsonWriter(ObjectMapper objectMapper, OutputStream outputStream) throws IOException {
+            // The lines are ended explicitly, instead of the space Jackson writes between root values.
+            this.generator = objectMapper.getFactory().createGenerator(outputStream)
+                    .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                    .setRootValueSeparator(null);
+        }
+
+        @Override
+        public void write(UserDTO user) throws IOException {
+            generator.writeObject(user);
+            generator.writeRaw('\n');
+        }
+
+        @Override
+        public void close() throws IOException {
+            generator.close();
+        }
+    }
+
+    /**
+     * RFC 4180 CSV with a header line, the values are quoted only when needed.
+     */
+    private static final class CsvWriter extends UserExportWriter {
+
+        private final Writer writer;
+
+        private CsvWriter(OutputStream outputStream) throws IOException {
+            this.writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+            this.writer.write("id,username,email\r\n");
+        }
+
+        @Override
+        public void write(UserDTO user) throws IOException {
+            writer.write(String.valueOf(user.id()));
+            writer.write(',');
+            writeValue(user.username());
+            writer.write(',');
+            writeValue(user.email());
+            writer.write("\r\n");
+        }
+
+        private void writeValue(String value) throws IOException {
+            if (value == null)
+                return;
+
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0
+                    && value.indexOf('\r') < 0) {
+                writer.write(value);
+                return;
+            }
+
+            writer.write('"');
+            writer.write(value.replace("\"", "\"\""));
+            writer.write('"');
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.flush();
+        }
+    }
+}
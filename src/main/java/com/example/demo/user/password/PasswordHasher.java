@@ -0,0 +1,153 @@
+package com.example.demo.user.password;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import com.example.demo.config.PasswordHashingProperties;
+import com.example.demo.user.UserResourceException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Hashes the passwords with BCrypt on a bounded pool of threads.
+ * <p>
+ * The callers wait for their hash without using CPU. When every thread is busy and the queue is full, the hash is
+ * rejected at once with a 503 and a Retry-After header rather than queued without limit.
+ * <p>
+ * Metrics : {@code password.hashing} (hashing time, without the wait in the queue),
+ * {@code password.hashing.queue.size}, {@code password.hashing.active} and {@code password.hashing.rejected}.
+ */
+public class PasswordHasher implements AutoCloseable {
+
+    private final PasswordEncoder passwordEncoder;
+    private final ThreadPoolExecutor executor;
+    private final PasswordHashingProperties properties;
+    private final Timer hashTimer;
+    private final Counter rejectedCounter;
+
+    public PasswordHasher(PasswordHashingProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.passwordEncoder = new BCryptPasswordEncoder(properties.getCost());
+        this.executor = new ThreadPoolExecutor(properties.getThreads(), properties.getThreads(), 0L,
+                TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(properties.getQueueCapacity()), threadFactory());
+
+        this.hashTimer = Timer.builder("password.hashing")
+                .description("Time spent hashing a password")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("password.hashing.rejected")
+                .description("Hashes rejected because the hashing pool was saturated")
+                .register(meterRegistry);
+        Gauge.builder("password.hashing.queue.size", executor, pool -> pool.getQueue().size())
+                .description("Hashes waiting for a hashing thread")
+                .register(meterRegistry);
+        Gauge.builder("password.hashing.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Hashing threads currently hashing")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Hashes a password on the hashing pool.
+     *
+     * @param rawPassword The password to hash.
+     * @return The BCrypt hash of the password.
+     * @throws UserResourceException 503 if the hashing pool is saturated.
+     */
+    public String hash(String rawPassword) throws UserResourceException {
+        return await(hashAsync(rawPassword));
+    }
+
+    /**
+     * Hashes a password on the hashing pool without waiting for the hash, for the non-blocking callers.
+     *
+     * @param rawPassword The password to hash.
+     * @return The future BCrypt hash of the password.
+     * @throws UserResourceException 503 if the hashing pool is saturated.
+     */
+    public CompletableFuture<String> hashAsync(String rawPassword) throws UserResourceException {
+        try {
+            return CompletableFuture.supplyAsync(() -> hashTimer.record(() -> passwordEncoder.encode(rawPassword)),
+                    executor);
+        } catch (RejectedExecutionException e) {
+            rejectedCounter.increment();
+            throw new UserResourceException("PasswordHashingBusy",
+                    "Too many passwords are being hashed, retry later.", HttpStatus.SERVICE_UNAVAILABLE,
+                    properties.getRetryAfter());
+        }
+    }
+
+    /**
+     * Hashes several passwords in parallel on the hashing pool. Either all of them are accepted by the pool, or
+     * none is hashed.
+     *
+     * @param rawPasswords The passwords to hash.
+     * @return The BCrypt hashes, in the order of the passwords.
+     * @throws UserResourceException 503 if the hashing pool is saturated.
+     */
+    public List<String> hashAll(List<String> rawPasswords) throws UserResourceException {
+        List<Future<String>> futures = new ArrayList<>(rawPasswords.size());
+        try {
+            for (String rawPassword : rawPasswords)
+                futures.add(hashAsync(rawPassword));
+        } catch (UserResourceException e) {
+            futures.forEach(future -> future.cancel(false));
+            throw e;
+        }
+
+        List<String> hashes = new ArrayList<>(futures.size());
+        for (Future<String> future : futures)
+            hashes.add(await(future));
+        return hashes;
+    }
+
+    public boolean matches(String rawPassword, String hash) {
+        return passwordEncoder.matches(rawPassword, hash);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private static String await(Future<String> future) throws UserResourceException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw hashingError();
+        } catch (ExecutionException e) {
+            throw hashingError();
+        }
+    }
+
+    private static UserResourceException hashingError() {
+        return new UserResourceException("PasswordHashingError", "Error while hashing the password.",
+                HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+
+    private static ThreadFactory threadFactory() {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "password-hashing-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.demo.user.util;
+
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.data.domain.Page;
+import org.springframework.util.DigestUtils;
+
+import com.example.demo.user.dto.UserDTO;
+
+/**
+ * Builds the strong ETags of the user responses from the version of the users.
+ */
+public final class UserETags {
+
+    private UserETags() {
+    }
+
+    /**
+     * Returns the ETag of a user, made of its ID and its version.
+     *
+     * @param user The user.
+     * @return The ETag of the user.
+     */
+    public static String of(UserDTO user) {
+        return "\"" + user.id() + "-" + user.version() + "\"";
+    }
+
+    /**
+     * Returns the ETag of a page, a digest of its position, its total and the ETag of each user.
+     *
+     * @param page The page of users.
+     * @return The ETag of the page.
+     */
+    public static String of(Page<UserDTO> page) {
+        StringBuilder tag = new StringBuilder()
+                .append(page.getNumber()).append(':')
+                .append(page.getSize()).append(':')
+                .append(page.getTotalElements());
+        page.getContent().forEach(user -> tag.append(':').append(user.id()).append('-').append(user.version()));
+
+        return "\"" + DigestUtils.md5DigestAsHex(tag.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+
+    /**
+     * Extracts the version expected by an If-Match header.
+     *
+     * @param userId  The ID of the user to update.
+     * @param ifMatch The If-Match header, may be null.
+     * @return The expected version, or null if any version matches.
+     * @throws IllegalArgumentException If the header is not an ETag of the user.
+     */
+    public static Long expectedVersion(Long userId, String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*"))
+            return null;
+
+        String prefix = "\"" + userId + "-";
+        String eTag = ifMatch.trim();
+        if (!eTag.startsWith(prefix) || !eTag.endsWith("\""))
+            throw new IllegalArgumentException("The ETag " + ifMatch + " does not match the user " + userId);
+
+        return Long.valueOf(eTag.substring(prefix.length(), eTag.length() - 1));
+    }
+}
@@ -1,6 +1,7 @@
 package com.example.demo.user.util;
 
 import com.example.demo.user.User;
+import com.example.demo.user.UserView;
 import org.mapstruct.Mapper;
 import org.mapstruct.factory.Mappers;
 
@@ -10,4 +11,6 @@ import com.example.demo.util.BaseMapper;
 @Mapper(componentModel = "spring")
 public interface UserMapper extends BaseMapper<User,UserDTO>{
     UserMapper INSTANCE = Mappers.getMapper(UserMapper.class);
+
+    UserDTO toDto(UserView userView);
 }
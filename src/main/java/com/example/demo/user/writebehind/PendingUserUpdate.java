@@ -0,0 +1,23 @@
+package com.example.demo.user.writebehind;
+
+/**
+ * Update of a user acknowledged but not yet written to the database, also the entry format of the update log.
+ *
+ * @param id       The ID of the user.
+ * @param email    The new email, or null to keep it.
+ * @param password The new password hash, or null to keep it.
+ * @param version  The version of the user after the update.
+ */
+public record PendingUserUpdate(Long id, String email, String password, Long version) {
+
+    /**
+     * Coalesces a newer update of the same user into this one.
+     *
+     * @param newer The newer update.
+     * @return The update writing both, the newer values winning.
+     */
+    public PendingUserUpdate merge(PendingUserUpdate newer) {
+        return new PendingUserUpdate(id, newer.email != null ? newer.email : email,
+                newer.password != null ? newer.password : password, newer.version);
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.demo.user.writebehind;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Local append-only log of the pending user updates, one JSON entry per line.
+ * <p>
+ * An update is appended before being acknowledged, and after each flush the log is rewritten with only the updates
+ * still pending, so it stays as small as the pending updates whatever the write load. After a crash the log holds at
+ * least the updates which never reached the database. Replaying an update already written is harmless since it sets
+ * the same values again.
+ */
+@Slf4j
+public class UserUpdateLog implements AutoCloseable {
+
+    private final Path path;
+    private final boolean fsync;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private FileChannel channel;
+
+    public UserUpdateLog(Path path, boolean fsync) throws IOException {
+        this.path = path;
+        this.fsync = fsync;
+        if (path.toAbsolutePath().getParent() != null)
+            Files.createDirectories(path.toAbsolutePath().getParent());
+        this.channel = open(path);
+    }
+
+    public synchronized void append(PendingUserUpdate update) throws IOException {
+        write(channel, update);
+        if (fsync)
+            channel.force(false);
+    }
+
+    /**
+     * Reads the updates of the log line by line, in the order they were appended.
+     * A line torn by a crash during its write is skipped.
+     *
+     * @param consumer Receives each update.
+     */
+    public synchronized void replay(Consumer<PendingUserUpdate> consumer) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                if (line.isBlank())
+                    continue;
+                try {
+                    consumer.accept(objectMapper.readValue(line, PendingUserUpdate.class));
+                } catch (JsonProcessingException e) {
+                    log.warn("Skipping a malformed entry of the user update log {}", path);
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces the content of the log by the given updates. They are written to a temporary file which then replaces
+     * the log atomically, so a crash leaves either the old log or the new one.
+     *
+     * @param updates The updates to keep.
+     */
+    public synchronized void rewrite(Collection<PendingUserUpdate> updates) throws IOException {
+        Path temporaryFile = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel temporaryChannel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (PendingUserUpdate update : updates)
+                write(temporaryChannel, update);
+            if (fsync)
+                temporaryChannel.force(false);
+        }
+
+        channel.close();
+        try {
+            Files.move(temporaryFile, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            channel = open(path);
+        }
+    }
+
+    public synchronized void truncate() throws IOException {
+        channel.truncate(0);
+        if (fsync)
+            channel.force(false);
+    }
+
+    public synchronized long size() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    private void write(FileChannel target, PendingUserUpdate update) throws IOException {
+        ByteBuffer line = ByteBuffer.wrap((objectMapper.writeValueAsString(update) + "\n")
+                .getBytes(StandardCharsets.UTF_8));
+        while (line.hasRemaining())
+            target.write(line);
+    }
+
+    private static FileChannel open(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,246 @@
+package com.example.demo.user.writebehind;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.config.WriteBehindProperties;
+import com.example.demo.user.UserRepository;
+import com.example.demo.user.UserResourceException;
+import com.example.demo.user.cache.UserCache;
+import com.example.demo.user.dto.UserDTO;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Write-behind mode of the user updates : an update is appended to the {@link UserUpdateLog} and kept pending, and
+ * the caller gets the updated user at once. A background flusher writes the pending updates every
+ * {@code flush-interval}, in transactions of {@code batch-size} updates, several updates of the same user being
+ * coalesced into one statement.
+ * <p>
+ * The version of a user is computed here and written as is, so the ETags returned before the flush stay valid after.
+ * The reads overlay the pending updates on the users read from the database, see {@link #overlay(UserDTO)}.
+ * If the database falls behind by more than {@code max-lag}, the updates flush synchronously until it catches up.
+ * <p>
+ * The pending updates live in this JVM : the mode assumes a single node writes the users. The other nodes read the
+ * users from the database without the overlay, so once an update is written its user is evicted from the caches and
+ * the eviction is published to them, bounding their staleness to the flush interval.
+ */
+@Slf4j
+public class UserWriteBehind implements AutoCloseable {
+
+    private final WriteBehindProperties properties;
+    private final UserUpdateLog updateLog;
+    private final UserRepository userRepository;
+    private final UserCache userCache;
+    private final TransactionTemplate transactionTemplate;
+    private final Map<Long, PendingUserUpdate> pendingUpdates = new ConcurrentHashMap<>();
+    private final Object flushLock = new Object();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "user-write-behind");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Counter coalescedCounter;
+
+    private volatile long lastFlushNanos = System.nanoTime();
+    // Written under the updateLog lock, with the removal of the pending updates of each batch.
+    private volatile long flushCount;
+
+    public UserWriteBehind(WriteBehindProperties properties, UserUpdateLog updateLog, UserRepository userRepository,
+            UserCache userCache, TransactionTemplate transactionTemplate, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.updateLog = updateLog;
+        this.userRepository = userRepository;
+        this.userCache = userCache;
+        this.transactionTemplate = transactionTemplate;
+
+        this.coalescedCounter = Counter.builder("user.write.behind.coalesced")
+                .description("Updates merged into a pending update of the same user")
+                .register(meterRegistry);
+        Gauge.builder("user.write.behind.pending", pendingUpdates, Map::size)
+                .description("Users with updates not yet written to the database")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Replays the updates left in the log by the previous run, then starts the flusher.
+     */
+    public void start() throws IOException {
+        Map<Long, PendingUserUpdate> replayed = new LinkedHashMap<>();
+        updateLog.replay(update -> replayed.merge(update.id(), update, PendingUserUpdate::merge));
+
+        if (!replayed.isEmpty()) {
+            log.info("Replaying {} pending user updates from {}", replayed.size(), properties.getLogFile());
+            pendingUpdates.putAll(replayed);
+            flush();
+        }
+        if (pendingUpdates.isEmpty())
+            updateLog.truncate();
+
+        long intervalMillis = properties.getFlushInterval().toMillis();
+        flusher.scheduleWithFixedDelay(this::flushQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Counts the batches written so far, to read before the user given to {@link #update}.
+     */
+    public long getFlushCount() {
+        return flushCount;
+    }
+
+    /**
+     * Logs and queues an update of a user.
+     * <p>
+     * The user read may predate a batch committed meanwhile : its pending update is then gone from the overlay, and
+     * the update would build on the old row. Unless the user still has a pending update, the update is refused if a
+     * batch has been written since the given flush count, and the user must be read again.
+     *
+     * @param user            The user as last read, from the cache or the database.
+     * @param readFlushCount  The {@link #getFlushCount()} read before the user.
+     * @param email           The new email, or null to keep it.
+     * @param password        The new password hash, or null to keep it.
+     * @param expectedVersion The version the user must have, or null.
+     * @return The updated user, or null if the user must be read again.
+     * @throws UserResourceException 412 if the user has another version, 503 if the database is behind by more than
+     *                               the max lag and cannot catch up.
+     * @throws IOException           If the update cannot be logged, it is then not applied.
+     */
+    public UserDTO update(UserDTO user, long readFlushCount, String email, String password, Long expectedVersion)
+            throws UserResourceException, IOException {
+        if (System.nanoTime() - lastFlushNanos > properties.getMaxLag().toNanos()) {
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                throw new UserResourceException("UserUpdatesLagging",
+                        "The pending user updates cannot be written, retry later.", HttpStatus.SERVICE_UNAVAILABLE,
+                        properties.getFlushInterval());
+            }
+        }
+
+        UserDTO updatedUser;
+        synchronized (updateLog) {
+            if (readFlushCount != flushCount && !pendingUpdates.containsKey(user.id()))
+                return null;
+
+            UserDTO currentUser = overlay(user);
+            if (expectedVersion != null && !expectedVersion.equals(currentUser.version()))
+                throw new UserResourceException("UserVersionMismatch",
+                        "The user with the ID : " + user.id() + " has been modified since it was read.",
+                        HttpStatus.PRECONDITION_FAILED);
+
+            long version = (currentUser.version() != null ? currentUser.version() : 0L) + 1;
+            PendingUserUpdate update = new PendingUserUpdate(user.id(), email, password, version);
+
+            updateLog.append(update);
+            if (pendingUpdates.containsKey(user.id()))
+                coalescedCounter.increment();
+            pendingUpdates.merge(user.id(), update, PendingUserUpdate::merge);
+
+            updatedUser = new UserDTO(user.id(), user.username(), email != null ? email : currentUser.email(),
+                    version);
+        }
+
+        return updatedUser;
+    }
+
+    /**
+     * Applies the pending update of a user, if any, to the user read from the database.
+     *
+     * @param user The user read from the database.
+     * @return The user as the clients must see it.
+     */
+    public UserDTO overlay(UserDTO user) {
+        PendingUserUpdate update = pendingUpdates.get(user.id());
+        if (update == null || (user.version() != null && user.version() >= update.version()))
+            return user;
+        return new UserDTO(user.id(), user.username(), update.email() != null ? update.email() : user.email(),
+                update.version());
+    }
+
+    /**
+     * Drops the pending update of a deleted user.
+     *
+     * @param userId The ID of the deleted user.
+     */
+    public void discard(Long userId) {
+        pendingUpdates.remove(userId);
+    }
+
+    public int getPendingCount() {
+        return pendingUpdates.size();
+    }
+
+    /**
+     * Writes the pending updates to the database. An update is only removed from the pending ones once committed,
+     * and only if it was not coalesced with a newer one meanwhile. The users of each committed batch are evicted, so
+     * that the other nodes drop the versions they read before the flush. The log is then rewritten with the updates still
+     * pending, the updates received during the flush, so it never holds the updates already written.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            List<PendingUserUpdate> updates = new ArrayList<>(pendingUpdates.values());
+
+            for (int from = 0; from < updates.size(); from += properties.getBatchSize()) {
+                List<PendingUserUpdate> batch = updates.subList(from,
+                        Math.min(from + properties.getBatchSize(), updates.size()));
+
+                transactionTemplate.executeWithoutResult(status -> batch.forEach(update ->
+                        userRepository.applyUpdate(update.id(), update.email(), update.password(), update.version())));
+                // Evicted before the overlay drops them, so a user read again after a refused update is the new one.
+                userCache.evictUsers(batch.stream().map(PendingUserUpdate::id).toList());
+                synchronized (updateLog) {
+                    batch.forEach(update -> pendingUpdates.remove(update.id(), update));
+                    flushCount++;
+                }
+            }
+
+            lastFlushNanos = System.nanoTime();
+            synchronized (updateLog) {
+                try {
+                    if (pendingUpdates.isEmpty())
+                        updateLog.truncate();
+                    else
+                        updateLog.rewrite(List.copyOf(pendingUpdates.values()));
+                } catch (IOException e) {
+                    log.warn("Cannot compact the user update log {}", properties.getLogFile(), e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(properties.getFlushInterval().toMillis() * 2, TimeUnit.MILLISECONDS);
+            flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.error("Cannot flush the pending user updates, they will be replayed on the next start", e);
+        } finally {
+            updateLog.close();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Cannot flush the pending user updates, retrying in {}", properties.getFlushInterval(), e);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.demo.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Encodes and decodes the opaque cursors used by keyset pagination.
+ */
+public final class CursorCodec {
+
+	private CursorCodec() {
+	}
+
+	/**
+	 * Encodes the last ID of a page into an opaque cursor.
+	 *
+	 * @param id The last ID of the page.
+	 * @return The opaque cursor.
+	 */
+	public static String encode(Long id) {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(id.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Decodes an opaque cursor into the last ID seen by the client.
+	 *
+	 * @param cursor The opaque cursor.
+	 * @return The last ID seen by the client.
+	 * @throws IllegalArgumentException If the cursor is not valid.
+	 */
+	public static Long decode(String cursor) {
+		return Long.valueOf(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,22 @@
+package com.example.demo.util;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * A generic DTO representing a page of data fetched with keyset pagination.
+ * The client passes {@code nextCursor} back to fetch the following page, a null cursor means the end is reached.
+ *
+ * @param <T> The type of the content in the page.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CursorPageDTO<T> {
+
+	private List<T> content;
+	private String nextCursor;
+}
@@ -4,6 +4,7 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
 
 import java.util.List;
 
@@ -21,6 +22,20 @@ public class PageDTO<T> {
 	private Long totalElements;
 	private Long totalPages;
 	private Long currentPage;
+	private Boolean hasNext;
+	private TotalType totalType;
+
+	/**
+	 * Kind of total returned with a page.
+	 */
+	public enum TotalType {
+		/** The totals are counted exactly. */
+		EXACT,
+		/** The totals are estimated, they can be slightly off. */
+		APPROXIMATE,
+		/** The totals are not computed, only hasNext is known. */
+		NONE
+	}
 
 	/**
 	 * Constructs a PageDTO object from a Spring Data Page object.
@@ -32,6 +47,40 @@ public class PageDTO<T> {
 		currentPage = (long) page.getNumber();
 		totalElements = page.getTotalElements();
 		totalPages = (long) page.getTotalPages();
+		hasNext = page.hasNext();
+		totalType = TotalType.EXACT;
+	}
 
+	/**
+	 * Constructs a PageDTO object without totals from a Spring Data Slice object.
+	 *
+	 * @param slice The Spring Data Slice object.
+	 */
+	public PageDTO(Slice<T> slice) {
+		content = slice.getContent();
+		currentPage = (long) slice.getNumber();
+		hasNext = slice.hasNext();
+		totalType = TotalType.NONE;
+	}
+
+	/**
+	 * Constructs a PageDTO object with estimated totals from a Spring Data Slice object.
+	 * The estimate is corrected when the slice proves it wrong, e.g. on the last page. An empty slice past the end
+	 * only bounds the total, which is then the estimate clamped to the elements of the previous pages.
+	 *
+	 * @param slice            The Spring Data Slice object.
+	 * @param approximateTotal The estimated number of elements.
+	 */
+	public PageDTO(Slice<T> slice, long approximateTotal) {
+		this(slice);
+		long seen = (long) slice.getNumber() * slice.getSize() + slice.getNumberOfElements();
+		if (slice.hasNext())
+			totalElements = Math.max(approximateTotal, seen + 1);
+		else if (!slice.hasContent())
+			totalElements = Math.max(0, Math.min(approximateTotal, seen));
+		else
+			totalElements = seen;
+		totalPages = slice.getSize() > 0 ? (totalElements + slice.getSize() - 1) / slice.getSize() : 1L;
+		totalType = TotalType.APPROXIMATE;
 	}
 }
@@ -0,0 +1,36 @@
+package com.example.demo.config;
+
+import java.util.concurrent.Executors;
+
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.scheduling.annotation.AsyncAnnotationBeanPostProcessor;
+import org.springframework.scheduling.annotation.EnableAsync;
+
+/**
+ * Runs the Tomcat requests and the {@code @Async} tasks on virtual threads.
+ * <p>
+ * Only compiled by the {@code virtual-threads} Maven profile (Java 21) and enabled by the {@code virtual-threads}
+ * Spring profile, which also limits the concurrent connections to the size of the Hikari pool.
+ */
+@EnableAsync
+@Configuration
+@Profile("virtual-threads")
+public class VirtualThreadConfig {
+
+	@Bean
+	public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+		return protocolHandler -> protocolHandler.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+	}
+
+	@Bean(name = { TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME,
+			AsyncAnnotationBeanPostProcessor.DEFAULT_TASK_EXECUTOR_BEAN_NAME })
+	public AsyncTaskExecutor applicationTaskExecutor() {
+		return new TaskExecutorAdapter(Executors.newVirtualThreadPerTaskExecutor());
+	}
+}
@@ -0,0 +1,107 @@
+package com.example.demo.exception;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.support.WebExchangeBindException;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.reactive.result.method.annotation.ResponseEntityExceptionHandler;
+import org.springframework.web.server.ServerWebExchange;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+/**
+ * WebFlux counterpart of GlobalHandlerControllerException : the same ResourceExceptionDTO body, error codes,
+ * Retry-After header and {@code api.errors} metric.
+ */
+@Slf4j
+@Profile("reactive")
+@ControllerAdvice
+@RequiredArgsConstructor
+public class ReactiveHandlerControllerException extends ResponseEntityExceptionHandler {
+
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    @ExceptionHandler(Exception.class)
+    public ResponseEntity<ResourceExceptionDTO> unknowError(ServerWebExchange exchange, Exception exception) {
+        ServerHttpRequest req = exchange.getRequest();
+
+        ResourceExceptionDTO res = ResourceExceptionDTO.builder()
+                .errorCode(HttpStatus.INTERNAL_SERVER_ERROR.toString().substring(4))
+                .errorMessage(exception.getMessage())
+                .requestURL(req.getURI().toString())
+                .status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .build();
+
+        log.error("Unexpected error on {} {}", req.getMethod(), req.getPath(), exception);
+        countError(exchange, res.getErrorCode(), HttpStatus.INTERNAL_SERVER_ERROR);
+
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(res);
+    }
+
+    @ExceptionHandler(ResourceException.class)
+    public ResponseEntity<ResourceExceptionDTO> resourceError(ServerWebExchange exchange, ResourceException exception) {
+
+        ResourceExceptionDTO res = ResourceExceptionDTO.builder()
+                .errorCode(exception.getErrorCode() != null ? exception.getErrorCode() : "Undefined")
+                .errorMessage(exception.getMessage())
+                .requestURL(exchange.getRequest().getURI().toString())
+                .status(exception.getStatus())
+                .build();
+
+        countError(exchange, res.getErrorCode(), exception.getStatus());
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(exception.getStatus());
+        if (exception.getRetryAfter() != null)
+            response.header(HttpHeaders.RETRY_AFTER,
+                    String.valueOf(Math.max(1, (exception.getRetryAfter().toMillis() + 999) / 1000)));
+        return response.body(res);
+    }
+
+    /**
+     * Handler for handling the validation errors of the request bodies.
+     *
+     * @param exception The WebExchangeBindException object.
+     * @param headers   The HTTP headers.
+     * @param status    The HTTP status code.
+     * @param exchange  The current exchange.
+     * @return ResponseEntity containing the error response.
+     */
+    @Override
+    protected Mono<ResponseEntity<Object>> handleWebExchangeBindException(WebExchangeBindException exception,
+            HttpHeaders headers, HttpStatusCode status, ServerWebExchange exchange) {
+        StringBuilder errorMessage = new StringBuilder();
+
+        exception.getBindingResult().getAllErrors().forEach(error -> errorMessage.append(error.getDefaultMessage()));
+
+        ResourceExceptionDTO res = ResourceExceptionDTO.builder()
+                .errorCode("FormValidationError")
+                .errorMessage(errorMessage.toString())
+                .requestURL(exchange.getRequest().getPath().value())
+                .status(HttpStatus.BAD_REQUEST)
+                .build();
+
+        countError(exchange, res.getErrorCode(), HttpStatus.BAD_REQUEST);
+
+        return Mono.just(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(res));
+    }
+
+    private void countError(ServerWebExchange exchange, String errorCode, HttpStatusCode status) {
+        Object endpoint = exchange.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+
+        meterRegistry.ifAvailable(registry -> registry.counter("api.errors",
+                "method", exchange.getRequest().getMethod().name(),
+                "endpoint", endpoint != null ? endpoint.toString() : "UNKNOWN",
+                "errorCode", errorCode,
+                "status", String.valueOf(status.value())).increment());
+    }
+}
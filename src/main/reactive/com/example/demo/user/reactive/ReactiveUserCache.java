@@ -0,0 +1,72 @@
+package com.example.demo.user.reactive;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.config.CacheSpecProperties;
+import com.example.demo.user.cache.UserCache;
+import com.example.demo.user.dto.UserDTO;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking users cache : a Caffeine {@link AsyncCache} holding the future of each user, configured with the
+ * {@code users-cache} specification.
+ * <p>
+ * Concurrent misses of the same user share the future of the first one, so a single query runs per user. A load
+ * completing empty or in error is not cached.
+ */
+@Component
+@Profile("reactive")
+public class ReactiveUserCache {
+
+    private final AsyncCache<Long, UserDTO> users;
+
+    public ReactiveUserCache(CacheSpecProperties properties, MeterRegistry meterRegistry) {
+        this.users = Caffeine.from(properties.getSpecs().getOrDefault(UserCache.USERS_CACHE, properties.getDefaultSpec()))
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, users.synchronous(), "reactive-" + UserCache.USERS_CACHE);
+    }
+
+    /**
+     * Returns the cached user, or loads it once whatever the number of concurrent callers.
+     *
+     * @param userId The ID of the user.
+     * @param loader The query of the user, empty if it does not exist.
+     * @return The user, or empty if it does not exist.
+     */
+    public Mono<UserDTO> get(Long userId, Function<Long, Mono<UserDTO>> loader) {
+        return Mono.fromFuture(() -> users.get(userId, (id, executor) -> loader.apply(id).toFuture()));
+    }
+
+    /**
+     * Returns the cached users, and loads the missing ones with a single call of the loader. The misses already being
+     * loaded by a concurrent caller are not loaded again.
+     *
+     * @param userIds The IDs of the users.
+     * @param loader  The query of the missing users, by ID.
+     * @return The existing users by ID.
+     */
+    public Mono<Map<Long, UserDTO>> getAll(Set<Long> userIds, Function<Set<Long>, Mono<Map<Long, UserDTO>>> loader) {
+        return Mono.fromFuture(() -> users.getAll(userIds,
+                (missingIds, executor) -> loader.apply(Set.copyOf(missingIds)).toFuture()));
+    }
+
+    public void put(UserDTO user) {
+        users.put(user.id(), CompletableFuture.completedFuture(user));
+    }
+
+    public void evict(Long userId) {
+        users.synchronous().invalidate(userId);
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.demo.user.reactive;
+
+import java.util.List;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.example.demo.user.UserResourceException;
+import com.example.demo.user.dto.CreateUserForm;
+import com.example.demo.user.dto.CreateUserResultDTO;
+import com.example.demo.user.dto.UpdateUserForm;
+import com.example.demo.user.dto.UserDTO;
+import com.example.demo.user.dto.UserLookupDTO;
+import com.example.demo.user.util.UserETags;
+import com.example.demo.util.CursorCodec;
+import com.example.demo.util.CursorPageDTO;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * The endpoints of UserController on WebFlux, with the same paths, parameters, ETags and error responses.
+ * <p>
+ * GET /users streams the users of the page as {@code application/x-ndjson}, one user per line written as soon as
+ * it is read, instead of a PageDTO : the page metadata (total, hasNext) is not part of the stream.
+ */
+@Tag(name = "Users Endpoint")
+@Profile("reactive")
+@RestController
+@RequestMapping("/users")
+@RequiredArgsConstructor
+public class ReactiveUserController {
+
+    private static final int MAX_LIMIT = 1000;
+
+    private final ReactiveUserService userService;
+
+    @Operation(summary = "Stream the users of a page")
+    @GetMapping(produces = { MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE })
+    public Flux<UserDTO> getUsers(@RequestParam(defaultValue = "5", required = false) int pageSize,
+            @RequestParam(defaultValue = "0", required = false) int page) {
+        return userService.getUsers(PageRequest.of(page, pageSize));
+    }
+
+    @Operation(summary = "Retrieve users with keyset pagination")
+    @GetMapping(params = "limit")
+    public Mono<CursorPageDTO<UserDTO>> getUsersAfter(@RequestParam(required = false) String after,
+            @RequestParam int limit) {
+        if (limit < 1 || limit > MAX_LIMIT)
+            return Mono.error(new UserResourceException("InvalidLimit",
+                    "The limit must be between 1 and " + MAX_LIMIT + ".", HttpStatus.BAD_REQUEST));
+
+        Long afterId;
+        try {
+            afterId = after != null && !after.isEmpty() ? CursorCodec.decode(after) : null;
+        } catch (IllegalArgumentException e) {
+            return Mono.error(new UserResourceException("InvalidCursor", "The cursor is not valid.",
+                    HttpStatus.BAD_REQUEST));
+        }
+
+        // One more user tells whether a next page exists.
+        return userService.getUsersAfter(afterId, limit + 1).collectList().map(users -> users.size() > limit
+                ? new CursorPageDTO<>(users.subList(0, limit), CursorCodec.encode(users.get(limit - 1).id()))
+                : new CursorPageDTO<>(users, null));
+    }
+
+    @Operation(summary = "Find users by IDs")
+    @GetMapping(params = "ids")
+    public Mono<List<UserLookupDTO>> getUsersByIds(@RequestParam List<Long> ids) {
+        return userService.getUsersByIds(ids);
+    }
+
+    @Operation(summary = "Find user by ID")
+    @GetMapping("/{id}")
+    public Mono<ResponseEntity<UserDTO>> getUserById(@PathVariable("id") Long userId) {
+        // A matching If-None-Match is answered with a 304 by WebFlux, without serializing the body.
+        return userService.getUserById(userId).map(user -> ResponseEntity.ok().eTag(UserETags.of(user)).body(user));
+    }
+
+    @Operation(summary = "Create a new user")
+    @PostMapping
+    public Mono<ResponseEntity<UserDTO>> createUser(@Valid @RequestBody CreateUserForm createUserForm,
+            ServerHttpRequest request) {
+        return userService.createUser(createUserForm)
+                .map(user -> ResponseEntity.created(request.getURI()).eTag(UserETags.of(user)).body(user));
+    }
+
+    @Operation(summary = "Create users in batch")
+    @PostMapping("/batch")
+    public Mono<List<CreateUserResultDTO>> createUsers(@RequestBody List<CreateUserForm> createUserForms) {
+        return userService.createUsers(createUserForms);
+    }
+
+    @Operation(summary = "Update user by ID")
+    @PatchMapping
+    public Mono<ResponseEntity<UserDTO>> updateUser(@RequestBody UpdateUserForm updateUserForm,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        Long expectedVersion;
+        try {
+            expectedVersion = UserETags.expectedVersion(updateUserForm.getId(), ifMatch);
+        } catch (IllegalArgumentException e) {
+            return Mono.error(new UserResourceException("UserVersionMismatch",
+                    "The If-Match header does not match the user.", HttpStatus.PRECONDITION_FAILED));
+        }
+
+        return userService.updateUser(updateUserForm, expectedVersion)
+                .map(user -> ResponseEntity.ok().eTag(UserETags.of(user)).body(user));
+    }
+
+    @Operation(summary = "Delete user by ID")
+    @DeleteMapping("/{id}")
+    public Mono<ResponseEntity<Void>> deleteUserById(@PathVariable("id") Long userId) {
+        return userService.deleteUser(userId).then(Mono.just(ResponseEntity.noContent().build()));
+    }
+}
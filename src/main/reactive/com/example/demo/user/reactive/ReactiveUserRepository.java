@@ -0,0 +1,61 @@
+package com.example.demo.user.reactive;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.data.repository.query.Param;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public interface ReactiveUserRepository extends R2dbcRepository<UserRow, Long> {
+
+    /**
+     * Streams the users of a page, without a count query.
+     *
+     * @param pageable The page requested.
+     * @return The users of the page, as they are read.
+     */
+    Flux<UserRow> findAllBy(Pageable pageable);
+
+    /**
+     * Keyset (seek) query : streams the users whose ID is strictly greater than the given one.
+     *
+     * @param id       The last ID already seen by the client.
+     * @param pageable The page size, sorted by ID.
+     * @return The next users after the given ID.
+     */
+    Flux<UserRow> findByIdGreaterThan(Long id, Pageable pageable);
+
+    /**
+     * Reserves an ID in the sequence shared with the JPA entity. A whole block of the pooled optimizer is used for
+     * a single user, which keeps both stacks from ever reusing an ID.
+     *
+     * @return A new user ID.
+     */
+    @Query("select nextval('user_app_seq')")
+    Mono<Long> nextId();
+
+    /**
+     * Updates the email and the password of a user with a single statement, see UserRepository#updateUser.
+     *
+     * @return The number of updated rows, 0 if the user does not exist or has another version.
+     */
+    @Modifying
+    @Query("""
+            update user_app set email = coalesce(:email, email), password = coalesce(:password, password),
+                version = version + 1
+            where id = :id and (cast(:version as bigint) is null or version = :version)""")
+    Mono<Integer> updateUser(@Param("id") Long id, @Param("email") String email, @Param("password") String password,
+            @Param("version") Long version);
+
+    /**
+     * Deletes a user with a single statement.
+     *
+     * @return The number of deleted rows, 0 if the user does not exist.
+     */
+    @Modifying
+    @Query("delete from user_app where id = :id")
+    Mono<Integer> deleteUserById(@Param("id") Long id);
+}
@@ -0,0 +1,36 @@
+package com.example.demo.user.reactive;
+
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+
+import com.example.demo.user.dto.CreateUserForm;
+import com.example.demo.user.dto.CreateUserResultDTO;
+import com.example.demo.user.dto.UpdateUserForm;
+import com.example.demo.user.dto.UserDTO;
+import com.example.demo.user.dto.UserLookupDTO;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking counterpart of UserService, the errors are signaled as UserResourceException.
+ */
+public interface ReactiveUserService {
+
+    Flux<UserDTO> getUsers(final Pageable pageable);
+
+    Flux<UserDTO> getUsersAfter(final Long afterId, final int limit);
+
+    Mono<UserDTO> getUserById(final Long userId);
+
+    Mono<List<UserLookupDTO>> getUsersByIds(final List<Long> userIds);
+
+    Mono<UserDTO> createUser(final CreateUserForm createUserForm);
+
+    Mono<List<CreateUserResultDTO>> createUsers(final List<CreateUserForm> createUserForms);
+
+    Mono<UserDTO> updateUser(final UpdateUserForm updateUserForm, final Long expectedVersion);
+
+    Mono<Void> deleteUser(final Long userId);
+}
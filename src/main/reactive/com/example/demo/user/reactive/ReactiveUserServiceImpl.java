@@ -0,0 +1,221 @@
+package com.example.demo.user.reactive;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.user.UserResourceException;
+import com.example.demo.user.cache.UserCache;
+import com.example.demo.user.dto.CreateUserForm;
+import com.example.demo.user.dto.CreateUserResultDTO;
+import com.example.demo.user.dto.CreateUserResultDTO.Status;
+import com.example.demo.user.dto.UpdateUserForm;
+import com.example.demo.user.dto.UserDTO;
+import com.example.demo.user.dto.UserLookupDTO;
+import com.example.demo.user.password.PasswordHasher;
+
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Same rules and error codes as UserServiceImpl on R2DBC : no thread waits for the database or for a password hash.
+ * <p>
+ * Only the users are cached, the pages are streamed from the database as they are read.
+ */
+@Component
+@Profile("reactive")
+@RequiredArgsConstructor
+public class ReactiveUserServiceImpl implements ReactiveUserService {
+
+    static final int MAX_BATCH_USERS = 10_000;
+
+    static final int MAX_LOOKUP_IDS = 1000;
+
+    /**
+     * Number of users of a batch inserted concurrently.
+     */
+    static final int BATCH_CONCURRENCY = 8;
+
+    private final ReactiveUserRepository userRepository;
+    private final R2dbcEntityTemplate entityTemplate;
+    private final ReactiveUserCache userCache;
+    private final PasswordHasher passwordHasher;
+    private final Validator validator;
+
+    @Override
+    public Flux<UserDTO> getUsers(Pageable pageable) {
+        return userRepository.findAllBy(UserCache.sortedById(pageable)).map(UserRow::toDto).doOnNext(userCache::put);
+    }
+
+    @Override
+    public Flux<UserDTO> getUsersAfter(Long afterId, int limit) {
+        return userRepository.findByIdGreaterThan(afterId != null ? afterId : 0L,
+                PageRequest.of(0, limit, Sort.by("id"))).map(UserRow::toDto);
+    }
+
+    @Override
+    public Mono<UserDTO> getUserById(Long userId) {
+        return userCache.get(userId, this::findUser).switchIfEmpty(Mono.error(ReactiveUserServiceImpl::userNotFound));
+    }
+
+    @Override
+    public Mono<List<UserLookupDTO>> getUsersByIds(List<Long> userIds) {
+        if (userIds.size() > MAX_LOOKUP_IDS)
+            return Mono.error(new UserResourceException("TooManyIds",
+                    "A lookup cannot contain more than " + MAX_LOOKUP_IDS + " IDs.", HttpStatus.BAD_REQUEST));
+
+        return userCache.getAll(new HashSet<>(userIds), this::findUsers)
+                .map(users -> userIds.stream()
+                        .map(id -> new UserLookupDTO(id, users.containsKey(id), users.get(id)))
+                        .toList());
+    }
+
+    @Override
+    public Mono<UserDTO> createUser(CreateUserForm createUserForm) {
+        return hash(createUserForm.getPassword())
+                .flatMap(passwordHash -> insert(createUserForm, passwordHash))
+                .doOnNext(userCache::put)
+                .onErrorMap(e -> !(e instanceof UserResourceException), e -> e instanceof DataIntegrityViolationException
+                        ? new UserResourceException("UserAlreadyExists",
+                                "The user " + createUserForm.getUsername() + " already exists.", HttpStatus.CONFLICT)
+                        : new UserResourceException("CreateUserError",
+                                "Error while creating the user " + createUserForm.getUsername() + ".",
+                                HttpStatus.INTERNAL_SERVER_ERROR));
+    }
+
+    @Override
+    public Mono<List<CreateUserResultDTO>> createUsers(List<CreateUserForm> createUserForms) {
+        if (createUserForms.size() > MAX_BATCH_USERS)
+            return Mono.error(new UserResourceException("BatchTooLarge",
+                    "A batch cannot contain more than " + MAX_BATCH_USERS + " users.", HttpStatus.BAD_REQUEST));
+
+        Set<String> batchUsernames = new HashSet<>();
+        List<Mono<CreateUserResultDTO>> results = new ArrayList<>(createUserForms.size());
+
+        for (int i = 0; i < createUserForms.size(); i++) {
+            int index = i;
+            CreateUserForm form = createUserForms.get(i);
+            Set<ConstraintViolation<CreateUserForm>> violations = form != null ? validator.validate(form) : Set.of();
+
+            if (form == null)
+                results.add(Mono.just(CreateUserResultDTO.failed(i, null, Status.INVALID, "The user is required.")));
+            else if (!violations.isEmpty())
+                results.add(Mono.just(CreateUserResultDTO.failed(i, form.getUsername(), Status.INVALID,
+                        violations.stream().map(ConstraintViolation::getMessage).sorted()
+                                .collect(Collectors.joining(", ")))));
+            else if (!batchUsernames.add(form.getUsername()))
+                results.add(Mono.just(duplicate(i, form)));
+            else
+                results.add(createUser(form)
+                        .map(user -> CreateUserResultDTO.created(index, user))
+                        .onErrorResume(UserResourceException.class, e -> Mono.just(
+                                e.getStatus() == HttpStatus.CONFLICT ? duplicate(index, form)
+                                        : CreateUserResultDTO.failed(index, form.getUsername(), Status.ERROR,
+                                                e.getMessage()))));
+        }
+
+        return Flux.mergeSequential(results, BATCH_CONCURRENCY, 1).collectList();
+    }
+
+    @Override
+    public Mono<UserDTO> updateUser(UpdateUserForm updateUserForm, Long expectedVersion) {
+        Long userId = updateUserForm.getId();
+        if (userId == null)
+            return Mono.error(userNotFound());
+
+        String newEmail = emptyToNull(updateUserForm.getEmail());
+        String newPassword = emptyToNull(updateUserForm.getPassword());
+
+        Mono<Optional<String>> passwordHash = newPassword != null ? hash(newPassword).map(Optional::of)
+                : Mono.just(Optional.empty());
+
+        return passwordHash
+                .flatMap(hash -> userRepository.updateUser(userId, newEmail, hash.orElse(null), expectedVersion))
+                .onErrorMap(e -> !(e instanceof UserResourceException), e -> new UserResourceException(
+                        "UpdateUserError", "Error while updating the user with the ID : " + userId,
+                        HttpStatus.INTERNAL_SERVER_ERROR))
+                .flatMap(updatedRows -> updatedRows > 0
+                        ? findUser(userId).switchIfEmpty(Mono.error(ReactiveUserServiceImpl::userNotFound))
+                        : userRepository.existsById(userId).flatMap(exists -> Mono.<UserDTO>error(
+                                exists && expectedVersion != null ? versionMismatch(userId) : userNotFound())))
+                .doOnNext(userCache::put)
+                .doOnError(e -> userCache.evict(userId));
+    }
+
+    @Override
+    public Mono<Void> deleteUser(Long userId) {
+        return Mono.fromRunnable(() -> userCache.evict(userId))
+                .then(userRepository.deleteUserById(userId))
+                .onErrorMap(e -> new UserResourceException("DeleteUserError",
+                        "Error while deleting the user with the ID : " + userId, HttpStatus.INTERNAL_SERVER_ERROR))
+                .flatMap(deletedRows -> deletedRows > 0 ? Mono.<Void>empty() : Mono.error(userNotFound()));
+    }
+
+    private Mono<UserDTO> findUser(Long userId) {
+        return userRepository.findById(userId).map(UserRow::toDto);
+    }
+
+    /**
+     * Reads the missing users of a lookup with a single IN query.
+     */
+    private Mono<Map<Long, UserDTO>> findUsers(Set<Long> userIds) {
+        return userRepository.findAllById(userIds).map(UserRow::toDto).collectMap(UserDTO::id, Function.identity());
+    }
+
+    /**
+     * Inserts a user with an ID reserved beforehand, the insert then needs no generated key.
+     */
+    private Mono<UserDTO> insert(CreateUserForm createUserForm, String passwordHash) {
+        return userRepository.nextId()
+                .flatMap(id -> entityTemplate.insert(new UserRow(id, createUserForm.getUsername(),
+                        createUserForm.getEmail(), passwordHash, null)))
+                .map(UserRow::toDto);
+    }
+
+    private Mono<String> hash(String rawPassword) {
+        return Mono.defer(() -> {
+            try {
+                return Mono.fromFuture(passwordHasher.hashAsync(rawPassword));
+            } catch (UserResourceException e) {
+                return Mono.error(e);
+            }
+        });
+    }
+
+    private static CreateUserResultDTO duplicate(int index, CreateUserForm createUserForm) {
+        return CreateUserResultDTO.failed(index, createUserForm.getUsername(), Status.DUPLICATE,
+                "The user " + createUserForm.getUsername() + " already exists.");
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    private static UserResourceException userNotFound() {
+        return new UserResourceException("UserNotFound", "The user ID is not found in the database.",
+                HttpStatus.NOT_FOUND);
+    }
+
+    private static UserResourceException versionMismatch(Long userId) {
+        return new UserResourceException("UserVersionMismatch",
+                "The user with the ID : " + userId + " has been modified since it was read.",
+                HttpStatus.PRECONDITION_FAILED);
+    }
+}
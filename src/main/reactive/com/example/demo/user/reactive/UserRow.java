@@ -0,0 +1,18 @@
+package com.example.demo.user.reactive;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.relational.core.mapping.Table;
+
+import com.example.demo.user.dto.UserDTO;
+
+/**
+ * R2DBC mapping of the {@code user_app} table, the reactive counterpart of the User entity.
+ */
+@Table("user_app")
+public record UserRow(@Id Long id, String username, String email, String password, @Version Long version) {
+
+    public UserDTO toDto() {
+        return new UserDTO(id, username, email, version);
+    }
+}
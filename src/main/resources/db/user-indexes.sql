@@ -0,0 +1,9 @@
+-- Indexes of the user search, Postgres only. Run by Hibernate after it creates the schema (hbm2ddl.import_files),
+-- one statement per line as read by its import script extractor.
+-- Username prefix : LIKE 'abc%' can only use a B-tree with text_pattern_ops, the unique index follows the collation.
+-- Username substring : LIKE '%abc%' is served by a trigram GIN index, for terms of 3 characters or more.
+-- Email : the exact case-insensitive match on lower(email).
+create extension if not exists pg_trgm;
+create index if not exists user_app_username_pattern_idx on user_app (username text_pattern_ops);
+create index if not exists user_app_username_trgm_idx on user_app using gin (username gin_trgm_ops);
+create index if not exists user_app_email_lower_idx on user_app (lower(email));
@@ -0,0 +1,10 @@
+-- Schema of the users, as generated by Hibernate for the User entity.
+create sequence if not exists user_app_seq start with 1 increment by 50;
+
+create table if not exists user_app (
+    id bigint not null primary key,
+    username varchar(255) not null unique,
+    email varchar(255),
+    password varchar(255) not null,
+    version bigint
+);
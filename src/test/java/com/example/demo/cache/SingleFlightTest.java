@@ -0,0 +1,121 @@
+package com.example.demo.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    private static final int CALLERS = 8;
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SingleFlight singleFlight = new SingleFlight(meterRegistry);
+    private final ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        singleFlight.close();
+    }
+
+    @Test
+    void concurrentMissesOfAKeyRunASingleLoad() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++)
+            results.add(executor.submit(() -> singleFlight.load("users-cache", 1L, () -> {
+                loads.incrementAndGet();
+                release.await();
+                return "user1";
+            })));
+
+        awaitCoalesced(CALLERS - 1);
+        release.countDown();
+
+        for (Future<String> result : results)
+            assertEquals("user1", result.get(5, TimeUnit.SECONDS));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void failedLoadIsThrownToEveryCaller() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++)
+            results.add(executor.submit(() -> singleFlight.load("users-cache", 1L, () -> {
+                release.await();
+                throw new IOException("Database unavailable");
+            })));
+
+        awaitCoalesced(CALLERS - 1);
+        release.countDown();
+
+        for (Future<String> result : results) {
+            Exception exception = assertThrows(Exception.class, () -> result.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IOException.class, exception.getCause());
+        }
+    }
+
+    @Test
+    void loadsAreNotRememberedOnceOver() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+
+        singleFlight.load("users-cache", 1L, loads::incrementAndGet);
+        singleFlight.load("users-cache", 1L, loads::incrementAndGet);
+        singleFlight.load("users-pages-cache", 1L, loads::incrementAndGet);
+
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void pendingRefreshOfAKeyIsNotScheduledTwice() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch refreshed = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        List<String> values = new ArrayList<>();
+
+        for (int i = 0; i < CALLERS; i++)
+            singleFlight.refresh("users-cache", 1L, () -> {
+                loads.incrementAndGet();
+                release.await();
+                return "user1";
+            }, value -> {
+                values.add(value);
+                refreshed.countDown();
+            });
+
+        release.countDown();
+
+        assertTrue(refreshed.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("user1"), values);
+        assertEquals(1, loads.get());
+        assertEquals(1.0, meterRegistry.get("cache.refreshes").tag("cache", "users-cache").counter().count());
+    }
+
+    private void awaitCoalesced(int callers) throws InterruptedException {
+        for (int i = 0; i < 500; i++) {
+            if (meterRegistry.find("cache.loads.coalesced").counters().stream()
+                    .mapToDouble(Counter::count).sum() >= callers)
+                return;
+            Thread.sleep(10);
+        }
+        fail("The callers have not been coalesced");
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.demo.cache;
+
+import com.example.demo.config.CacheSpecProperties;
+import com.example.demo.user.cache.UserCache;
+import com.example.demo.user.dto.UserDTO;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TwoTierCacheManagerTest {
+
+    private final InMemoryCacheInvalidationBus bus = new InMemoryCacheInvalidationBus();
+    private final CacheManager sharedCacheManager = new ConcurrentMapCacheManager();
+
+    @Test
+    void readsFillTheLocalTierFromTheSharedTier() {
+        TwoTierCacheManager node1 = node("node-1", sharedCacheManager, true);
+        TwoTierCacheManager node2 = node("node-2", sharedCacheManager, true);
+
+        node1.getCache(UserCache.USERS_CACHE).put(1L, "user1");
+
+        TwoTierCache cache = (TwoTierCache) node2.getCache(UserCache.USERS_CACHE);
+        assertNull(cache.getLocal().get(1L));
+        assertEquals("user1", cache.get(1L, String.class));
+        assertEquals("user1", cache.getLocal().get(1L).get());
+    }
+
+    @Test
+    void evictionsAreAppliedToThePeers() {
+        MeterRegistry node2Registry = new SimpleMeterRegistry();
+        TwoTierCacheManager node1 = node("node-1", sharedCacheManager, true);
+        TwoTierCacheManager node2 = node("node-2", sharedCacheManager, true, node2Registry);
+
+        node1.getCache(UserCache.USERS_CACHE).put(1L, "user1");
+        node2.getCache(UserCache.USERS_CACHE).get(1L);
+        node1.getCache(UserCache.USERS_CACHE).evict(1L);
+        node1.getCache(UserCache.USERS_CACHE).put(1L, "updated user1");
+
+        assertEquals("updated user1", node2.getCache(UserCache.USERS_CACHE).get(1L, String.class));
+        assertEquals(1.0, node2Registry.get("cache.invalidations").tag("direction", "received").counter().count());
+    }
+
+    @Test
+    void putsAreNotBroadcast() {
+        TwoTierCacheManager node1 = node("node-1", sharedCacheManager, true);
+        TwoTierCacheManager node2 = node("node-2", sharedCacheManager, true);
+
+        node2.getCache(UserCache.USERS_CACHE).put(1L, "user1");
+        node1.getCache(UserCache.USERS_CACHE).put(1L, "user1");
+
+        assertNotNull(((TwoTierCache) node2.getCache(UserCache.USERS_CACHE)).getLocal().get(1L));
+    }
+
+    @Test
+    void keysWhichCannotBeSentClearThePeerCache() {
+        TwoTierCacheManager node1 = node("node-1", sharedCacheManager, true);
+        TwoTierCacheManager node2 = node("node-2", sharedCacheManager, true);
+        Pageable firstPage = PageRequest.of(0, 2, Sort.by("id"));
+        Pageable secondPage = PageRequest.of(1, 2, Sort.by("id"));
+
+        node2.getCache(UserCache.PAGES_CACHE).put(firstPage, List.of(1L, 2L));
+        node2.getCache(UserCache.PAGES_CACHE).put(secondPage, List.of(3L, 4L));
+        node1.getCache(UserCache.PAGES_CACHE).evict(secondPage);
+
+        Cache node2Local = ((TwoTierCache) node2.getCache(UserCache.PAGES_CACHE)).getLocal();
+        assertNull(node2Local.get(firstPage));
+        assertNull(node2Local.get(secondPage));
+    }
+
+    @Test
+    void pagesEvictedByOneWriteArePublishedAsOneClear() {
+        MeterRegistry node2Registry = new SimpleMeterRegistry();
+        UserCache node1 = new UserCache(node("node-1", sharedCacheManager, true), new CacheSpecProperties());
+        TwoTierCacheManager node2 = node("node-2", sharedCacheManager, true, node2Registry);
+        for (int page = 0; page < 5; page++)
+            node1.putPageIds(PageRequest.of(page, 2, Sort.by("id")), List.of(page * 2L + 1, page * 2L + 2));
+
+        node1.evictPagesOnDelete(1L);
+
+        // The count and the pages, the pages making a single message.
+        assertEquals(2.0, node2Registry.get("cache.invalidations").tag("direction", "received").counter().count());
+    }
+
+    @Test
+    void nodeLocalSharedTierIsEvictedByThePeers() {
+        TwoTierCacheManager node1 = node("node-1", new ConcurrentMapCacheManager(), false);
+        TwoTierCacheManager node2 = node("node-2", new ConcurrentMapCacheManager(), false);
+
+        node2.getCache(UserCache.USERS_CACHE).put(1L, "user1");
+        node1.getCache(UserCache.USERS_CACHE).evict(1L);
+
+        assertNull(node2.getCache(UserCache.USERS_CACHE).get(1L));
+    }
+
+    @Test
+    void userUpdateOnOneNodeIsSeenByTheOthers() {
+        UserCache node1 = new UserCache(node("node-1", sharedCacheManager, true), new CacheSpecProperties());
+        UserCache node2 = new UserCache(node("node-2", sharedCacheManager, true), new CacheSpecProperties());
+        UserDTO user = new UserDTO(1L, "username1", "email1", 0L);
+        UserDTO updatedUser = new UserDTO(1L, "username1", "new.email1", 1L);
+
+        node1.putUser(user);
+        assertEquals(user, node2.getUser(1L));
+
+        node1.evictPagesOnUpdate(1L);
+        node1.putUser(updatedUser);
+
+        assertEquals(updatedUser, node2.getUser(1L));
+    }
+
+    @Test
+    void encodeAndDecodeInvalidations() {
+        for (CacheInvalidation invalidation : List.of(new CacheInvalidation("node-1", "users-cache", 42L),
+                new CacheInvalidation("node-1", "users-count-cache", "count"),
+                new CacheInvalidation("node-1", "users-pages-cache", null),
+                new CacheInvalidation("node-1", null, null)))
+            assertEquals(invalidation, CacheInvalidation.decode(invalidation.encode()));
+
+        assertNull(CacheInvalidation.of("node-1", "users-pages-cache", PageRequest.of(0, 2)).key());
+        assertThrows(IllegalArgumentException.class, () -> CacheInvalidation.decode("not an invalidation"));
+    }
+
+    private TwoTierCacheManager node(String nodeId, CacheManager shared, boolean sharedAcrossNodes) {
+        return node(nodeId, shared, sharedAcrossNodes, new SimpleMeterRegistry());
+    }
+
+    private TwoTierCacheManager node(String nodeId, CacheManager shared, boolean sharedAcrossNodes,
+            MeterRegistry meterRegistry) {
+        CaffeineCacheManager local = new CaffeineCacheManager();
+        local.setCaffeine(Caffeine.newBuilder().maximumSize(100));
+        return new TwoTierCacheManager(local, shared, sharedAcrossNodes, bus, nodeId, meterRegistry);
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.demo.config;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLTransientConnectionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ConnectionLimitingDataSourceTest {
+
+    @Test
+    void closingAConnectionReleasesItsPermit() throws Exception {
+        DataSource target = mock(DataSource.class);
+        when(target.getConnection()).thenAnswer(invocation -> mock(Connection.class));
+
+        ConnectionLimitingDataSource dataSource = new ConnectionLimitingDataSource(target, 1, 10);
+
+        Connection connection = dataSource.getConnection();
+        assertEquals(0, dataSource.getAvailablePermits());
+        assertThrows(SQLTransientConnectionException.class, dataSource::getConnection);
+
+        connection.close();
+        connection.close();
+        assertEquals(1, dataSource.getAvailablePermits());
+
+        dataSource.getConnection().close();
+        assertEquals(1, dataSource.getAvailablePermits());
+    }
+
+    @Test
+    void failingToConnectReleasesThePermit() throws Exception {
+        DataSource target = mock(DataSource.class);
+        when(target.getConnection()).thenThrow(new SQLTransientConnectionException("down"));
+
+        ConnectionLimitingDataSource dataSource = new ConnectionLimitingDataSource(target, 1, 10);
+
+        assertThrows(SQLTransientConnectionException.class, dataSource::getConnection);
+        assertEquals(1, dataSource.getAvailablePermits());
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.demo.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.http.Cookie;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReadYourWritesFilterTest {
+
+    private final ReadYourWritesFilter filter = new ReadYourWritesFilter(Duration.ofSeconds(5));
+
+    @Test
+    void writeOpensTheWindowOfTheClient() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertTrue(filter(new MockHttpServletRequest("PATCH", "/users/1"), response));
+
+        Cookie cookie = response.getCookie(ReadYourWritesFilter.COOKIE_NAME);
+        assertNotNull(cookie);
+        assertEquals(5, cookie.getMaxAge());
+        assertTrue(Long.parseLong(cookie.getValue()) > System.currentTimeMillis());
+    }
+
+    @Test
+    void readsWithinTheWindowGoToThePrimary() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/users/1");
+        request.setCookies(new Cookie(ReadYourWritesFilter.COOKIE_NAME,
+                String.valueOf(System.currentTimeMillis() + 5000)));
+
+        assertTrue(filter(request, new MockHttpServletResponse()));
+        assertFalse(ReplicaRoutingDataSource.isPrimaryOnly());
+    }
+
+    @Test
+    void readsOutsideTheWindowGoToTheReplicas() throws Exception {
+        MockHttpServletRequest expiredRequest = new MockHttpServletRequest("GET", "/users/1");
+        expiredRequest.setCookies(new Cookie(ReadYourWritesFilter.COOKIE_NAME,
+                String.valueOf(System.currentTimeMillis() - 1000)));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertFalse(filter(new MockHttpServletRequest("GET", "/users/1"), response));
+        assertFalse(filter(expiredRequest, new MockHttpServletResponse()));
+        assertNull(response.getCookie(ReadYourWritesFilter.COOKIE_NAME));
+    }
+
+    /**
+     * @return Whether the request has been served with the reads on the primary.
+     */
+    private boolean filter(MockHttpServletRequest request, MockHttpServletResponse response) throws Exception {
+        AtomicBoolean primaryOnly = new AtomicBoolean();
+        FilterChain chain = (chainRequest, chainResponse) -> primaryOnly.set(ReplicaRoutingDataSource.isPrimaryOnly());
+        filter.doFilter(request, response, chain);
+        return primaryOnly.get();
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.demo.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Two in-memory H2 databases stand in for the primary and the replica, each one knows its own name.
+ */
+class ReplicaRoutingDataSourceTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ReplicaProperties properties = new ReplicaProperties();
+
+    private DataSource primary;
+    private DataSource replica;
+    private ReplicaRoutingDataSource dataSource;
+
+    @BeforeEach
+    void setUp() {
+        primary = database("primary");
+        replica = database("replica");
+        new JdbcTemplate(replica).execute("create table replication (lag double)");
+        new JdbcTemplate(replica).execute("insert into replication values (0)");
+        properties.setLagQuery("select lag from replication");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (dataSource != null)
+            dataSource.close();
+    }
+
+    @Test
+    void readOnlyTransactionsReadFromTheReplica() {
+        dataSource = routing(replica);
+
+        assertEquals("replica", read(true));
+        assertEquals("primary", read(false));
+        assertEquals("primary", new JdbcTemplate(dataSource).queryForObject("select name from node", String.class));
+        assertEquals(1.0, meterRegistry.get("datasource.routing").tag("target", "replica-1").counter().count());
+    }
+
+    @Test
+    void readsWithinTheReadYourWritesWindowGoToThePrimary() {
+        dataSource = routing(replica);
+
+        try (ReplicaRoutingDataSource.PrimaryScope scope = ReplicaRoutingDataSource.usePrimary()) {
+            assertEquals("primary", read(true));
+        }
+        assertEquals("replica", read(true));
+    }
+
+    @Test
+    void nestedPrimaryScopeKeepsTheOuterOne() {
+        dataSource = routing(replica);
+
+        try (ReplicaRoutingDataSource.PrimaryScope scope = ReplicaRoutingDataSource.usePrimary()) {
+            try (ReplicaRoutingDataSource.PrimaryScope nestedScope = ReplicaRoutingDataSource.usePrimary()) {
+                assertEquals("primary", read(true));
+            }
+            assertEquals("primary", read(true));
+        }
+        assertEquals("replica", read(true));
+    }
+
+    @Test
+    void unreachableReplicaIsEjectedAndTheReadsFallBackToThePrimary() throws Exception {
+        DataSource unreachableReplica = mock(DataSource.class);
+        when(unreachableReplica.getConnection()).thenThrow(new SQLTransientConnectionException("down"));
+        dataSource = routing(unreachableReplica);
+
+        assertEquals("primary", read(true));
+        assertEquals(0.0, meterRegistry.get("datasource.replica.healthy").tag("replica", "replica-1").gauge().value());
+
+        assertEquals("primary", read(true));
+        verify(unreachableReplica, times(1)).getConnection();
+    }
+
+    @Test
+    void laggingReplicaIsEjectedUntilItCatchesUp() {
+        dataSource = routing(replica);
+
+        new JdbcTemplate(replica).update("update replication set lag = 60");
+        dataSource.checkReplicas();
+        assertEquals("primary", read(true));
+        assertEquals(60.0, meterRegistry.get("datasource.replica.lag").tag("replica", "replica-1").gauge().value());
+
+        new JdbcTemplate(replica).update("update replication set lag = 0");
+        dataSource.checkReplicas();
+        assertEquals("replica", read(true));
+        assertEquals(1.0, meterRegistry.get("datasource.replica.healthy").tag("replica", "replica-1").gauge().value());
+    }
+
+    @Test
+    void readYourWritesWindowCoversTheLagOfAHealthyReplica() {
+        assertEquals(Duration.ofSeconds(15), properties.resolveReadYourWritesWindow());
+
+        properties.setReadYourWritesWindow(Duration.ofSeconds(5));
+        assertThrows(IllegalStateException.class, properties::resolveReadYourWritesWindow);
+    }
+
+    private ReplicaRoutingDataSource routing(DataSource replicaDataSource) {
+        ReplicaRoutingDataSource routingDataSource = new ReplicaRoutingDataSource(primary,
+                Map.of("replica-1", replicaDataSource), properties, meterRegistry);
+        routingDataSource.afterPropertiesSet();
+        return routingDataSource;
+    }
+
+    private String read(boolean readOnly) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        transactionTemplate.setReadOnly(readOnly);
+        return transactionTemplate.execute(status -> new JdbcTemplate(dataSource)
+                .queryForObject("select name from node", String.class));
+    }
+
+    private static DataSource database(String name) {
+        DataSource database = new DriverManagerDataSource(
+                "jdbc:h2:mem:" + name + "-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.execute("create table node (name varchar(20))");
+        jdbcTemplate.update("insert into node values (?)", name);
+        return database;
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.demo.load;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Throughput and latency percentiles of one load scenario, and its failed requests by response status.
+ */
+public record LoadReport(String name, long requests, Map<String, Long> failures, double seconds,
+        long[] sortedLatenciesNanos) {
+
+    public long errors() {
+        return failures.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    public double errorRate() {
+        return requests == 0 ? 0 : (double) errors() / requests;
+    }
+
+    public double throughput() {
+        return requests / seconds;
+    }
+
+    public double percentileMillis(double percentile) {
+        if (sortedLatenciesNanos.length == 0)
+            return 0;
+        int index = (int) Math.ceil(percentile / 100 * sortedLatenciesNanos.length) - 1;
+        return sortedLatenciesNanos[Math.max(0, index)] / 1_000_000.0;
+    }
+
+    public static LoadReport of(String name, Map<String, Long> failures, double seconds, long[] latenciesNanos) {
+        long[] sorted = latenciesNanos.clone();
+        Arrays.sort(sorted);
+        return new LoadReport(name, sorted.length, Collections.unmodifiableMap(new TreeMap<>(failures)), seconds, sorted);
+    }
+
+    public static String csvHeader() {
+        return "scenario,requests,errors,throughput_rps,p50_ms,p99_ms,p999_ms";
+    }
+
+    public String toCsv() {
+        return String.format(Locale.ROOT, "%s,%d,%d,%.1f,%.3f,%.3f,%.3f", name, requests, errors(), throughput(),
+                percentileMillis(50), percentileMillis(99), percentileMillis(99.9));
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%-32s %8d req %6d err %10.1f req/s   p50 %8.3f ms   p99 %8.3f ms   p999 %8.3f ms%s",
+                name, requests, errors(), throughput(), percentileMillis(50), percentileMillis(99), percentileMillis(99.9),
+                failures.isEmpty() ? "" : "   failures " + failures);
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.demo.load;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Closed-loop load generator : each worker sends its next request as soon as the previous one completes.
+ */
+public final class LoadRunner {
+
+    private LoadRunner() {
+    }
+
+    @FunctionalInterface
+    public interface Call {
+        /**
+         * Sends one request.
+         *
+         * @param worker The index of the worker sending it.
+         * @return The status of the response, or {@link #NOT_SENT} if there was no request to send.
+         */
+        int call(int worker) throws Exception;
+    }
+
+    /**
+     * Status returned by a call which had no request to send, e.g. a delete with no user left to delete.
+     */
+    public static final int NOT_SENT = 0;
+
+    /**
+     * A request of a mixed workload, its weight in the mix and the status of its successful responses.
+     */
+    public record Operation(String name, int weight, int expectedStatus, Call call) {
+    }
+
+    /**
+     * Runs the call from several workers for a warm-up period, then measures it for the given duration.
+     *
+     * @param name        The name of the scenario.
+     * @param concurrency The number of workers.
+     * @param warmup      The duration of the warm-up, not measured.
+     * @param duration       The duration of the measure.
+     * @param expectedStatus The status of the successful responses.
+     * @param call           The request to send.
+     * @return The report of the measure.
+     */
+    public static LoadReport run(String name, int concurrency, Duration warmup, Duration duration,
+            int expectedStatus, Call call) throws InterruptedException {
+        return runMixed(concurrency, warmup, duration, List.of(new Operation(name, 1, expectedStatus, call))).get(0);
+    }
+
+    /**
+     * Runs a mixed workload, each worker picking its next operation at random according to the weights.
+     *
+     * @param concurrency The number of workers.
+     * @param warmup      The duration of the warm-up, not measured.
+     * @param duration    The duration of the measure.
+     * @param operations  The operations of the mix.
+     * @return The report of each operation, in the order of the operations.
+     */
+    public static List<LoadReport> runMixed(int concurrency, Duration warmup, Duration duration,
+            List<Operation> operations) throws InterruptedException {
+        drive(concurrency, warmup, operations);
+
+        long start = System.nanoTime();
+        List<Samples[]> samples = drive(concurrency, duration, operations);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        List<LoadReport> reports = new ArrayList<>();
+        for (int op = 0; op < operations.size(); op++) {
+            int index = op;
+            Map<String, Long> failures = new HashMap<>();
+            samples.forEach(worker -> worker[index].failures.forEach((cause, count) -> failures.merge(cause, count,
+                    Long::sum)));
+            long[] latencies = samples.stream().flatMapToLong(worker -> Arrays.stream(worker[index].latencies())).toArray();
+            reports.add(LoadReport.of(operations.get(op).name(), failures, seconds, latencies));
+        }
+        return reports;
+    }
+
+    /**
+     * Appends the report to a CSV file, so that several runs can be compared.
+     *
+     * @param file   The CSV file.
+     * @param label  The label of the run, e.g. the configuration under test.
+     * @param report The report to append.
+     */
+    public static void append(Path file, String label, LoadReport report) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        if (!Files.exists(file))
+            Files.writeString(file, "label," + LoadReport.csvHeader() + System.lineSeparator());
+        Files.writeString(file, label + "," + report.toCsv() + System.lineSeparator(), StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Parses a mix such as {@code getUserById=60,createUser=10} into weights by operation name.
+     */
+    public static Map<String, Integer> parseMix(String mix) {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split("=");
+            weights.put(parts[0].trim(), Integer.parseInt(parts[1].trim()));
+        }
+        return weights;
+    }
+
+    private static List<Samples[]> drive(int concurrency, Duration duration, List<Operation> operations)
+            throws InterruptedException {
+        int[] cumulativeWeights = new int[operations.size()];
+        int totalWeight = 0;
+        for (int i = 0; i < operations.size(); i++) {
+            totalWeight += operations.get(i).weight();
+            cumulativeWeights[i] = totalWeight;
+        }
+        int weights = totalWeight;
+
+        long deadline = System.nanoTime() + duration.toNanos();
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        try {
+            List<Future<Samples[]>> futures = new ArrayList<>();
+            for (int i = 0; i < concurrency; i++) {
+                int worker = i;
+                futures.add(executor.submit(() -> {
+                    Samples[] samples = new Samples[operations.size()];
+                    for (int op = 0; op < samples.length; op++)
+                        samples[op] = new Samples();
+
+                    while (System.nanoTime() < deadline) {
+                        int pick = ThreadLocalRandom.current().nextInt(weights);
+                        int op = 0;
+                        while (cumulativeWeights[op] <= pick)
+                            op++;
+
+                        long begin = System.nanoTime();
+                        String failure;
+                        try {
+                            int status = operations.get(op).call().call(worker);
+                            failure = status == operations.get(op).expectedStatus() ? null
+                                    : status == NOT_SENT ? "not sent" : String.valueOf(status);
+                        } catch (Exception e) {
+                            failure = e.getClass().getSimpleName();
+                        }
+                        samples[op].add(System.nanoTime() - begin, failure);
+                    }
+                    return samples;
+                }));
+            }
+
+            List<Samples[]> results = new ArrayList<>();
+            for (Future<Samples[]> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static final class Samples {
+        private long[] latencies = new long[1024];
+        private int count;
+        // Failed calls by response status, or by exception when no response came back.
+        private final Map<String, Long> failures = new HashMap<>();
+
+        void add(long latency, String failure) {
+            if (failure != null)
+                failures.merge(failure, 1L, Long::sum);
+            if (count == latencies.length)
+                latencies = Arrays.copyOf(latencies, count * 2);
+            latencies[count++] = latency;
+        }
+
+        long[] latencies() {
+            return Arrays.copyOf(latencies, count);
+        }
+    }
+}
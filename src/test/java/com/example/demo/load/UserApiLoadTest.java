@@ -0,0 +1,174 @@
+package com.example.demo.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * End-to-end load test of the REST API, on the application started with an in-memory H2 database in PostgreSQL
+ * mode, so that it runs offline on any machine :
+ * <pre>
+ * mvn test -Pload-test -Dtest=UserApiLoadTest -Dload.rows=100000 -Dload.concurrency=64 \
+ *     -Dload.mix=getUsers=20,getUserById=60,createUser=10,updateUser=8,deleteUser=2
+ * </pre>
+ * The table is seeded with {@code load.rows} users through POST /users/batch, then each worker runs the mix for
+ * {@code load.durationSeconds}. The throughput and the p50/p99/p999 latencies of each endpoint are printed, with
+ * the statuses of the failed requests, and appended to {@code target/load/user-api.csv}. The test fails if an
+ * operation fails more than {@code load.maxErrorRate} of its requests, 1% by default.
+ * <p>
+ * With the reactive Maven profile, ReactiveUserApiLoadTest runs the same mix on the WebFlux + R2DBC stack and
+ * appends its rows to the same file :
+ * <pre>
+ * mvn test -Pload-test,reactive -Dtest='*UserApiLoadTest'
+ * </pre>
+ */
+@Tag("load")
+@ActiveProfiles("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class UserApiLoadTest {
+
+    private static final int SEED_BATCH = 5000;
+
+    private final int rows = Integer.getInteger("load.rows", 10_000);
+    private final int concurrency = Integer.getInteger("load.concurrency", 64);
+    private final Duration warmup = Duration.ofSeconds(Long.getLong("load.warmupSeconds", 10));
+    private final Duration duration = Duration.ofSeconds(Long.getLong("load.durationSeconds", 30));
+    private final String mix = System.getProperty("load.mix",
+            "getUsers=20,getUserById=60,createUser=10,updateUser=8,deleteUser=2");
+    private final double maxErrorRate = Double.parseDouble(System.getProperty("load.maxErrorRate", "0.01"));
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final AtomicLong sequence = new AtomicLong();
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    void mixedWorkload() throws Exception {
+        String baseUrl = "http://localhost:" + port + "/api/v1/users";
+
+        List<Long> ids = seed(baseUrl);
+        // Reads and updates target the first 90% of the users, deletes consume the others and the users created.
+        int readable = Math.max(1, ids.size() * 9 / 10);
+        Queue<Long> deletable = new ConcurrentLinkedQueue<>(ids.subList(readable, ids.size()));
+        int maxPage = Math.max(1, rows / 20);
+
+        Map<String, LoadRunner.Call> calls = Map.of(
+                "getUsers", worker -> send(get(baseUrl + "?pageSize=20&page="
+                        + ThreadLocalRandom.current().nextInt(maxPage))),
+                "getUserById", worker -> send(get(baseUrl + "/" + randomId(ids, readable))),
+                "createUser", worker -> {
+                    HttpResponse<String> response = client.send(post(baseUrl, user(nextUsername())),
+                            HttpResponse.BodyHandlers.ofString());
+                    if (response.statusCode() == 201)
+                        deletable.add(objectMapper.readTree(response.body()).get("id").asLong());
+                    return response.statusCode();
+                },
+                "updateUser", worker -> send(HttpRequest.newBuilder(URI.create(baseUrl))
+                        .header("Content-Type", "application/json")
+                        .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"id\":" + randomId(ids, readable)
+                                + ",\"email\":\"updated" + worker + "@domain.fr\"}"))
+                        .build()),
+                "deleteUser", worker -> {
+                    Long id = deletable.poll();
+                    return id == null ? LoadRunner.NOT_SENT
+                            : send(HttpRequest.newBuilder(URI.create(baseUrl + "/" + id)).DELETE().build());
+                });
+        Map<String, Integer> expectedStatuses = Map.of("getUsers", 200, "getUserById", 200, "createUser", 201,
+                "updateUser", 200, "deleteUser", 204);
+
+        List<LoadRunner.Operation> operations = new ArrayList<>();
+        LoadRunner.parseMix(mix).forEach((name, weight) -> operations.add(new LoadRunner.Operation(name, weight,
+                expectedStatuses.get(name), calls.get(name))));
+
+        List<LoadReport> reports = LoadRunner.runMixed(concurrency, warmup, duration, operations);
+
+        String label = System.getProperty("load.label", stack() + "-h2-" + rows + "-rows-" + concurrency + "-workers");
+        for (LoadReport report : reports) {
+            System.out.println(report);
+            LoadRunner.append(Path.of("target", "load", "user-api.csv"), label, report);
+        }
+        // Checked once all the reports are written, so that a failing run can still be compared with the others.
+        for (LoadReport report : reports)
+            assertTrue(report.errorRate() <= maxErrorRate, () -> String.format(Locale.ROOT,
+                    "%s failed %.2f%% of its requests, more than %.2f%% : %s", report.name(),
+                    report.errorRate() * 100, maxErrorRate * 100, report.failures()));
+    }
+
+    /**
+     * Names the web stack under test in the report labels, so that the runs of each stack can be compared.
+     */
+    protected String stack() {
+        return "mvc";
+    }
+
+    private List<Long> seed(String baseUrl) throws Exception {
+        List<Long> ids = new ArrayList<>(rows);
+        for (int from = 0; from < rows; from += SEED_BATCH) {
+            StringBuilder body = new StringBuilder("[");
+            for (int i = from; i < Math.min(from + SEED_BATCH, rows); i++)
+                body.append(i > from ? "," : "").append(user(nextUsername()));
+            body.append(']');
+
+            HttpResponse<String> response = client.send(post(baseUrl + "/batch", body.toString()),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, response.statusCode());
+            for (JsonNode result : objectMapper.readTree(response.body()))
+                ids.add(result.get("user").get("id").asLong());
+        }
+        return ids;
+    }
+
+    private int send(HttpRequest request) throws Exception {
+        return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    private static HttpRequest get(String url) {
+        return HttpRequest.newBuilder(URI.create(url)).GET().build();
+    }
+
+    private static HttpRequest post(String url, String body) {
+        return HttpRequest.newBuilder(URI.create(url))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private static Long randomId(List<Long> ids, int bound) {
+        return ids.get(ThreadLocalRandom.current().nextInt(bound));
+    }
+
+    private String nextUsername() {
+        return "load" + sequence.incrementAndGet();
+    }
+
+    private static String user(String username) {
+        return "{\"username\":\"" + username + "\",\"email\":\"" + username + "@domain.fr\",\"password\":\"password\"}";
+    }
+}
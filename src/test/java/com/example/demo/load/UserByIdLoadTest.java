@@ -0,0 +1,57 @@
+package com.example.demo.load;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Load test of GET /users/{id} against a running instance, used to compare the platform thread pool with the
+ * virtual-threads profile :
+ * <pre>
+ * mvn spring-boot:run
+ * mvn test -Pload-test -Dtest=UserByIdLoadTest -Dload.label=platform
+ *
+ * mvn -Pvirtual-threads spring-boot:run -Dspring-boot.run.profiles=virtual-threads
+ * mvn test -Pload-test -Dtest=UserByIdLoadTest -Dload.label=virtual-threads
+ * </pre>
+ * The throughput and the p50/p99/p999 latencies of each run are appended to {@code target/load/user-by-id.csv}.
+ */
+@Tag("load")
+class UserByIdLoadTest {
+
+    private final String baseUrl = System.getProperty("load.baseUrl", "http://localhost:3001/api/v1");
+    private final int concurrency = Integer.getInteger("load.concurrency", 200);
+    private final Duration warmup = Duration.ofSeconds(Long.getLong("load.warmupSeconds", 10));
+    private final Duration duration = Duration.ofSeconds(Long.getLong("load.durationSeconds", 30));
+
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+
+    @Test
+    void getUserById() throws Exception {
+        String username = "load-" + UUID.randomUUID();
+        HttpResponse<String> created = client.send(HttpRequest.newBuilder(URI.create(baseUrl + "/users"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\":\"" + username
+                        + "\",\"email\":\"load@domain.fr\",\"password\":\"password\"}"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(201, created.statusCode());
+
+        String id = created.body().replaceAll(".*\"id\":(\\d+).*", "$1");
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/users/" + id)).GET().build();
+
+        LoadReport report = LoadRunner.run("GET /users/{id}", concurrency, warmup, duration, 200,
+                worker -> client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode());
+
+        System.out.println(report);
+        LoadRunner.append(Path.of("target", "load", "user-by-id.csv"), System.getProperty("load.label", "default"), report);
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.demo.user;
+
+import com.example.demo.config.CacheSpecProperties;
+import com.example.demo.user.cache.UserCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(SpringExtension.class)
+class UserCacheWarmUpTest {
+
+    @TempDir
+    private Path directory;
+
+    @Mock
+    private UserService userService;
+
+    @Mock
+    private UserCache userCache;
+
+    private final CacheSpecProperties cacheSpecProperties = new CacheSpecProperties();
+
+    private UserCacheWarmUp userCacheWarmUp;
+
+    @BeforeEach
+    void setUp() {
+        cacheSpecProperties.getWarmUp().setSnapshotFile(directory.resolve("data").resolve("users-hot-keys.txt"));
+        userCacheWarmUp = new UserCacheWarmUp(userService, userCache, cacheSpecProperties);
+    }
+
+    @Test
+    void warmUpLoadsTheFirstPagesAndTheUsersOfTheSnapshot() throws Exception {
+        Path snapshotFile = cacheSpecProperties.getWarmUp().getSnapshotFile();
+        Files.createDirectories(snapshotFile.getParent());
+        Files.write(snapshotFile, LongStream.rangeClosed(1, 1500).mapToObj(String::valueOf).toList());
+        cacheSpecProperties.getWarmUp().setPages(2);
+        cacheSpecProperties.getWarmUp().setUsers(1500);
+
+        userCacheWarmUp.run(null);
+
+        verify(userService).getAllUsers(PageRequest.of(0, 5));
+        verify(userService).getAllUsers(PageRequest.of(1, 5));
+        verify(userService).getUsersByIds(LongStream.rangeClosed(1, 1000).boxed().toList());
+        verify(userService).getUsersByIds(LongStream.rangeClosed(1001, 1500).boxed().toList());
+    }
+
+    @Test
+    void warmUpWithoutSnapshotOnlyLoadsThePages() throws Exception {
+        userCacheWarmUp.run(null);
+
+        verify(userService, times(5)).getAllUsers(any());
+        verify(userService, never()).getUsersByIds(any());
+    }
+
+    @Test
+    void failedWarmUpDoesNotPreventTheStart() {
+        when(userService.getAllUsers(any())).thenThrow(new IllegalStateException("Database unavailable"));
+
+        assertDoesNotThrow(() -> userCacheWarmUp.run(null));
+    }
+
+    @Test
+    void shutdownSavesTheMostAccessedUsers() throws IOException {
+        when(userCache.getHottestUserIds(1000)).thenReturn(List.of(42L, 7L));
+
+        userCacheWarmUp.saveSnapshot();
+
+        assertEquals(List.of("42", "7"), Files.readAllLines(cacheSpecProperties.getWarmUp().getSnapshotFile()));
+    }
+}
@@ -1,34 +1,53 @@
 package com.example.demo.user;
 
+import com.example.demo.user.bulk.UserImportReader;
+import com.example.demo.user.cache.UserResponseCache;
 import com.example.demo.user.dto.CreateUserForm;
+import com.example.demo.user.dto.CreateUserResultDTO;
+import com.example.demo.user.dto.ImportUsersResultDTO;
 import com.example.demo.user.dto.UpdateUserForm;
 import com.example.demo.user.dto.UserDTO;
+import com.example.demo.user.dto.UserLookupDTO;
+import com.example.demo.user.export.UserExportWriter;
 import com.example.demo.user.util.UserMapper;
+import com.example.demo.util.CursorCodec;
+import com.example.demo.util.CursorPageDTO;
 import com.example.demo.util.PageDTO;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(controllers = UserControllerImpl.class)
@@ -48,6 +67,20 @@ class UserControllerImplTest {
     @MockBean
     private UserService userService;
 
+    @MockBean
+    private UserResponseCache userResponseCache;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @TestConfiguration
+    static class MetricsTestConfig {
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
     @Test
     void getUsers() throws Exception {
 
@@ -57,7 +90,7 @@ class UserControllerImplTest {
         List<User> users = List.of(user1, user2);
         List<UserDTO> userDTOS = UserMapper.INSTANCE.toDtoList(users);
         Pageable pageable = PageRequest.of(0, 5);
-        Page<User> usersFromService = new PageImpl<>(users, pageable, users.size());
+        Page<UserDTO> usersFromService = new PageImpl<>(userDTOS, pageable, users.size());
 
         when(userService.getAllUsers(pageable)).thenReturn(usersFromService);
 
@@ -76,12 +109,218 @@ class UserControllerImplTest {
         verify(userService, times(1)).getAllUsers(pageable);
     }
 
+    @Test
+    void getUsersWithoutTotal() throws Exception {
+
+        // The version is not serialized, the users read back from the body have none.
+        List<UserDTO> users = List.of(new UserDTO(1L, "username1", "email1", null));
+        Pageable pageable = PageRequest.of(0, 5);
+
+        when(userService.getUsersSlice(pageable)).thenReturn(new SliceImpl<>(users, pageable, false));
+
+        MvcResult res = mvc.perform(get(BASE_PATH).param("withTotal", "false"))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        PageDTO<UserDTO> pageDTO = objectMapper.readValue(res.getResponse().getContentAsString(StandardCharsets.UTF_8), new TypeReference<PageDTO<UserDTO>>() {
+        });
+
+        assertEquals(users, pageDTO.getContent());
+        assertEquals(PageDTO.TotalType.NONE, pageDTO.getTotalType());
+        assertNull(pageDTO.getTotalElements());
+        verify(userService, never()).getAllUsers(any());
+    }
+
+    @Test
+    void getUsersWithApproximateTotal() throws Exception {
+
+        List<UserDTO> users = List.of(new UserDTO(1L, "username1", "email1", 0L), new UserDTO(2L, "username2", "email2", 0L));
+        Pageable pageable = PageRequest.of(0, 2);
+
+        when(userService.getUsersSlice(pageable)).thenReturn(new SliceImpl<>(users, pageable, true));
+        when(userService.getApproximateUserCount()).thenReturn(1000L);
+
+        MvcResult res = mvc.perform(get(BASE_PATH).param("pageSize", "2").param("approximateTotal", "true"))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        PageDTO<UserDTO> pageDTO = objectMapper.readValue(res.getResponse().getContentAsString(StandardCharsets.UTF_8), new TypeReference<PageDTO<UserDTO>>() {
+        });
+
+        assertEquals(PageDTO.TotalType.APPROXIMATE, pageDTO.getTotalType());
+        assertEquals(1000L, pageDTO.getTotalElements());
+        assertEquals(500L, pageDTO.getTotalPages());
+        verify(userService, never()).getAllUsers(any());
+    }
+
+    @Test
+    void getUsersPastTheEndWithApproximateTotal() throws Exception {
+        Pageable pageable = PageRequest.of(1000, 5);
+
+        when(userService.getUsersSlice(pageable)).thenReturn(new SliceImpl<>(List.of(), pageable, false));
+        when(userService.getApproximateUserCount()).thenReturn(10L);
+
+        MvcResult res = mvc.perform(get(BASE_PATH).param("page", "1000").param("pageSize", "5")
+                        .param("approximateTotal", "true"))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        PageDTO<UserDTO> pageDTO = objectMapper.readValue(res.getResponse().getContentAsString(StandardCharsets.UTF_8), new TypeReference<PageDTO<UserDTO>>() {
+        });
+
+        // The empty page only tells that there are at most 5000 users, the estimate is kept.
+        assertEquals(10L, pageDTO.getTotalElements());
+        assertEquals(2L, pageDTO.getTotalPages());
+        assertFalse(pageDTO.getHasNext());
+    }
+
+    @Test
+    void exportUsersAsNdjson() throws Exception {
+        doAnswer(invocation -> {
+            UserExportWriter writer = invocation.getArgument(0);
+            writer.write(new UserDTO(1L, "username1", "email1", 0L));
+            writer.write(new UserDTO(2L, "username2", "email2", 0L));
+            return null;
+        }).when(userService).exportUsers(any());
+
+        MvcResult res = mvc.perform(get(BASE_PATH + "/export"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"users.ndjson\""))
+                .andReturn();
+
+        assertEquals("{\"id\":1,\"username\":\"username1\",\"email\":\"email1\"}\n"
+                        + "{\"id\":2,\"username\":\"username2\",\"email\":\"email2\"}\n",
+                res.getResponse().getContentAsString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void exportUsersAsCsv() throws Exception {
+        doAnswer(invocation -> {
+            UserExportWriter writer = invocation.getArgument(0);
+            writer.write(new UserDTO(1L, "username1", "Last, \"First\"", 0L));
+            return null;
+        }).when(userService).exportUsers(any());
+
+        MvcResult res = mvc.perform(get(BASE_PATH + "/export").param("format", "CSV"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith("text/csv"))
+                .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"users.csv\""))
+                .andReturn();
+
+        assertEquals("id,username,email\r\n1,username1,\"Last, \"\"First\"\"\"\r\n",
+                res.getResponse().getContentAsString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void exportUsersWithUnknownFormat() throws Exception {
+        mvc.perform(get(BASE_PATH + "/export").param("format", "xml"))
+                .andExpect(status().isBadRequest());
+
+        verify(userService, never()).exportUsers(any());
+    }
+
+    @Test
+    void getUsersAfter() throws Exception {
+
+        User user3 = new User(3L, "username3", "email3", "password3");
+        User user4 = new User(4L, "username4", "email4", "password4");
+
+        List<UserDTO> users = UserMapper.INSTANCE.toDtoList(List.of(user3, user4));
+
+        when(userService.getUsersAfter(2L, 2)).thenReturn(new SliceImpl<>(users, PageRequest.of(0, 2), true));
+
+        MvcResult res = mvc.perform(get(BASE_PATH).param("after", CursorCodec.encode(2L)).param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andReturn();
+
+        CursorPageDTO<UserDTO> cursorPageDTO = objectMapper.readValue(res.getResponse().getContentAsString(StandardCharsets.UTF_8), new TypeReference<CursorPageDTO<UserDTO>>() {
+        });
+
+        assertEquals(users, cursorPageDTO.getContent());
+        assertEquals(CursorCodec.encode(4L), cursorPageDTO.getNextCursor());
+        verify(userService, times(1)).getUsersAfter(2L, 2);
+        verify(userService, never()).getAllUsers(any());
+    }
+
+    @Test
+    void getUsersAfterLastPageHasNoCursor() throws Exception {
+
+        User user1 = new User(1L, "username1", "email1", "password1");
+
+        when(userService.getUsersAfter(null, 5)).thenReturn(new SliceImpl<>(List.of(UserMapper.INSTANCE.toDto(user1)), PageRequest.of(0, 5), false));
+
+        MvcResult res = mvc.perform(get(BASE_PATH).param("limit", "5"))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        CursorPageDTO<UserDTO> cursorPageDTO = objectMapper.readValue(res.getResponse().getContentAsString(StandardCharsets.UTF_8), new TypeReference<CursorPageDTO<UserDTO>>() {
+        });
+
+        assertNull(cursorPageDTO.getNextCursor());
+    }
+
+    @Test
+    void getUsersAfterWithInvalidCursor() throws Exception {
+        mvc.perform(get(BASE_PATH).param("after", "not a cursor").param("limit", "5"))
+                .andExpect(status().isBadRequest());
+
+        verify(userService, never()).getUsersAfter(any(), anyInt());
+    }
+
+    @Test
+    void searchUsers() throws Exception {
+
+        List<UserDTO> users = List.of(new UserDTO(3L, "username3", "email3", null), new UserDTO(4L, "username4", "email4", null));
+
+        when(userService.searchUsers("name", false, null, 2L, 2)).thenReturn(new SliceImpl<>(users, PageRequest.of(0, 2), true));
+
+        MvcResult res = mvc.perform(get(BASE_PATH + "/search").param("username", "name")
+                        .param("after", CursorCodec.encode(2L)).param("limit", "2"))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        CursorPageDTO<UserDTO> cursorPageDTO = objectMapper.readValue(res.getResponse().getContentAsString(StandardCharsets.UTF_8), new TypeReference<CursorPageDTO<UserDTO>>() {
+        });
+
+        assertEquals(users, cursorPageDTO.getContent());
+        assertEquals(CursorCodec.encode(4L), cursorPageDTO.getNextCursor());
+    }
+
+    @Test
+    void searchUsersByPrefixAndEmail() throws Exception {
+        when(userService.searchUsers("us", true, "Email1@Domain.fr", null, 20)).thenReturn(new SliceImpl<>(List.of()));
+
+        mvc.perform(get(BASE_PATH + "/search").param("username", "us").param("prefix", "true")
+                        .param("email", " Email1@Domain.fr "))
+                .andExpect(status().isOk());
+
+        verify(userService, times(1)).searchUsers("us", true, "Email1@Domain.fr", null, 20);
+    }
+
+    @Test
+    void searchUsersWithoutCriteria() throws Exception {
+        mvc.perform(get(BASE_PATH + "/search").param("email", " "))
+                .andExpect(status().isBadRequest());
+
+        verify(userService, never()).searchUsers(any(), anyBoolean(), any(), any(), anyInt());
+    }
+
+    @Test
+    void searchUsersWithTooShortSubstring() throws Exception {
+        mvc.perform(get(BASE_PATH + "/search").param("username", "us"))
+                .andExpect(status().isBadRequest());
+
+        verify(userService, never()).searchUsers(any(), anyBoolean(), any(), any(), anyInt());
+    }
+
     @Test
     void getUserById() throws Exception {
 
         User user1 = new User(1L, "username1", "email1", "password1");
 
-        when(userService.getUserById(user1.getId())).thenReturn(user1);
+        when(userService.getUserById(user1.getId())).thenReturn(UserMapper.INSTANCE.toDto(user1));
 
         MvcResult res = mvc.perform(get(BASE_PATH + "/" + user1.getId().toString()).characterEncoding("UTF-8")).andExpect(status().isOk()).andExpect(content().contentType(MediaType.APPLICATION_JSON)).andReturn();
 
@@ -90,9 +329,60 @@ class UserControllerImplTest {
 
         assertNotNull(userDTO);
         verify(userService, times(1)).getUserById(user1.getId());
-        assertEquals(user1.getId(), userDTO.getId());
-        assertEquals(user1.getEmail(), userDTO.getEmail());
-        assertEquals(user1.getUsername(), userDTO.getUsername());
+        assertEquals(user1.getId(), userDTO.id());
+        assertEquals(user1.getEmail(), userDTO.email());
+        assertEquals(user1.getUsername(), userDTO.username());
+    }
+
+    @Test
+    void getUsersByIds() throws Exception {
+
+        List<UserLookupDTO> users = List.of(new UserLookupDTO(2L, true, new UserDTO(2L, "username2", "email2", 0L)),
+                new UserLookupDTO(5L, false, null));
+
+        when(userService.getUsersByIds(List.of(2L, 5L))).thenReturn(users);
+
+        MvcResult res = mvc.perform(get(BASE_PATH).param("ids", "2,5"))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        List<UserLookupDTO> usersReceived = objectMapper.readValue(res.getResponse().getContentAsString(), new TypeReference<List<UserLookupDTO>>() {
+        });
+
+        assertEquals(2, usersReceived.size());
+        assertEquals(users.get(1), usersReceived.get(1));
+        verify(userService, times(1)).getUsersByIds(List.of(2L, 5L));
+        verify(userService, never()).getAllUsers(any());
+    }
+
+    @Test
+    void getUserByIdNotFoundIsCounted() throws Exception {
+
+        when(userService.getUserById(42L)).thenThrow(new UserResourceException("UserNotFound",
+                "The user ID is not found in the database.", HttpStatus.NOT_FOUND));
+
+        mvc.perform(get(BASE_PATH + "/42")).andExpect(status().isNotFound());
+
+        assertEquals(1.0, meterRegistry.get("api.errors")
+                .tag("endpoint", "/users/{id}")
+                .tag("errorCode", "UserNotFound")
+                .tag("status", "404")
+                .counter().count());
+    }
+
+    @Test
+    void getUserByIdNotModified() throws Exception {
+
+        UserDTO user1 = new UserDTO(1L, "username1", "email1", 3L);
+
+        when(userService.getUserById(user1.id())).thenReturn(user1);
+
+        MvcResult res = mvc.perform(get(BASE_PATH + "/" + user1.id()).header(HttpHeaders.IF_NONE_MATCH, "\"1-3\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"1-3\""))
+                .andReturn();
+
+        assertEquals(0, res.getResponse().getContentLength());
     }
 
     @Test
@@ -107,7 +397,7 @@ class UserControllerImplTest {
                 .password(user.getPassword())
                 .build();
 
-        when(userService.createUser(createUserForm)).thenReturn(user);
+        when(userService.createUser(createUserForm)).thenReturn(userDTOExpected);
 
         MvcResult res = mvc
                 .perform(post(BASE_PATH)
@@ -125,6 +415,86 @@ class UserControllerImplTest {
 
     }
 
+    @Test
+    void createUserWhenTheHashingPoolIsFull() throws Exception {
+
+        CreateUserForm createUserForm = new CreateUserForm("username1", "firstname.lastname@domain.fr", "password1");
+
+        when(userService.createUser(createUserForm)).thenThrow(new UserResourceException("PasswordHashingBusy",
+                "Too many passwords are being hashed, retry later.", HttpStatus.SERVICE_UNAVAILABLE,
+                Duration.ofMillis(1500)));
+
+        mvc.perform(post(BASE_PATH)
+                        .content(new ObjectMapper().writeValueAsString(createUserForm))
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "2"));
+    }
+
+    @Test
+    void createUsers() throws Exception {
+
+        CreateUserForm createUserForm = new CreateUserForm("username1", "firstname.lastname@domain.fr", "password1");
+        UserDTO userDTO = new UserDTO(1L, "username1", "firstname.lastname@domain.fr", 0L);
+        List<CreateUserResultDTO> results = List.of(CreateUserResultDTO.created(0, userDTO),
+                CreateUserResultDTO.failed(1, "username1", CreateUserResultDTO.Status.DUPLICATE, "The user username1 already exists."));
+
+        when(userService.createUsers(List.of(createUserForm, createUserForm))).thenReturn(results);
+
+        MvcResult res = mvc
+                .perform(post(BASE_PATH + "/batch")
+                        .content(objectMapper.writeValueAsString(List.of(createUserForm, createUserForm)))
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        List<CreateUserResultDTO> resultsReceived = objectMapper.readValue(res.getResponse().getContentAsString(), new TypeReference<List<CreateUserResultDTO>>() {
+        });
+
+        assertEquals(2, resultsReceived.size());
+        assertEquals(CreateUserResultDTO.Status.CREATED, resultsReceived.get(0).status());
+        assertEquals(CreateUserResultDTO.Status.DUPLICATE, resultsReceived.get(1).status());
+    }
+
+    @Test
+    void importUsersFromCsv() throws Exception {
+        doAnswer(invocation -> {
+            UserImportReader reader = invocation.getArgument(0);
+            assertEquals(new CreateUserForm("username1", "email1@domain.fr", "password1"), reader.next());
+            assertNull(reader.next());
+            return new ImportUsersResultDTO(1, 0, 0);
+        }).when(userService).importUsers(any());
+
+        MvcResult res = mvc.perform(post(BASE_PATH + "/import").contentType("text/csv")
+                        .content("username,email,password\nusername1,email1@domain.fr,password1\n"))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        assertEquals(new ImportUsersResultDTO(1, 0, 0), objectMapper.readValue(
+                res.getResponse().getContentAsString(StandardCharsets.UTF_8), ImportUsersResultDTO.class));
+    }
+
+    @Test
+    void importUsersFromNdjson() throws Exception {
+        doAnswer(invocation -> {
+            UserImportReader reader = invocation.getArgument(0);
+            assertEquals(new CreateUserForm("username1", "email1@domain.fr", "password1"), reader.next());
+            return new ImportUsersResultDTO(1, 0, 0);
+        }).when(userService).importUsers(any());
+
+        mvc.perform(post(BASE_PATH + "/import").contentType(MediaType.APPLICATION_NDJSON)
+                        .content("{\"username\":\"username1\",\"email\":\"email1@domain.fr\",\"password\":\"password1\"}\n"))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void importUsersWithUnsupportedContentType() throws Exception {
+        mvc.perform(post(BASE_PATH + "/import").contentType(MediaType.APPLICATION_XML).content("<users/>"))
+                .andExpect(status().isUnsupportedMediaType());
+
+        verify(userService, never()).importUsers(any());
+    }
+
     @Test
     void updateUser() throws Exception {
         User user = new User(1L, "username1", "firstname.lastname@domain.fr", "password1");
@@ -144,7 +514,7 @@ class UserControllerImplTest {
 
         UserDTO userDTOExpected = UserMapper.INSTANCE.toDto(userUpdated);
 
-        when(userService.updateUser(updateDeadlineForm)).thenReturn(userUpdated);
+        when(userService.updateUser(updateDeadlineForm, null)).thenReturn(userDTOExpected);
 
         MvcResult res = mvc
                 .perform(patch(BASE_PATH)
@@ -159,8 +529,43 @@ class UserControllerImplTest {
         assertNotNull(deadlineDTOUpdated);
         assertEquals(userDTOExpected, deadlineDTOUpdated);
 
-        verify(userService, times(1)).updateUser(updateDeadlineForm);
+        verify(userService, times(1)).updateUser(updateDeadlineForm, null);
+
+    }
+
+    @Test
+    void updateUserWithIfMatch() throws Exception {
+        UpdateUserForm updateUserForm = UpdateUserForm.builder()
+                .id(1L)
+                .email("newemail@domain.fr")
+                .build();
+
+        when(userService.updateUser(updateUserForm, 3L)).thenReturn(new UserDTO(1L, "username1", "newemail@domain.fr", 4L));
+
+        mvc.perform(patch(BASE_PATH)
+                        .header(HttpHeaders.IF_MATCH, "\"1-3\"")
+                        .content(objectMapper.writeValueAsString(updateUserForm))
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"1-4\""));
+
+        verify(userService, times(1)).updateUser(updateUserForm, 3L);
+    }
+
+    @Test
+    void updateUserWithIfMatchOfAnotherUser() throws Exception {
+        UpdateUserForm updateUserForm = UpdateUserForm.builder()
+                .id(1L)
+                .email("newemail@domain.fr")
+                .build();
+
+        mvc.perform(patch(BASE_PATH)
+                        .header(HttpHeaders.IF_MATCH, "\"2-3\"")
+                        .content(objectMapper.writeValueAsString(updateUserForm))
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isPreconditionFailed());
 
+        verify(userService, never()).updateUser(any(), any());
     }
 
     @Test
@@ -0,0 +1,79 @@
+package com.example.demo.user;
+
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the update and delete statements of the repository on an embedded H2 database, the mocked repository of the
+ * service tests cannot tell whether Hibernate accepts them.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.database=h2",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.hbm2ddl.import_files=",
+})
+class UserRepositoryTest {
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Test
+    void updateUserKeepsTheNullColumns() {
+        Long id = save("username1", "firstname.lastname@domain.fr", "password");
+
+        assertEquals(1, userRepository.updateUser(id, "new.email@domain.fr", null, 0L));
+        assertEquals(new User(id, "username1", "new.email@domain.fr", "password", 1L), find(id));
+
+        assertEquals(1, userRepository.updateUser(id, null, "new_password", null));
+        assertEquals(new User(id, "username1", "new.email@domain.fr", "new_password", 2L), find(id));
+    }
+
+    @Test
+    void updateUserWithAnotherVersionUpdatesNothing() {
+        Long id = save("username1", "firstname.lastname@domain.fr", "password");
+
+        assertEquals(0, userRepository.updateUser(id, "new.email@domain.fr", null, 5L));
+        assertEquals(0, userRepository.updateUser(id + 1, "new.email@domain.fr", null, null));
+        assertEquals(new User(id, "username1", "firstname.lastname@domain.fr", "password", 0L), find(id));
+    }
+
+    @Test
+    void applyUpdateWritesTheGivenVersion() {
+        Long id = save("username1", "firstname.lastname@domain.fr", "password");
+
+        assertEquals(1, userRepository.applyUpdate(id, null, "new_password", 3L));
+        assertEquals(new User(id, "username1", "firstname.lastname@domain.fr", "new_password", 3L), find(id));
+    }
+
+    @Test
+    void deleteUserById() {
+        Long id = save("username1", "firstname.lastname@domain.fr", "password");
+
+        assertEquals(1, userRepository.deleteUserById(id));
+        assertEquals(0, userRepository.deleteUserById(id));
+        assertNull(find(id));
+    }
+
+    private Long save(String username, String email, String password) {
+        User user = new User(null, username, email, password);
+        entityManager.persist(user);
+        entityManager.flush();
+        entityManager.clear();
+        return user.getId();
+    }
+
+    /**
+     * Reads the row back, the bulk statements bypass the persistence context.
+     */
+    private User find(Long id) {
+        entityManager.clear();
+        return entityManager.find(User.class, id);
+    }
+}
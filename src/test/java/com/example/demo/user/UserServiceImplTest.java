@@ -1,20 +1,52 @@
 package com.example.demo.user;
 
+import com.example.demo.cache.SingleFlight;
+import com.example.demo.user.bulk.UserCopyLoader;
+import com.example.demo.user.bulk.UserImportReader;
+import com.example.demo.user.cache.UserCache;
 import com.example.demo.user.dto.CreateUserForm;
+import com.example.demo.user.dto.CreateUserResultDTO;
+import com.example.demo.user.dto.CreateUserResultDTO.Status;
+import com.example.demo.user.dto.ImportUsersResultDTO;
 import com.example.demo.user.dto.UpdateUserForm;
+import com.example.demo.user.dto.UserDTO;
+import com.example.demo.user.dto.UserLookupDTO;
+import com.example.demo.user.export.UserExportWriter;
+import com.example.demo.user.password.PasswordHasher;
+import com.example.demo.user.util.UserMapper;
+import com.example.demo.user.writebehind.UserWriteBehind;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
+import org.mockito.InOrder;
 import org.mockito.Mock;
+import org.mockito.Spy;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.InvalidDataAccessResourceUsageException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -22,42 +54,335 @@ import static org.mockito.Mockito.*;
 @ExtendWith(SpringExtension.class)
 class UserServiceImplTest {
 
-    @InjectMocks
     private UserServiceImpl userService;
 
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private UserCache userCache;
+
+    @Spy
+    private SingleFlight singleFlight = new SingleFlight(new SimpleMeterRegistry());
+
+    @Mock
+    private Validator validator;
+
+    @Mock
+    private PasswordHasher passwordHasher;
+
+    @Mock
+    private ObjectProvider<UserWriteBehind> userWriteBehind;
+
+    @Mock
+    private ObjectProvider<UserCopyLoader> userCopyLoader;
+
+    @BeforeEach
+    void createService() {
+        // Built explicitly, both providers have the same type and would be injected at random.
+        userService = new UserServiceImpl(userRepository, userCache, singleFlight, validator, passwordHasher,
+                userWriteBehind, userCopyLoader);
+    }
+
+    @BeforeEach
+    void hashPasswordsAsIs() throws UserResourceException {
+        when(passwordHasher.hash(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(passwordHasher.hashAll(any())).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
     @Test
     void getAllUsers() {
-        User user1 = new User(1L, "username1", "email1", "password1");
-        User user2 = new User(2L, "username2", "email1", "password2");
+        UserDTO user1 = new UserDTO(1L, "username1", "email1", 0L);
+        UserDTO user2 = new UserDTO(2L, "username2", "email1", 0L);
 
-        List<User> users = List.of(user1, user2);
-        Page<User> userPage = new PageImpl<>(users);
+        Page<UserView> userPage = new PageImpl<>(List.of(view(user1), view(user2)));
         Pageable pageable = PageRequest.of(0, 2);
+        Pageable pageableById = PageRequest.of(0, 2, Sort.by("id"));
 
-        when(userRepository.findAll(pageable)).thenReturn(userPage);
+        when(userCache.getPageIds(pageableById)).thenReturn(null);
+        when(userRepository.findAllProjectedBy(pageableById)).thenReturn(userPage);
 
-        Page<User> agenciesFromService = userService.getAllUsers(pageable);
+        Page<UserDTO> agenciesFromService = userService.getAllUsers(pageable);
 
         assertNotNull(agenciesFromService);
-        assertEquals(userPage, agenciesFromService);
-        verify(userRepository, times(1)).findAll(pageable);
+        assertEquals(List.of(user1, user2), agenciesFromService.getContent());
+        verify(userRepository, times(1)).findAllProjectedBy(pageableById);
+        verify(userRepository, never()).findAll(any(Pageable.class));
+        verify(userCache, times(1)).putPage(pageableById, agenciesFromService);
+    }
+
+    @Test
+    void getAllUsersRefreshesAPageDueForRefresh() {
+        UserDTO user1 = new UserDTO(1L, "username1", "email1", 0L);
+        UserDTO user2 = new UserDTO(2L, "username2", "email2", 0L);
+        UserDTO user3 = new UserDTO(3L, "username3", "email3", 0L);
+        Pageable pageableById = PageRequest.of(0, 2, Sort.by("id"));
+
+        when(userCache.getPageIds(pageableById)).thenReturn(List.of(1L, 2L));
+        when(userCache.getUsers(List.of(1L, 2L))).thenReturn(Map.of(1L, user1, 2L, user2));
+        when(userCache.getTotal()).thenReturn(3L);
+        when(userCache.isDueForRefresh(UserCache.PAGES_CACHE, pageableById)).thenReturn(true);
+        when(userRepository.findAllProjectedBy(pageableById))
+                .thenReturn(new PageImpl<>(List.of(view(user3)), pageableById, 3));
+
+        Page<UserDTO> usersFromService = userService.getAllUsers(PageRequest.of(0, 2));
+
+        assertEquals(List.of(user1, user2), usersFromService.getContent());
+        verify(userCache, timeout(5000)).replacePageIds(pageableById, List.of(1L, 2L), List.of(3L));
+    }
+
+    @Test
+    void getAllUsersFromCachedPage() {
+        UserDTO user1 = new UserDTO(1L, "username1", "email1", 0L);
+        UserDTO user2 = new UserDTO(2L, "username2", "email1", 0L);
+
+        Pageable pageableById = PageRequest.of(0, 2, Sort.by("id"));
+
+        when(userCache.getPageIds(pageableById)).thenReturn(List.of(1L, 2L));
+        when(userCache.getUsers(List.of(1L, 2L))).thenReturn(Map.of(1L, user1));
+        when(userRepository.findAllProjectedByIdIn(List.of(2L))).thenReturn(List.of(view(user2)));
+        when(userCache.getTotal()).thenReturn(2L);
+
+        Page<UserDTO> usersFromService = userService.getAllUsers(PageRequest.of(0, 2));
+
+        assertEquals(List.of(user1, user2), usersFromService.getContent());
+        assertEquals(2L, usersFromService.getTotalElements());
+        verify(userCache, times(1)).putUser(user2);
+        verify(userRepository, never()).findAllProjectedBy(any(Pageable.class));
+        verify(userRepository, never()).count();
+    }
+
+    @Test
+    void getUsersSliceWithoutCount() {
+        UserDTO user1 = new UserDTO(1L, "username1", "email1", 0L);
+
+        Pageable pageableById = PageRequest.of(0, 1, Sort.by("id"));
+
+        when(userCache.getTotal()).thenReturn(null);
+        when(userRepository.findAllBy(pageableById))
+                .thenReturn(new SliceImpl<>(List.of(view(user1)), pageableById, true));
+
+        Slice<UserDTO> usersFromService = userService.getUsersSlice(PageRequest.of(0, 1));
+
+        assertEquals(List.of(user1), usersFromService.getContent());
+        assertTrue(usersFromService.hasNext());
+        verify(userCache, times(1)).putPageIds(pageableById, List.of(1L));
+        verify(userRepository, never()).count();
+        verify(userRepository, never()).findAllProjectedBy(any(Pageable.class));
+    }
+
+    @Test
+    void getApproximateUserCountFromStatistics() {
+        when(userCache.getTotal()).thenReturn(null);
+        when(userCache.getApproximateTotal()).thenReturn(null);
+        when(userRepository.estimateCount()).thenReturn(1_000_000L);
+
+        assertEquals(1_000_000L, userService.getApproximateUserCount());
+        verify(userCache, times(1)).putApproximateTotal(1_000_000L);
+        verify(userRepository, never()).count();
+    }
+
+    @Test
+    void getApproximateUserCountOfTableNeverAnalyzed() {
+        when(userCache.getTotal()).thenReturn(null);
+        when(userCache.getApproximateTotal()).thenReturn(null);
+        when(userRepository.estimateCount()).thenReturn(-1L);
+        when(userRepository.count()).thenReturn(42L);
+
+        assertEquals(42L, userService.getApproximateUserCount());
+    }
+
+    @Test
+    void getApproximateUserCountWithoutStatistics() {
+        when(userCache.getTotal()).thenReturn(null);
+        when(userCache.getApproximateTotal()).thenReturn(null);
+        when(userRepository.estimateCount()).thenThrow(new InvalidDataAccessResourceUsageException("pg_class"));
+        when(userRepository.count()).thenReturn(42L);
+
+        assertEquals(42L, userService.getApproximateUserCount());
+        verify(userCache, times(1)).putApproximateTotal(42L);
+    }
+
+    @Test
+    void getUsersAfter() {
+        UserDTO user3 = new UserDTO(3L, "username3", "email3", 0L);
+        UserDTO user4 = new UserDTO(4L, "username4", "email4", 0L);
+
+        Pageable pageable = PageRequest.of(0, 2, Sort.by("id"));
+        Slice<UserView> userSlice = new SliceImpl<>(List.of(view(user3), view(user4)), pageable, true);
+
+        when(userRepository.findByIdGreaterThan(2L, pageable)).thenReturn(userSlice);
+
+        Slice<UserDTO> usersFromService = userService.getUsersAfter(2L, 2);
+
+        assertEquals(List.of(user3, user4), usersFromService.getContent());
+        assertTrue(usersFromService.hasNext());
+        verify(userRepository, times(1)).findByIdGreaterThan(2L, pageable);
+        verify(userRepository, never()).findAllProjectedBy(any(Pageable.class));
+    }
+
+    @Test
+    void getUsersAfterWithoutCursorStartsFromTheBeginning() {
+        Pageable pageable = PageRequest.of(0, 5, Sort.by("id"));
+
+        when(userRepository.findByIdGreaterThan(0L, pageable)).thenReturn(new SliceImpl<>(List.of(), pageable, false));
+
+        assertFalse(userService.getUsersAfter(null, 5).hasNext());
+        verify(userRepository, times(1)).findByIdGreaterThan(0L, pageable);
+    }
+
+    @Test
+    void searchUsersByUsernameSubstring() {
+        UserDTO user = new UserDTO(3L, "user_name3", "email3", 0L);
+        Pageable pageable = PageRequest.of(0, 2);
+
+        when(userRepository.searchByUsername("%r\\_na%", 2L, pageable))
+                .thenReturn(new SliceImpl<>(List.of(view(user)), pageable, true));
+
+        Slice<UserDTO> users = userService.searchUsers("r_na", false, null, 2L, 2);
+
+        assertEquals(List.of(user), users.getContent());
+        assertTrue(users.hasNext());
+    }
+
+    @Test
+    void searchUsersByUsernamePrefixFromTheBeginning() {
+        Pageable pageable = PageRequest.of(0, 20);
+
+        when(userRepository.searchByUsername("100\\%%", 0L, pageable)).thenReturn(new SliceImpl<>(List.of()));
+
+        assertTrue(userService.searchUsers("100%", true, null, null, 20).getContent().isEmpty());
+        verify(userRepository, times(1)).searchByUsername("100\\%%", 0L, pageable);
+    }
+
+    @Test
+    void searchUsersByEmail() {
+        UserDTO user = new UserDTO(1L, "username1", "Email1@domain.fr", 0L);
+        Pageable pageable = PageRequest.of(0, 20);
+
+        when(userRepository.searchByEmail("email1@domain.fr", 0L, pageable))
+                .thenReturn(new SliceImpl<>(List.of(view(user)), pageable, false));
+
+        assertEquals(List.of(user), userService.searchUsers(null, false, "email1@domain.fr", null, 20).getContent());
+        verify(userRepository, never()).searchByUsername(any(), any(), any());
+    }
+
+    @Test
+    void searchUsersByUsernameAndEmail() {
+        Pageable pageable = PageRequest.of(0, 20);
+
+        when(userRepository.searchByUsernameAndEmail("user%", "email1@domain.fr", 0L, pageable))
+                .thenReturn(new SliceImpl<>(List.of()));
+
+        userService.searchUsers("user", true, "email1@domain.fr", null, 20);
+
+        verify(userRepository, times(1)).searchByUsernameAndEmail("user%", "email1@domain.fr", 0L, pageable);
+    }
+
+    @Test
+    void getUsersByIds() throws UserResourceException {
+        UserDTO user1 = new UserDTO(1L, "username1", "email1", 0L);
+        UserDTO user2 = new UserDTO(2L, "username2", "email2", 0L);
+
+        when(userCache.getUsers(Set.of(2L, 1L, 3L))).thenReturn(Map.of(2L, user2));
+        when(userRepository.findAllProjectedByIdIn(any())).thenReturn(List.of(view(user1)));
+
+        List<UserLookupDTO> users = userService.getUsersByIds(List.of(2L, 1L, 3L));
+
+        assertEquals(List.of(
+                new UserLookupDTO(2L, true, user2),
+                new UserLookupDTO(1L, true, user1),
+                new UserLookupDTO(3L, false, null)), users);
+        verify(userRepository, times(1)).findAllProjectedByIdIn(argThat(ids -> Set.copyOf(ids).equals(Set.of(1L, 3L))));
+        verify(userCache, times(1)).putUser(user1);
+        verify(userRepository, never()).findById(any());
+    }
+
+    @Test
+    void exportUsers() throws Exception {
+        UserDTO user1 = new UserDTO(1L, "username1", "email1", 0L);
+        UserDTO user2 = new UserDTO(2L, "username2", "email2", 3L);
+        AtomicBoolean closed = new AtomicBoolean();
+        UserExportWriter writer = mock(UserExportWriter.class);
+
+        when(userRepository.streamAllByOrderByIdAsc())
+                .thenReturn(Stream.of(view(user1), view(user2)).onClose(() -> closed.set(true)));
+
+        userService.exportUsers(writer);
+
+        InOrder inOrder = inOrder(writer);
+        inOrder.verify(writer).write(user1);
+        inOrder.verify(writer).write(user2);
+        assertTrue(closed.get());
+        verifyNoInteractions(userCache);
+    }
+
+    @Test
+    void exportUsersOverlaysThePendingUpdates() throws Exception {
+        UserDTO user = new UserDTO(1L, "username1", "email1", 4L);
+        UserDTO pendingUser = new UserDTO(1L, "username1", "new.email@domain.fr", 5L);
+        UserWriteBehind writeBehind = mock(UserWriteBehind.class);
+        UserExportWriter writer = mock(UserExportWriter.class);
+
+        when(userWriteBehind.getIfAvailable()).thenReturn(writeBehind);
+        when(writeBehind.overlay(user)).thenReturn(pendingUser);
+        when(userRepository.streamAllByOrderByIdAsc()).thenReturn(Stream.of(view(user)));
+
+        userService.exportUsers(writer);
+
+        verify(writer, times(1)).write(pendingUser);
+    }
+
+    @Test
+    void exportUsersClosesTheCursorWhenTheClientIsGone() throws Exception {
+        AtomicBoolean closed = new AtomicBoolean();
+        UserExportWriter writer = mock(UserExportWriter.class);
+
+        when(userRepository.streamAllByOrderByIdAsc()).thenReturn(
+                Stream.of(view(new UserDTO(1L, "username1", "email1", 0L))).onClose(() -> closed.set(true)));
+        doThrow(new IOException("Broken pipe")).when(writer).write(any());
+
+        assertThrows(IOException.class, () -> userService.exportUsers(writer));
+        assertTrue(closed.get());
     }
 
     @Test
     void getUserByIdWithExistingUser() throws UserResourceException {
-        User user = new User(1L, "username1", "firstname.lastname@domain.fr", "password1");
+        UserDTO user = new UserDTO(1L, "username1", "firstname.lastname@domain.fr", 0L);
 
-        when(userRepository.findById(user.getId())).thenReturn(Optional.of(user));
+        when(userRepository.findById(user.id())).thenReturn(Optional.of(entity(user)));
 
-        User userFromService = userService.getUserById(user.getId());
+        UserDTO userFromService = userService.getUserById(user.id());
 
         assertNotNull(userFromService);
         assertEquals(user, userFromService);
-        verify(userRepository, times(1)).findById(user.getId());
+        verify(userRepository, times(1)).findById(user.id());
+        verify(userCache, times(1)).putUser(userFromService);
+
+    }
+
+    @Test
+    void getUserByIdFromCache() throws UserResourceException {
+        UserDTO cachedUser = new UserDTO(1L, "username1", "firstname.lastname@domain.fr", 0L);
+
+        when(userCache.getUser(1L)).thenReturn(cachedUser);
 
+        assertEquals(cachedUser, userService.getUserById(1L));
+        verify(userRepository, never()).findById(any());
+        verify(singleFlight, never()).refresh(any(), any(), any(), any());
+    }
+
+    @Test
+    void getUserByIdRefreshesAUserDueForRefresh() throws UserResourceException {
+        UserDTO cachedUser = new UserDTO(1L, "username1", "firstname.lastname@domain.fr", 0L);
+        UserDTO user = new UserDTO(1L, "username1", "new.email@domain.fr", 1L);
+
+        when(userCache.getUser(1L)).thenReturn(cachedUser);
+        when(userCache.isDueForRefresh(UserCache.USERS_CACHE, 1L)).thenReturn(true);
+        when(userRepository.findById(1L)).thenReturn(Optional.of(entity(user)));
+
+        assertEquals(cachedUser, userService.getUserById(1L));
+        verify(userCache, timeout(5000)).replaceUser(cachedUser, user);
     }
 
     @Test
@@ -89,14 +414,57 @@ class UserServiceImplTest {
 
         when(userRepository.save(userToSave)).thenReturn(user);
 
-        User userCreated = userService.createUser(createUserForm);
+        UserDTO userCreated = userService.createUser(createUserForm);
 
         assertNotNull(userCreated);
-        assertEquals(user, userCreated);
+        assertEquals(UserMapper.INSTANCE.toDto(user), userCreated);
+
+        verify(userRepository, times(1)).save(userToSave);
+    }
+
+    @Test
+    void createUserStoresTheHashedPassword() throws UserResourceException {
+        CreateUserForm createUserForm = new CreateUserForm("username1", "username1@domain.fr", "password1");
+        User userToSave = new User(null, "username1", "username1@domain.fr", "hash1");
+
+        when(passwordHasher.hash("password1")).thenReturn("hash1");
+        when(userRepository.save(userToSave)).thenReturn(new User(1L, "username1", "username1@domain.fr", "hash1", 0L));
+
+        userService.createUser(createUserForm);
 
         verify(userRepository, times(1)).save(userToSave);
     }
 
+    @Test
+    void createUserWhenTheHashingPoolIsFull() throws UserResourceException {
+        CreateUserForm createUserForm = new CreateUserForm("username1", "username1@domain.fr", "password1");
+
+        when(passwordHasher.hash("password1")).thenThrow(new UserResourceException("PasswordHashingBusy",
+                "Too many passwords are being hashed, retry later.", HttpStatus.SERVICE_UNAVAILABLE,
+                Duration.ofSeconds(1)));
+
+        UserResourceException exception = assertThrows(UserResourceException.class,
+                () -> userService.createUser(createUserForm));
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, exception.getStatus());
+        verify(userRepository, never()).save(any());
+    }
+
+    @Test
+    void createUsersWhenTheHashingPoolIsFull() throws UserResourceException {
+        CreateUserForm form = new CreateUserForm("username1", "username1@domain.fr", "password1");
+
+        when(userRepository.findExistingUsernames(List.of("username1"))).thenReturn(Set.of());
+        when(passwordHasher.hashAll(List.of("password1"))).thenThrow(new UserResourceException("PasswordHashingBusy",
+                "Too many passwords are being hashed, retry later.", HttpStatus.SERVICE_UNAVAILABLE,
+                Duration.ofSeconds(1)));
+
+        List<CreateUserResultDTO> results = userService.createUsers(List.of(form));
+
+        assertEquals(Status.ERROR, results.get(0).status());
+        verify(userRepository, never()).saveAll(any());
+    }
+
     @Test
     void creatingErrorIfAlreadyExistsTest() {
         User user = User.builder()
@@ -155,163 +523,449 @@ class UserServiceImplTest {
     }
 
     @Test
-    void updateUser() throws UserResourceException {
+    @SuppressWarnings("unchecked")
+    void createUsers() throws UserResourceException {
+        CreateUserForm valid = new CreateUserForm("username1", "username1@domain.fr", "password1");
+        CreateUserForm invalid = new CreateUserForm("username2", "not an email", "password2");
+        CreateUserForm duplicateInBatch = new CreateUserForm("username1", "other@domain.fr", "password3");
+        CreateUserForm duplicateInDatabase = new CreateUserForm("username4", "username4@domain.fr", "password4");
+
+        ConstraintViolation<CreateUserForm> violation = mock(ConstraintViolation.class);
+        when(violation.getMessage()).thenReturn("The email is not valid");
+        when(validator.validate(invalid)).thenReturn(Set.of(violation));
+
+        User userToSave = new User(null, valid.getUsername(), valid.getEmail(), valid.getPassword());
+        User userSaved = new User(10L, valid.getUsername(), valid.getEmail(), valid.getPassword(), 0L);
+
+        when(userRepository.findExistingUsernames(List.of("username1", "username4"))).thenReturn(Set.of("username4"));
+        when(userRepository.saveAll(List.of(userToSave))).thenReturn(List.of(userSaved));
+
+        List<CreateUserResultDTO> results = userService.createUsers(List.of(valid, invalid, duplicateInBatch, duplicateInDatabase));
+
+        assertEquals(List.of(Status.CREATED, Status.INVALID, Status.DUPLICATE, Status.DUPLICATE),
+                results.stream().map(CreateUserResultDTO::status).toList());
+        assertEquals(UserMapper.INSTANCE.toDto(userSaved), results.get(0).user());
+        assertEquals("The email is not valid", results.get(1).errorMessage());
+        verify(userRepository, times(1)).saveAll(List.of(userToSave));
+        verify(userCache, times(1)).putUser(UserMapper.INSTANCE.toDto(userSaved));
+        verify(userCache, times(1)).evictPagesOnCreate(10L);
+    }
 
-        User user = User.builder()
-                .id(1L)
-                .username("username1")
-                .email("firstname.lastname@domain.fr")
-                .password("password1")
-                .build();
+    @Test
+    void createUsersRetriesAChunkUserByUser() throws UserResourceException {
+        CreateUserForm first = new CreateUserForm("username1", "username1@domain.fr", "password1");
+        CreateUserForm second = new CreateUserForm("username2", "username2@domain.fr", "password2");
+
+        User firstToSave = new User(null, first.getUsername(), first.getEmail(), first.getPassword());
+        User secondToSave = new User(null, second.getUsername(), second.getEmail(), second.getPassword());
+
+        when(userRepository.findExistingUsernames(any())).thenReturn(Set.of());
+        when(userRepository.saveAll(any())).thenThrow(DataIntegrityViolationException.class);
+        when(userRepository.save(firstToSave)).thenReturn(new User(1L, first.getUsername(), first.getEmail(), first.getPassword(), 0L));
+        when(userRepository.save(secondToSave)).thenThrow(DataIntegrityViolationException.class);
+
+        List<CreateUserResultDTO> results = userService.createUsers(List.of(first, second));
+
+        assertEquals(List.of(Status.CREATED, Status.DUPLICATE), results.stream().map(CreateUserResultDTO::status).toList());
+    }
+
+    @Test
+    void importUsers() throws Exception {
+        CreateUserForm user1 = new CreateUserForm("username1", "email1@domain.fr", "password1");
+        CreateUserForm invalidUser = new CreateUserForm();
+        CreateUserForm user2 = new CreateUserForm("username2", "email2@domain.fr", "password2");
+        UserImportReader reader = mock(UserImportReader.class);
+        UserCopyLoader copyLoader = mock(UserCopyLoader.class);
+        UserCopyLoader.Session session = mock(UserCopyLoader.Session.class);
+
+        when(reader.next()).thenReturn(user1, invalidUser, user2, (CreateUserForm) null);
+        when(validator.validate(invalidUser)).thenReturn(Set.of(mock(ConstraintViolation.class)));
+        when(userCopyLoader.getIfAvailable()).thenReturn(copyLoader);
+        when(copyLoader.isSupported()).thenReturn(true);
+        when(copyLoader.open()).thenReturn(session);
+        when(session.getStaged()).thenReturn(2L);
+        when(session.merge()).thenReturn(new UserCopyLoader.MergeResult(1, 51L));
+
+        assertEquals(new ImportUsersResultDTO(1, 1, 1), userService.importUsers(reader));
+        verify(session, times(1)).add("username1", "email1@domain.fr", "password1");
+        verify(session, times(1)).add("username2", "email2@domain.fr", "password2");
+        verify(session, times(1)).close();
+        verify(userCache, times(1)).evictPagesOnCreate(51L);
+    }
+
+    @Test
+    void importUsersWaitsForTheHashingPool() throws Exception {
+        UserImportReader reader = mock(UserImportReader.class);
+        UserCopyLoader copyLoader = mock(UserCopyLoader.class);
+        UserCopyLoader.Session session = mock(UserCopyLoader.Session.class);
+
+        when(reader.next()).thenReturn(new CreateUserForm("username1", "email1@domain.fr", "password1"),
+                (CreateUserForm) null);
+        when(passwordHasher.hashAll(List.of("password1")))
+                .thenThrow(new UserResourceException("PasswordHashingBusy", "Busy", HttpStatus.SERVICE_UNAVAILABLE,
+                        Duration.ofMillis(1)))
+                .thenReturn(List.of("hash1"));
+        when(userCopyLoader.getIfAvailable()).thenReturn(copyLoader);
+        when(copyLoader.isSupported()).thenReturn(true);
+        when(copyLoader.open()).thenReturn(session);
+        when(session.getStaged()).thenReturn(1L);
+        when(session.merge()).thenReturn(new UserCopyLoader.MergeResult(1, 1L));
+
+        assertEquals(new ImportUsersResultDTO(1, 0, 0), userService.importUsers(reader));
+        verify(session, times(1)).add("username1", "email1@domain.fr", "hash1");
+    }
+
+    @Test
+    void importExistingUsersDoesNotEvictThePages() throws Exception {
+        UserImportReader reader = mock(UserImportReader.class);
+        UserCopyLoader copyLoader = mock(UserCopyLoader.class);
+        UserCopyLoader.Session session = mock(UserCopyLoader.Session.class);
+
+        when(reader.next()).thenReturn(new CreateUserForm("username1", "email1@domain.fr", "password1"),
+                (CreateUserForm) null);
+        when(userCopyLoader.getIfAvailable()).thenReturn(copyLoader);
+        when(copyLoader.isSupported()).thenReturn(true);
+        when(copyLoader.open()).thenReturn(session);
+        when(session.getStaged()).thenReturn(1L);
+        when(session.merge()).thenReturn(new UserCopyLoader.MergeResult(0, null));
+
+        assertEquals(new ImportUsersResultDTO(0, 1, 0), userService.importUsers(reader));
+        verify(userCache, never()).evictPagesOnCreate(any());
+    }
+
+    @Test
+    void importUsersFailsWhenTheMergeFails() throws Exception {
+        UserImportReader reader = mock(UserImportReader.class);
+        UserCopyLoader copyLoader = mock(UserCopyLoader.class);
+        UserCopyLoader.Session session = mock(UserCopyLoader.Session.class);
+
+        when(userCopyLoader.getIfAvailable()).thenReturn(copyLoader);
+        when(copyLoader.isSupported()).thenReturn(true);
+        when(copyLoader.open()).thenReturn(session);
+        when(session.merge()).thenThrow(new SQLException("Connection lost"));
+
+        UserResourceException exception = assertThrows(UserResourceException.class,
+                () -> userService.importUsers(reader));
+
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, exception.getStatus());
+        verify(session, times(1)).close();
+        verifyNoInteractions(userCache);
+    }
+
+    @Test
+    void importUsersWithoutPostgres() {
+        UserResourceException exception = assertThrows(UserResourceException.class,
+                () -> userService.importUsers(mock(UserImportReader.class)));
+
+        assertEquals(HttpStatus.NOT_IMPLEMENTED, exception.getStatus());
+    }
+
+    @Test
+    void importUsersRefusesANonPostgresDatabaseBeforeReading() throws Exception {
+        UserImportReader reader = mock(UserImportReader.class);
+        UserCopyLoader copyLoader = mock(UserCopyLoader.class);
+
+        when(userCopyLoader.getIfAvailable()).thenReturn(copyLoader);
+
+        UserResourceException exception = assertThrows(UserResourceException.class,
+                () -> userService.importUsers(reader));
+
+        assertEquals(HttpStatus.NOT_IMPLEMENTED, exception.getStatus());
+        verifyNoInteractions(reader);
+        verify(copyLoader, never()).open();
+    }
+
+    @Test
+    void importUsersLoadsBySegments() throws Exception {
+        UserImportReader reader = mock(UserImportReader.class);
+        UserCopyLoader copyLoader = mock(UserCopyLoader.class);
+        UserCopyLoader.Session first = mock(UserCopyLoader.Session.class);
+        UserCopyLoader.Session second = mock(UserCopyLoader.Session.class);
+        AtomicInteger read = new AtomicInteger();
+
+        when(reader.next()).thenAnswer(invocation -> read.incrementAndGet() <= UserServiceImpl.IMPORT_SEGMENT_SIZE + 1
+                ? new CreateUserForm("username" + read.get(), "email@domain.fr", "password") : null);
+        when(userCopyLoader.getIfAvailable()).thenReturn(copyLoader);
+        when(copyLoader.isSupported()).thenReturn(true);
+        when(copyLoader.open()).thenReturn(first, second);
+        when(first.getStaged()).thenReturn((long) UserServiceImpl.IMPORT_SEGMENT_SIZE);
+        when(first.merge()).thenReturn(new UserCopyLoader.MergeResult(UserServiceImpl.IMPORT_SEGMENT_SIZE, 51L));
+        when(second.getStaged()).thenReturn(1L);
+        when(second.merge()).thenThrow(new SQLException("Connection lost"));
+
+        UserResourceException exception = assertThrows(UserResourceException.class,
+                () -> userService.importUsers(reader));
+
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, exception.getStatus());
+        verify(first, times(UserServiceImpl.IMPORT_SEGMENT_SIZE)).add(any(), any(), any());
+        verify(second, times(1)).add("username" + (UserServiceImpl.IMPORT_SEGMENT_SIZE + 1), "email@domain.fr",
+                "password");
+        verify(first, times(1)).close();
+        verify(second, times(1)).close();
+        // The first segment is committed, its users must show up in the pages.
+        verify(userCache, times(1)).evictPagesOnCreate(51L);
+    }
+
+    @Test
+    void importUsersMapsTheUnsupportedDatabase() throws Exception {
+        UserCopyLoader copyLoader = mock(UserCopyLoader.class);
 
+        when(userCopyLoader.getIfAvailable()).thenReturn(copyLoader);
+        when(copyLoader.isSupported()).thenReturn(true);
+        when(copyLoader.open()).thenThrow(mock(UserCopyLoader.UnsupportedDatabaseException.class));
+
+        UserResourceException exception = assertThrows(UserResourceException.class,
+                () -> userService.importUsers(mock(UserImportReader.class)));
+
+        assertEquals(HttpStatus.NOT_IMPLEMENTED, exception.getStatus());
+    }
+
+    @Test
+    void updateUser() throws UserResourceException {
         UpdateUserForm updateUserForm = UpdateUserForm.builder()
-                .id(user.getId())
+                .id(1L)
                 .email("new.email@domain.fr")
                 .password("new_password")
                 .build();
+        UserDTO userUpdatedExpected = new UserDTO(1L, "username1", "new.email@domain.fr", 1L);
 
-        User userUpdatedExpected = User.builder()
-                .id(user.getId())
-                .username(user.getUsername())
-                .email(updateUserForm.getEmail())
-                .password(updateUserForm.getPassword())
-                .build();
+        when(userRepository.updateUser(1L, "new.email@domain.fr", "new_password", null)).thenReturn(1);
+        when(userRepository.findById(1L)).thenReturn(Optional.of(entity(userUpdatedExpected)));
 
-        when(userRepository.findById(updateUserForm.getId())).thenReturn(Optional.of(user));
-        when(userRepository.save(userUpdatedExpected)).thenReturn(userUpdatedExpected);
+        UserDTO userUpdated = userService.updateUser(updateUserForm, null);
+
+        assertEquals(userUpdatedExpected, userUpdated);
+        // The user is only read back once updated.
+        InOrder inOrder = inOrder(userRepository);
+        inOrder.verify(userRepository).updateUser(1L, "new.email@domain.fr", "new_password", null);
+        inOrder.verify(userRepository).findById(1L);
+        verify(userRepository, never()).save(any());
+        verify(userCache, times(1)).evictPagesOnUpdate(1L);
+    }
+
+    @Test
+    void updateUserStoresTheHashedPassword() throws UserResourceException {
+        UpdateUserForm updateUserForm = UpdateUserForm.builder()
+                .id(1L)
+                .password("new_password")
+                .build();
 
-        User agencyUpdated = userService.updateUser(updateUserForm);
+        when(passwordHasher.hash("new_password")).thenReturn("new_hash");
+        when(userRepository.updateUser(1L, null, "new_hash", null)).thenReturn(1);
+        when(userRepository.findById(1L))
+                .thenReturn(Optional.of(entity(new UserDTO(1L, "username1", "username1@domain.fr", 1L))));
 
-        assertNotNull(agencyUpdated);
-        assertEquals(userUpdatedExpected, agencyUpdated);
+        userService.updateUser(updateUserForm, null);
 
-        verify(userRepository, times(1)).save(userUpdatedExpected);
-        verify(userRepository, times(1)).findById(user.getId());
+        verify(userRepository, times(1)).updateUser(1L, null, "new_hash", null);
     }
 
     @Test
-    void testUpdateNonexistentAgency() {
-
-        User user = User.builder()
+    void updateCachedUserRunsASingleStatement() throws UserResourceException {
+        UpdateUserForm updateUserForm = UpdateUserForm.builder()
                 .id(1L)
-                .username("username1")
-                .email("firstname.lastname@domain.fr")
-                .password("password1")
+                .email("new.email@domain.fr")
                 .build();
 
+        when(userCache.getUser(1L)).thenReturn(new UserDTO(1L, "username1", "firstname.lastname@domain.fr", 4L));
+        when(userRepository.updateUser(1L, "new.email@domain.fr", null, 4L)).thenReturn(1);
+
+        UserDTO userUpdated = userService.updateUser(updateUserForm, 4L);
+
+        assertEquals(new UserDTO(1L, "username1", "new.email@domain.fr", 5L), userUpdated);
+        verify(userRepository, times(1)).updateUser(any(), any(), any(), any());
+        verifyNoMoreInteractions(userRepository);
+    }
+
+    @Test
+    void updateStaleCachedUser() throws UserResourceException {
         UpdateUserForm updateUserForm = UpdateUserForm.builder()
+                .id(1L)
                 .email("new.email@domain.fr")
-                .password("new_password")
                 .build();
+        UserDTO userUpdatedExpected = new UserDTO(1L, "username1", "new.email@domain.fr", 6L);
 
-        User userUpdatedExpected = User.builder()
-                .id(user.getId())
-                .username(user.getUsername())
-                .email(updateUserForm.getEmail())
-                .password(updateUserForm.getPassword())
-                .build();
+        when(userCache.getUser(1L)).thenReturn(new UserDTO(1L, "username1", "firstname.lastname@domain.fr", 4L));
+        when(userRepository.updateUser(1L, "new.email@domain.fr", null, 4L)).thenReturn(0);
+        when(userRepository.updateUser(1L, "new.email@domain.fr", null, null)).thenReturn(1);
+        when(userRepository.findById(1L)).thenReturn(Optional.of(entity(userUpdatedExpected)));
 
+        assertEquals(userUpdatedExpected, userService.updateUser(updateUserForm, null));
+        verify(userCache, times(1)).evictUser(1L);
+    }
 
-        when(userRepository.findById(updateUserForm.getId())).thenReturn(Optional.empty());
+    @Test
+    void updateUserWriteBehind() throws Exception {
+        UpdateUserForm updateUserForm = UpdateUserForm.builder()
+                .id(1L)
+                .email("new.email@domain.fr")
+                .build();
+        UserDTO user = new UserDTO(1L, "username1", "firstname.lastname@domain.fr", 4L);
+        UserDTO userUpdatedExpected = new UserDTO(1L, "username1", "new.email@domain.fr", 5L);
+        UserWriteBehind writeBehind = mock(UserWriteBehind.class);
 
-        assertThrows(UserResourceException.class, () -> userService.updateUser(updateUserForm));
+        when(userWriteBehind.getIfAvailable()).thenReturn(writeBehind);
+        when(userCache.getUser(1L)).thenReturn(user);
+        when(writeBehind.update(user, 0L, "new.email@domain.fr", null, 4L)).thenReturn(userUpdatedExpected);
 
-        verify(userRepository, times(1)).findById(updateUserForm.getId());
+        assertEquals(userUpdatedExpected, userService.updateUser(updateUserForm, 4L));
+        verify(userRepository, never()).updateUser(any(), any(), any(), any());
+        verify(userCache, times(1)).evictPagesOnUpdate(1L);
     }
 
     @Test
-    void testErrorIfDescriptionUpdatedAlreadyExists() {
-
-        User user = User.builder()
+    void updateUserWriteBehindReadsAgainAUserFlushedMeanwhile() throws Exception {
+        UpdateUserForm updateUserForm = UpdateUserForm.builder()
                 .id(1L)
-                .username("username1")
-                .email("firstname.lastname@domain.fr")
-                .password("password1")
+                .email("new.email@domain.fr")
                 .build();
+        UserDTO cachedUser = new UserDTO(1L, "username1", "firstname.lastname@domain.fr", 4L);
+        UserDTO flushedUser = new UserDTO(1L, "username1", "flushed@domain.fr", 5L);
+        UserDTO userUpdatedExpected = new UserDTO(1L, "username1", "new.email@domain.fr", 6L);
+        UserWriteBehind writeBehind = mock(UserWriteBehind.class);
+
+        when(userWriteBehind.getIfAvailable()).thenReturn(writeBehind);
+        when(writeBehind.getFlushCount()).thenReturn(3L, 4L);
+        when(userCache.getUser(1L)).thenReturn(cachedUser);
+        when(userRepository.findById(1L)).thenReturn(Optional.of(entity(flushedUser)));
+        when(writeBehind.update(cachedUser, 3L, "new.email@domain.fr", null, null)).thenReturn(null);
+        when(writeBehind.update(flushedUser, 4L, "new.email@domain.fr", null, null)).thenReturn(userUpdatedExpected);
+
+        assertEquals(userUpdatedExpected, userService.updateUser(updateUserForm, null));
+        verify(userCache, times(1)).getUser(1L);
+    }
 
+    @Test
+    void getUserByIdOverlaysThePendingUpdate() throws UserResourceException {
+        UserDTO user = new UserDTO(1L, "username1", "firstname.lastname@domain.fr", 4L);
+        UserDTO pendingUser = new UserDTO(1L, "username1", "new.email@domain.fr", 5L);
+        UserWriteBehind writeBehind = mock(UserWriteBehind.class);
+
+        when(userWriteBehind.getIfAvailable()).thenReturn(writeBehind);
+        when(userRepository.findById(1L)).thenReturn(Optional.of(entity(user)));
+        when(writeBehind.overlay(user)).thenReturn(pendingUser);
+
+        assertEquals(pendingUser, userService.getUserById(1L));
+    }
+
+    @Test
+    void updateUserWithAnotherVersion() {
         UpdateUserForm updateUserForm = UpdateUserForm.builder()
+                .id(1L)
                 .email("new.email@domain.fr")
-                .password("new_password")
                 .build();
 
-        User userUpdatedExpected = User.builder()
-                .id(user.getId())
-                .username(user.getUsername())
-                .email(updateUserForm.getEmail())
-                .password(updateUserForm.getPassword())
+        when(userRepository.updateUser(1L, "new.email@domain.fr", null, 3L)).thenReturn(0);
+        when(userRepository.existsById(1L)).thenReturn(true);
+
+        UserResourceException exception = assertThrows(UserResourceException.class,
+                () -> userService.updateUser(updateUserForm, 3L));
+
+        assertEquals(HttpStatus.PRECONDITION_FAILED, exception.getStatus());
+        verify(userCache, times(1)).evictUser(1L);
+    }
+
+    @Test
+    void testUpdateNonexistentAgency() {
+        UpdateUserForm updateUserForm = UpdateUserForm.builder()
+                .id(1L)
+                .email("new.email@domain.fr")
+                .password("new_password")
                 .build();
 
-        when(userRepository.findById(updateUserForm.getId())).thenReturn(Optional.empty());
-        doThrow(DataIntegrityViolationException.class).when(userRepository).save(userUpdatedExpected);
+        when(userRepository.updateUser(1L, "new.email@domain.fr", "new_password", null)).thenReturn(0);
 
-        assertThrows(UserResourceException.class, () -> userService.updateUser(updateUserForm));
+        UserResourceException exception = assertThrows(UserResourceException.class,
+                () -> userService.updateUser(updateUserForm, null));
 
-        verify(userRepository, times(1)).findById(updateUserForm.getId());
+        assertEquals(HttpStatus.NOT_FOUND, exception.getStatus());
+        verify(userRepository, never()).existsById(any());
+        verify(userCache, never()).evictPagesOnUpdate(any());
     }
 
     @Test
-    void testErrorWhileUpdatingTheAgency() {
-        User user = User.builder()
-                .id(1L)
-                .username("username1")
-                .email("firstname.lastname@domain.fr")
-                .password("password1")
+    void testUpdateWithoutId() {
+        UpdateUserForm updateUserForm = UpdateUserForm.builder()
+                .email("new.email@domain.fr")
                 .build();
 
+        UserResourceException exception = assertThrows(UserResourceException.class,
+                () -> userService.updateUser(updateUserForm, null));
+
+        assertEquals(HttpStatus.NOT_FOUND, exception.getStatus());
+        verifyNoInteractions(userRepository);
+    }
+
+    @Test
+    void testErrorIfDescriptionUpdatedAlreadyExists() {
         UpdateUserForm updateUserForm = UpdateUserForm.builder()
+                .id(1L)
                 .email("new.email@domain.fr")
                 .password("new_password")
                 .build();
 
-        User userUpdatedExpected = User.builder()
-                .id(user.getId())
-                .username(user.getUsername())
-                .email(updateUserForm.getEmail())
-                .password(updateUserForm.getPassword())
+        when(userRepository.updateUser(1L, "new.email@domain.fr", "new_password", null))
+                .thenThrow(DataIntegrityViolationException.class);
+
+        UserResourceException exception = assertThrows(UserResourceException.class,
+                () -> userService.updateUser(updateUserForm, null));
+
+        assertEquals(HttpStatus.CONFLICT, exception.getStatus());
+    }
+
+    @Test
+    void testErrorWhileUpdatingTheAgency() {
+        UpdateUserForm updateUserForm = UpdateUserForm.builder()
+                .id(1L)
+                .email("new.email@domain.fr")
+                .password("new_password")
                 .build();
 
-        when(userRepository.findById(updateUserForm.getId())).thenReturn(Optional.empty());
-        doThrow(IllegalArgumentException.class).when(userRepository).save(userUpdatedExpected);
+        when(userRepository.updateUser(1L, "new.email@domain.fr", "new_password", null))
+                .thenThrow(IllegalArgumentException.class);
 
-        assertThrows(UserResourceException.class, () -> userService.updateUser(updateUserForm));
+        UserResourceException exception = assertThrows(UserResourceException.class,
+                () -> userService.updateUser(updateUserForm, null));
 
-        verify(userRepository, times(1)).findById(updateUserForm.getId());
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, exception.getStatus());
     }
 
 
     @Test
     void deleteUser() throws UserResourceException {
-        User userToDelete = new User(1L, "username1", "firstname.lastname@domain.fr", "password1");
-
-        when(userRepository.findById(userToDelete.getId())).thenReturn(Optional.of(userToDelete));
-        doNothing().when(userRepository).delete(userToDelete);
+        when(userRepository.deleteUserById(1L)).thenReturn(1);
 
-        userService.deleteUser(userToDelete.getId());
+        userService.deleteUser(1L);
 
-        verify(userRepository, times(1)).delete(userToDelete);
-        verify(userRepository, times(1)).findById(userToDelete.getId());
+        verify(userRepository, times(1)).deleteUserById(1L);
+        verify(userRepository, never()).findById(any());
+        verify(userCache, times(1)).evictPagesOnDelete(1L);
     }
 
     @Test
     void testDeleteNonexistentUser() {
-        User userToDelete = new User(1L, "username1", "firstname.lastname@domain.fr", "password1");
+        when(userRepository.deleteUserById(1L)).thenReturn(0);
 
-        when(userRepository.findById(userToDelete.getId())).thenReturn(Optional.empty());
+        UserResourceException exception = assertThrows(UserResourceException.class, () -> userService.deleteUser(1L));
 
-        assertThrows(UserResourceException.class, () -> userService.deleteUser(userToDelete.getId()));
-
-        verify(userRepository, times(1)).findById(userToDelete.getId());
+        assertEquals(HttpStatus.NOT_FOUND, exception.getStatus());
+        verify(userCache, never()).evictPagesOnDelete(any());
     }
 
     @Test
     void testErrorWhileDeletingTheUser() {
-        User userToDelete = new User(1L, "username1", "firstname.lastname@domain.fr", "password1");
+        when(userRepository.deleteUserById(1L)).thenThrow(new IllegalArgumentException());
+
+        UserResourceException exception = assertThrows(UserResourceException.class, () -> userService.deleteUser(1L));
 
-        when(userRepository.findById(userToDelete.getId())).thenReturn(Optional.empty());
-        doThrow(new IllegalArgumentException()).when(userRepository).delete(userToDelete);
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, exception.getStatus());
+    }
 
-        assertThrows(UserResourceException.class, () -> userService.deleteUser(userToDelete.getId()));
+    private static User entity(UserDTO user) {
+        return new User(user.id(), user.username(), user.email(), "password_hash", user.version());
+    }
 
-        verify(userRepository, times(1)).findById(userToDelete.getId());
+    private static UserView view(UserDTO user) {
+        return new UserView(user.id(), user.username(), user.email(), user.version());
     }
-}
\ No newline at end of file
+}
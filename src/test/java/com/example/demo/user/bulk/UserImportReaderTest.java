@@ -0,0 +1,93 @@
+package com.example.demo.user.bulk;
+
+import com.example.demo.user.dto.CreateUserForm;
+import com.example.demo.user.export.UserExportFormat;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class UserImportReaderTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void readNdjson() throws IOException {
+        List<CreateUserForm> forms = read(UserExportFormat.NDJSON, """
+                {"username":"username1","email":"email1@domain.fr","password":"password1"}
+
+                {"username":"username2",
+                {"username":"username3","email":"email3@domain.fr","password":"password3"}
+                """);
+
+        assertEquals(List.of(
+                new CreateUserForm("username1", "email1@domain.fr", "password1"),
+                new CreateUserForm(),
+                new CreateUserForm("username3", "email3@domain.fr", "password3")), forms);
+    }
+
+    @Test
+    void readCsvWithTheColumnsOfTheHeader() throws IOException {
+        List<CreateUserForm> forms = read(UserExportFormat.CSV,
+                "password,username,email\r\n"
+                        + "password1,username1,email1@domain.fr\r\n"
+                        + "\"pass,\"\"word\"\"\",username2,email2@domain.fr\r\n"
+                        + "\"multi\n\nline\",username3,email3@domain.fr\n");
+
+        assertEquals(List.of(
+                new CreateUserForm("username1", "email1@domain.fr", "password1"),
+                new CreateUserForm("username2", "email2@domain.fr", "pass,\"word\""),
+                new CreateUserForm("username3", "email3@domain.fr", "multi\n\nline")), forms);
+    }
+
+    @Test
+    void readCsvLineWithMissingValuesAsEmptyForm() throws IOException {
+        List<CreateUserForm> forms = read(UserExportFormat.CSV, "username,email,password\nusername1,email1\n");
+
+        assertEquals(List.of(new CreateUserForm()), forms);
+    }
+
+    @Test
+    void readNdjsonLineTooLongAsEmptyForm() throws IOException {
+        List<CreateUserForm> forms = read(UserExportFormat.NDJSON,
+                "{\"username\":\"" + "x".repeat(UserImportReader.MAX_RECORD_LENGTH) + "\"}\n"
+                        + "{\"username\":\"username2\",\"email\":\"email2@domain.fr\",\"password\":\"password2\"}\n");
+
+        assertEquals(List.of(
+                new CreateUserForm(),
+                new CreateUserForm("username2", "email2@domain.fr", "password2")), forms);
+    }
+
+    @Test
+    void readCsvUnterminatedQuoteUpToTheMaximumLength() throws IOException {
+        String line = "x".repeat(100) + "\n";
+        List<CreateUserForm> forms = read(UserExportFormat.CSV, "username,email,password\n"
+                + "\"unterminated,email1@domain.fr,password1\n"
+                + line.repeat(UserImportReader.MAX_RECORD_LENGTH / line.length() + 1)
+                + "username2,email2@domain.fr,password2\n");
+
+        assertEquals(new CreateUserForm(), forms.get(0));
+        assertEquals(new CreateUserForm("username2", "email2@domain.fr", "password2"), forms.get(forms.size() - 1));
+    }
+
+    @Test
+    void readEmptyCsv() throws IOException {
+        assertEquals(List.of(), read(UserExportFormat.CSV, ""));
+    }
+
+    private List<CreateUserForm> read(UserExportFormat format, String content) throws IOException {
+        List<CreateUserForm> forms = new ArrayList<>();
+        try (UserImportReader reader = UserImportReader.of(format, objectMapper,
+                new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8)) {
+            for (CreateUserForm form = reader.next(); form != null; form = reader.next())
+                forms.add(form);
+        }
+        return forms;
+    }
+}
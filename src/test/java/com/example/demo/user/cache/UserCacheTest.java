@@ -0,0 +1,141 @@
+package com.example.demo.user.cache;
+
+import com.example.demo.config.CacheSpecProperties;
+import com.example.demo.user.dto.UserDTO;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserCacheTest {
+
+    private final Pageable firstPage = PageRequest.of(0, 2, Sort.by("id"));
+    private final Pageable secondPage = PageRequest.of(1, 2, Sort.by("id"));
+    private final Pageable lastPage = PageRequest.of(2, 2, Sort.by("id"));
+    private final Pageable pageByEmail = PageRequest.of(0, 2, Sort.by("email"));
+
+    private UserCache userCache;
+
+    @BeforeEach
+    void setUp() {
+        userCache = new UserCache(new CaffeineCacheManager(), new CacheSpecProperties());
+
+        putPage(firstPage, 1L, 2L);
+        putPage(secondPage, 3L, 4L);
+        putPage(lastPage, 5L);
+        putPage(pageByEmail, 2L, 5L);
+    }
+
+    @Test
+    void updateKeepsThePagesSortedById() {
+        userCache.evictPagesOnUpdate(3L);
+
+        assertEquals(List.of(1L, 2L), userCache.getPageIds(firstPage));
+        assertEquals(List.of(3L, 4L), userCache.getPageIds(secondPage));
+        assertEquals(List.of(5L), userCache.getPageIds(lastPage));
+        assertEquals(5L, userCache.getTotal());
+        assertNull(userCache.getPageIds(pageByEmail));
+    }
+
+    @Test
+    void createOnlyEvictsTheLastPage() {
+        userCache.evictPagesOnCreate(6L);
+
+        assertEquals(List.of(1L, 2L), userCache.getPageIds(firstPage));
+        assertEquals(List.of(3L, 4L), userCache.getPageIds(secondPage));
+        assertNull(userCache.getPageIds(lastPage));
+        assertNull(userCache.getTotal());
+    }
+
+    @Test
+    void deleteOnlyEvictsThePagesFromTheDeletedUser() {
+        userCache.evictPagesOnDelete(3L);
+
+        assertEquals(List.of(1L, 2L), userCache.getPageIds(firstPage));
+        assertNull(userCache.getPageIds(secondPage));
+        assertNull(userCache.getPageIds(lastPage));
+        assertNull(userCache.getTotal());
+    }
+
+    @Test
+    void sortedByIdOnlyAppliesToUnsortedPages() {
+        assertEquals(firstPage, UserCache.sortedById(PageRequest.of(0, 2)));
+        assertEquals(pageByEmail, UserCache.sortedById(pageByEmail));
+    }
+
+    @Test
+    void entriesAreDueForRefreshLateInTheirLifetime() {
+        AtomicLong nanos = new AtomicLong();
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+        cacheManager.setCaffeine(Caffeine.newBuilder().expireAfterWrite(Duration.ofMinutes(10)).ticker(nanos::get));
+        CacheSpecProperties properties = new CacheSpecProperties();
+        properties.setRefreshAhead(0.8);
+        UserCache refreshedCache = new UserCache(cacheManager, properties);
+
+        refreshedCache.putUser(new UserDTO(1L, "username1", "email1", 0L));
+        nanos.addAndGet(Duration.ofMinutes(7).toNanos());
+        assertFalse(refreshedCache.isDueForRefresh(UserCache.USERS_CACHE, 1L));
+
+        nanos.addAndGet(Duration.ofMinutes(2).toNanos());
+        assertTrue(refreshedCache.isDueForRefresh(UserCache.USERS_CACHE, 1L));
+        assertFalse(refreshedCache.isDueForRefresh(UserCache.USERS_CACHE, 2L));
+
+        properties.setRefreshAhead(0);
+        assertFalse(refreshedCache.isDueForRefresh(UserCache.USERS_CACHE, 1L));
+    }
+
+    @Test
+    void reloadedEntriesOnlyReplaceTheEntriesTheyWereReloadedFrom() {
+        UserDTO user = new UserDTO(1L, "username1", "email1", 0L);
+        UserDTO reloadedUser = new UserDTO(1L, "username1", "new.email1", 1L);
+
+        userCache.putUser(user);
+        userCache.replaceUser(user, reloadedUser);
+        assertEquals(reloadedUser, userCache.getUser(1L));
+
+        userCache.evictUser(1L);
+        userCache.replaceUser(reloadedUser, new UserDTO(1L, "username1", "new.email1", 2L));
+        assertNull(userCache.getUser(1L));
+
+        userCache.replacePageIds(firstPage, List.of(1L, 2L), List.of(1L, 3L));
+        assertEquals(List.of(1L, 3L), userCache.getPageIds(firstPage));
+
+        userCache.evictPagesOnDelete(1L);
+        userCache.replacePageIds(firstPage, List.of(1L, 3L), List.of(3L, 4L));
+        assertNull(userCache.getPageIds(firstPage));
+    }
+
+    @Test
+    void hottestUsersAreTheMostAccessed() {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+        cacheManager.setCaffeine(Caffeine.newBuilder().maximumSize(4).executor(Runnable::run));
+        UserCache boundedCache = new UserCache(cacheManager, new CacheSpecProperties());
+
+        for (long id = 1; id <= 3; id++)
+            boundedCache.putUser(new UserDTO(id, "username" + id, "email" + id, 0L));
+        for (int i = 0; i < 10; i++)
+            boundedCache.getUser(2L);
+
+        assertEquals(2L, boundedCache.getHottestUserIds(1).get(0));
+        assertEquals(3, boundedCache.getHottestUserIds(10).size());
+        assertEquals(List.of(), userCache.getHottestUserIds(10));
+    }
+
+    private void putPage(Pageable pageable, Long... ids) {
+        List<UserDTO> users = Arrays.stream(ids)
+                .map(id -> new UserDTO(id, "username" + id, "email" + id, 0L))
+                .toList();
+        userCache.putPage(pageable, new PageImpl<>(users, pageable, 5L));
+    }
+}
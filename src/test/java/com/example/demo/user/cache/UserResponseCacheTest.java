@@ -0,0 +1,102 @@
+package com.example.demo.user.cache;
+
+import com.example.demo.config.CacheSpecProperties;
+import com.example.demo.user.dto.UserDTO;
+import com.example.demo.user.util.UserETags;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserResponseCacheTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private UserCache userCache;
+    private UserResponseCache userResponseCache;
+
+    @BeforeEach
+    void setUp() {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+        userCache = new UserCache(cacheManager, new CacheSpecProperties());
+        userResponseCache = new UserResponseCache(cacheManager, new CacheSpecProperties(), objectMapper);
+    }
+
+    @Test
+    void writesTheCachedBytesWithoutLoadingAgain() throws Exception {
+        UserDTO user = new UserDTO(1L, "username1", "email1", 0L);
+        AtomicInteger loads = new AtomicInteger();
+
+        writeUser(user, loads, new MockHttpServletRequest());
+        MockHttpServletResponse response = writeUser(user, loads, new MockHttpServletRequest());
+
+        assertEquals(1, loads.get());
+        assertArrayEquals(objectMapper.writeValueAsBytes(user), response.getContentAsByteArray());
+        assertEquals(response.getContentAsByteArray().length, response.getContentLength());
+        assertEquals(UserETags.of(user), response.getHeader(HttpHeaders.ETAG));
+    }
+
+    @Test
+    void matchingETagIsNotModified() {
+        UserDTO user = new UserDTO(1L, "username1", "email1", 0L);
+        AtomicInteger loads = new AtomicInteger();
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/users/1");
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, UserETags.of(user));
+        MockHttpServletResponse response = writeUser(user, loads, request);
+
+        assertEquals(HttpStatus.NOT_MODIFIED.value(), response.getStatus());
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    void writesInvalidateTheResponses() {
+        AtomicInteger loads = new AtomicInteger();
+
+        writeUser(new UserDTO(1L, "username1", "email1", 0L), loads, new MockHttpServletRequest());
+        writeUser(new UserDTO(2L, "username2", "email2", 0L), loads, new MockHttpServletRequest());
+        writePage(PageRequest.of(0, 5), loads);
+
+        userCache.evictPagesOnUpdate(1L);
+
+        writeUser(new UserDTO(1L, "username1", "new.email1", 1L), loads, new MockHttpServletRequest());
+        writeUser(new UserDTO(2L, "username2", "email2", 0L), loads, new MockHttpServletRequest());
+        writePage(PageRequest.of(0, 5), loads);
+        assertEquals(4, loads.get());
+
+        userCache.evictPagesOnCreate(3L);
+
+        writePage(PageRequest.of(0, 5), loads);
+        assertEquals(5, loads.get());
+    }
+
+    private MockHttpServletResponse writeUser(UserDTO user, AtomicInteger loads, MockHttpServletRequest request) {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        userResponseCache.writeUser(new ServletWebRequest(request, response), user.id(), () -> {
+            loads.incrementAndGet();
+            return user;
+        });
+        return response;
+    }
+
+    private void writePage(Pageable pageable, AtomicInteger loads) {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        userResponseCache.writePage(new ServletWebRequest(new MockHttpServletRequest(), response), pageable, () -> {
+            loads.incrementAndGet();
+            return new PageImpl<UserDTO>(List.of(), pageable, 0);
+        });
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.demo.user.password;
+
+import com.example.demo.config.PasswordHashingProperties;
+import com.example.demo.user.UserResourceException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PasswordHasherTest {
+
+    @Test
+    void hashesWithTheConfiguredCost() throws UserResourceException {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        try (PasswordHasher passwordHasher = new PasswordHasher(properties(4, 2, 10), meterRegistry)) {
+            String hash = passwordHasher.hash("password1");
+
+            assertTrue(hash.startsWith("$2a$04$"));
+            assertTrue(passwordHasher.matches("password1", hash));
+            assertFalse(passwordHasher.matches("password2", hash));
+            assertEquals(1, meterRegistry.get("password.hashing").timer().count());
+        }
+    }
+
+    @Test
+    void hashAllKeepsTheOrder() throws UserResourceException {
+        try (PasswordHasher passwordHasher = new PasswordHasher(properties(4, 2, 10), new SimpleMeterRegistry())) {
+            List<String> hashes = passwordHasher.hashAll(List.of("password1", "password2", "password3"));
+
+            assertEquals(3, hashes.size());
+            assertTrue(passwordHasher.matches("password1", hashes.get(0)));
+            assertTrue(passwordHasher.matches("password2", hashes.get(1)));
+            assertTrue(passwordHasher.matches("password3", hashes.get(2)));
+        }
+    }
+
+    @Test
+    void rejectsWhenThePoolIsSaturated() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        // A single thread and a single queued hash : at this cost the third hash is submitted long before the first ends.
+        try (PasswordHasher passwordHasher = new PasswordHasher(properties(14, 1, 1), meterRegistry)) {
+            UserResourceException exception = assertThrows(UserResourceException.class,
+                    () -> passwordHasher.hashAll(Collections.nCopies(3, "password1")));
+
+            assertEquals(HttpStatus.SERVICE_UNAVAILABLE, exception.getStatus());
+            assertEquals(Duration.ofSeconds(3), exception.getRetryAfter());
+            assertEquals(1.0, meterRegistry.get("password.hashing.rejected").counter().count());
+        }
+    }
+
+    private static PasswordHashingProperties properties(int cost, int threads, int queueCapacity) {
+        PasswordHashingProperties properties = new PasswordHashingProperties();
+        properties.setCost(cost);
+        properties.setThreads(threads);
+        properties.setQueueCapacity(queueCapacity);
+        properties.setRetryAfter(Duration.ofSeconds(3));
+        return properties;
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.demo.user.writebehind;
+
+import com.example.demo.config.WriteBehindProperties;
+import com.example.demo.user.User;
+import com.example.demo.user.UserRepository;
+import com.example.demo.user.cache.UserCache;
+import com.example.demo.user.dto.UserDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Flushes the pending updates into an embedded H2 database, through the statement the mocked repository of
+ * UserWriteBehindTest only records.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.database=h2",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.hbm2ddl.import_files=",
+})
+class UserWriteBehindDatabaseTest {
+
+    @TempDir
+    private Path directory;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Test
+    void flushWritesTheCoalescedUpdates() throws Exception {
+        User user = new User(null, "username1", "firstname.lastname@domain.fr", "password");
+        entityManager.persist(user);
+        entityManager.flush();
+        UserDTO userDTO = new UserDTO(user.getId(), "username1", "firstname.lastname@domain.fr", 0L);
+        UserCache userCache = mock(UserCache.class);
+
+        WriteBehindProperties properties = new WriteBehindProperties();
+        properties.setFlushInterval(Duration.ofHours(1));
+        properties.setMaxLag(Duration.ofHours(1));
+        try (UserWriteBehind writeBehind = new UserWriteBehind(properties,
+                new UserUpdateLog(directory.resolve("user-updates.log"), false), userRepository, userCache,
+                new TransactionTemplate(transactionManager), new SimpleMeterRegistry())) {
+            writeBehind.update(userDTO, writeBehind.getFlushCount(), "new.email@domain.fr", null, null);
+            writeBehind.update(userDTO, writeBehind.getFlushCount(), null, "new_password", 1L);
+
+            writeBehind.flush();
+
+            assertEquals(0, writeBehind.getPendingCount());
+        }
+
+        entityManager.clear();
+        assertEquals(new User(user.getId(), "username1", "new.email@domain.fr", "new_password", 2L),
+                entityManager.find(User.class, user.getId()));
+        verify(userCache, times(1)).evictUsers(List.of(user.getId()));
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.demo.user.writebehind;
+
+import com.example.demo.config.WriteBehindProperties;
+import com.example.demo.user.UserRepository;
+import com.example.demo.user.UserResourceException;
+import com.example.demo.user.cache.UserCache;
+import com.example.demo.user.dto.UserDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class UserWriteBehindTest {
+
+    private static final UserDTO USER = new UserDTO(1L, "username1", "firstname.lastname@domain.fr", 4L);
+
+    @TempDir
+    private Path directory;
+
+    private UserRepository userRepository;
+    private UserCache userCache;
+    private UserUpdateLog updateLog;
+    private SimpleMeterRegistry meterRegistry;
+    private UserWriteBehind writeBehind;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        userRepository = mock(UserRepository.class);
+        userCache = mock(UserCache.class);
+        updateLog = new UserUpdateLog(directory.resolve("user-updates.log"), false);
+        meterRegistry = new SimpleMeterRegistry();
+        writeBehind = newWriteBehind(updateLog);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        writeBehind.close();
+    }
+
+    @Test
+    void updatesAreAcknowledgedBeforeBeingWritten() throws Exception {
+        UserDTO updatedUser = update(USER, "new.email@domain.fr", null, 4L);
+
+        assertEquals(new UserDTO(1L, "username1", "new.email@domain.fr", 5L), updatedUser);
+        assertEquals(updatedUser, writeBehind.overlay(USER));
+        assertEquals(List.of(new PendingUserUpdate(1L, "new.email@domain.fr", null, 5L)), logged(updateLog));
+        verifyNoInteractions(userRepository);
+    }
+
+    @Test
+    void updatesOfTheSameUserAreCoalesced() throws Exception {
+        update(USER, "first@domain.fr", null, null);
+        update(USER, null, "hash", 5L);
+        update(USER, "second@domain.fr", null, null);
+
+        writeBehind.flush();
+
+        verify(userRepository, times(1)).applyUpdate(1L, "second@domain.fr", "hash", 7L);
+        verifyNoMoreInteractions(userRepository);
+        verify(userCache, times(1)).evictUsers(List.of(1L));
+        assertEquals(2.0, meterRegistry.get("user.write.behind.coalesced").counter().count());
+        assertEquals(0, writeBehind.getPendingCount());
+        assertEquals(0, updateLog.size());
+    }
+
+    @Test
+    void updateWithAnotherVersionIsRejected() throws Exception {
+        update(USER, "new.email@domain.fr", null, null);
+
+        UserResourceException exception = assertThrows(UserResourceException.class,
+                () -> update(USER, "other@domain.fr", null, 4L));
+
+        assertEquals(HttpStatus.PRECONDITION_FAILED, exception.getStatus());
+        assertEquals(1, logged(updateLog).size());
+    }
+
+    @Test
+    void failedFlushKeepsTheUpdatesPending() throws Exception {
+        update(USER, "new.email@domain.fr", null, null);
+        when(userRepository.applyUpdate(any(), any(), any(), any())).thenThrow(new IllegalStateException("down"));
+
+        assertThrows(IllegalStateException.class, writeBehind::flush);
+
+        assertEquals(1, writeBehind.getPendingCount());
+        assertEquals(1, logged(updateLog).size());
+    }
+
+    @Test
+    void flushKeepsOnlyThePendingUpdatesInTheLog() throws Exception {
+        UserDTO otherUser = new UserDTO(2L, "username2", "username2@domain.fr", 0L);
+        update(USER, "first@domain.fr", null, null);
+        update(USER, "second@domain.fr", null, null);
+        // An update received while the flush writes the first ones.
+        when(userRepository.applyUpdate(eq(1L), any(), any(), any())).thenAnswer(invocation -> {
+            update(otherUser, null, "hash", null);
+            return 1;
+        });
+
+        writeBehind.flush();
+
+        assertEquals(List.of(new PendingUserUpdate(2L, null, "hash", 1L)), logged(updateLog));
+        assertEquals(1, writeBehind.getPendingCount());
+    }
+
+    @Test
+    void theLogIsReplayedOnStart() throws Exception {
+        update(USER, "first@domain.fr", null, null);
+        update(new UserDTO(2L, "username2", "username2@domain.fr", 0L), null, "hash", null);
+        update(USER, "second@domain.fr", null, null);
+
+        // Simulates a crash : the updates are only in the log.
+        UserUpdateLog reopenedLog = new UserUpdateLog(directory.resolve("user-updates.log"), false);
+        UserWriteBehind restarted = newWriteBehind(reopenedLog);
+        restarted.start();
+
+        verify(userRepository, times(1)).applyUpdate(1L, "second@domain.fr", null, 6L);
+        verify(userRepository, times(1)).applyUpdate(2L, null, "hash", 1L);
+        assertEquals(0, reopenedLog.size());
+        restarted.close();
+    }
+
+    @Test
+    void updateOfAUserReadBeforeItsFlushIsRefused() throws Exception {
+        update(USER, "first@domain.fr", null, null);
+        long flushCount = writeBehind.getFlushCount();
+        // The user is read from the database while the flush commits its first update.
+        writeBehind.flush();
+
+        assertNull(writeBehind.update(USER, flushCount, "second@domain.fr", null, null));
+        assertEquals(new UserDTO(1L, "username1", "second@domain.fr", 6L), writeBehind.update(
+                new UserDTO(1L, "username1", "first@domain.fr", 5L), writeBehind.getFlushCount(), "second@domain.fr",
+                null, null));
+    }
+
+    @Test
+    void updateOfAUserStillPendingIsAccepted() throws Exception {
+        long flushCount = writeBehind.getFlushCount();
+        update(USER, "first@domain.fr", null, null);
+        writeBehind.flush();
+        update(new UserDTO(1L, "username1", "first@domain.fr", 5L), "second@domain.fr", null, null);
+
+        assertEquals(new UserDTO(1L, "username1", "third@domain.fr", 7L),
+                writeBehind.update(USER, flushCount, "third@domain.fr", null, null));
+    }
+
+    /**
+     * Updates a user read just before.
+     */
+    private UserDTO update(UserDTO user, String email, String password, Long expectedVersion) throws Exception {
+        return writeBehind.update(user, writeBehind.getFlushCount(), email, password, expectedVersion);
+    }
+
+    private static List<PendingUserUpdate> logged(UserUpdateLog log) throws Exception {
+        List<PendingUserUpdate> updates = new ArrayList<>();
+        log.replay(updates::add);
+        return updates;
+    }
+
+    private UserWriteBehind newWriteBehind(UserUpdateLog log) {
+        WriteBehindProperties properties = new WriteBehindProperties();
+        properties.setFlushInterval(Duration.ofHours(1));
+        properties.setMaxLag(Duration.ofHours(1));
+        return new UserWriteBehind(properties, log, userRepository, userCache,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)), meterRegistry);
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.demo.load;
+
+import org.junit.jupiter.api.Tag;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+/**
+ * The mix of UserApiLoadTest on the WebFlux + R2DBC stack, on the same in-memory H2 database. The rows of both
+ * stacks are appended to {@code target/load/user-api.csv}, labelled {@code mvc-...} and {@code reactive-...}.
+ */
+@Tag("load")
+@ActiveProfiles(profiles = { "reactive", "load" }, inheritProfiles = false)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class ReactiveUserApiLoadTest extends UserApiLoadTest {
+
+    @Override
+    protected String stack() {
+        return "reactive";
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.demo.user.reactive;
+
+import com.example.demo.user.UserResourceException;
+import com.example.demo.user.dto.CreateUserForm;
+import com.example.demo.user.dto.UpdateUserForm;
+import com.example.demo.user.dto.UserDTO;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ActiveProfiles("reactive")
+@WebFluxTest(ReactiveUserController.class)
+class ReactiveUserControllerTest {
+
+    private static final String BASE_PATH = "/users";
+
+    @Autowired
+    private WebTestClient client;
+
+    @MockBean
+    private ReactiveUserService userService;
+
+    @Test
+    void getUsersStreamsNdjson() {
+        Pageable pageable = PageRequest.of(0, 2);
+        when(userService.getUsers(pageable)).thenReturn(Flux.just(
+                new UserDTO(1L, "username1", "email1", 0L), new UserDTO(2L, "username2", "email2", 0L)));
+
+        String body = client.get().uri(BASE_PATH + "?pageSize=2&page=0")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .expectBody(String.class).returnResult().getResponseBody();
+
+        assertEquals("{\"id\":1,\"username\":\"username1\",\"email\":\"email1\"}\n"
+                + "{\"id\":2,\"username\":\"username2\",\"email\":\"email2\"}\n", body);
+    }
+
+    @Test
+    void getUserByIdHasAnETag() {
+        when(userService.getUserById(1L)).thenReturn(Mono.just(new UserDTO(1L, "username1", "email1", 3L)));
+
+        client.get().uri(BASE_PATH + "/1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"1-3\"");
+
+        client.get().uri(BASE_PATH + "/1").header(HttpHeaders.IF_NONE_MATCH, "\"1-3\"")
+                .exchange()
+                .expectStatus().isNotModified();
+    }
+
+    @Test
+    void errorsKeepTheResourceExceptionShape() {
+        when(userService.getUserById(42L)).thenReturn(Mono.error(new UserResourceException("UserNotFound",
+                "The user ID is not found in the database.", HttpStatus.NOT_FOUND)));
+
+        client.get().uri(BASE_PATH + "/42")
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody()
+                .jsonPath("$.errorCode").isEqualTo("UserNotFound")
+                .jsonPath("$.errorMessage").isEqualTo("The user ID is not found in the database.")
+                .jsonPath("$.status").isEqualTo("NOT_FOUND");
+    }
+
+    @Test
+    void createUserIsValidated() {
+        client.post().uri(BASE_PATH)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new CreateUserForm("username1", "not an email", "password1"))
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody()
+                .jsonPath("$.errorCode").isEqualTo("FormValidationError");
+
+        verify(userService, never()).createUser(any());
+    }
+
+    @Test
+    void updateUserWithAnotherETag() {
+        client.patch().uri(BASE_PATH)
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.IF_MATCH, "\"2-1\"")
+                .bodyValue(UpdateUserForm.builder().id(1L).email("new.email@domain.fr").build())
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.PRECONDITION_FAILED);
+
+        verify(userService, never()).updateUser(any(), any());
+    }
+
+    @Test
+    void deleteUser() {
+        when(userService.deleteUser(1L)).thenReturn(Mono.empty());
+
+        client.delete().uri(BASE_PATH + "/1").exchange().expectStatus().isNoContent();
+    }
+}